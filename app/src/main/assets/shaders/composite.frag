@@ -0,0 +1,10 @@
+precision mediump float;
+
+uniform sampler2D u_Texture;
+
+varying vec2 v_TexCoord;
+
+void main() {
+    // The content layer holds premultiplied color over a transparent clear.
+    gl_FragColor = texture2D(u_Texture, v_TexCoord);
+}
@@ -0,0 +1,9 @@
+attribute vec4 a_Position;
+
+varying vec2 v_TexCoord;
+
+void main() {
+   gl_Position = a_Position;
+   // The quad covers the screen in normalized device coordinates.
+   v_TexCoord = a_Position.xy * 0.5 + 0.5;
+}
@@ -0,0 +1,159 @@
+package com.google.ar.core.examples.java.common.helpers;
+
+/**
+ * Decides how often the AR scene needs to be rendered, from tracking state, visible anchors and
+ * camera motion.
+ *
+ * <p>While the camera moves, frames are rendered continuously. Once the camera has been still for a
+ * while, or while tracking is lost, frames are rendered at a reduced rate, or only occasionally if
+ * there is nothing to look at. Motion above the thresholds returns to continuous rendering on the
+ * very next frame, while dropping to a lower rate requires the camera to stay still for the whole
+ * settle time, so that brief pauses do not toggle the mode.
+ *
+ * <p>The scheduler has no Android dependencies; it is fed one pose sample per rendered frame and
+ * is not thread safe, except for {@link #wake()}.
+ */
+public final class FrameScheduler {
+  /** How frames are scheduled. */
+  public enum Mode {
+    /** Render every frame. */
+    CONTINUOUS(0),
+    /** Render at a reduced, fixed rate. */
+    REDUCED(100),
+    /** Render only occasionally, to notice motion or tracking changes. */
+    ON_DEMAND(500);
+
+    private final long frameIntervalMillis;
+
+    Mode(long frameIntervalMillis) {
+      this.frameIntervalMillis = frameIntervalMillis;
+    }
+
+    /** Returns the delay before the next frame is requested, or 0 when rendering continuously. */
+    public long getFrameIntervalMillis() {
+      return frameIntervalMillis;
+    }
+  }
+
+  private final float linearSpeedThreshold;
+  private final float angularSpeedThreshold;
+  private final long settleTimeNanos;
+
+  private Mode mode = Mode.CONTINUOUS;
+  private boolean hasPreviousPose = false;
+  private long previousTimestampNanos;
+  private final float[] previousPose = new float[7];
+  private long stillSinceNanos = -1;
+  private volatile boolean wakeRequested = false;
+
+  /**
+   * @param linearSpeedThreshold Camera speed, in meters per second, above which it is moving.
+   * @param angularSpeedThreshold Camera rotation speed, in radians per second, above which it is
+   *     moving.
+   * @param settleTimeNanos How long the camera has to stay still before the rate is reduced.
+   */
+  public FrameScheduler(
+      float linearSpeedThreshold, float angularSpeedThreshold, long settleTimeNanos) {
+    this.linearSpeedThreshold = linearSpeedThreshold;
+    this.angularSpeedThreshold = angularSpeedThreshold;
+    this.settleTimeNanos = settleTimeNanos;
+  }
+
+  /** Returns the current mode. */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Forces continuous rendering from the next frame on, e.g. when an anchor was resolved or the
+   * user interacted with the view. May be called from any thread.
+   */
+  public void wake() {
+    wakeRequested = true;
+  }
+
+  /**
+   * Feeds the camera pose of a rendered frame and returns the mode for the following frames.
+   *
+   * @param timestampNanos Timestamp of the frame.
+   * @param isTracking Whether the camera is tracking; the pose is ignored if not.
+   * @param visibleAnchorCount Number of anchors drawn in the frame.
+   */
+  public Mode onFrame(
+      long timestampNanos,
+      boolean isTracking,
+      int visibleAnchorCount,
+      float tx,
+      float ty,
+      float tz,
+      float qx,
+      float qy,
+      float qz,
+      float qw) {
+    if (wakeRequested) {
+      wakeRequested = false;
+      stillSinceNanos = -1;
+      hasPreviousPose = false;
+      return mode = Mode.CONTINUOUS;
+    }
+    if (!isTracking) {
+      // Keep polling at a reduced rate so that recovered tracking is noticed quickly.
+      hasPreviousPose = false;
+      stillSinceNanos = -1;
+      return mode = Mode.REDUCED;
+    }
+
+    boolean moving = true;
+    if (hasPreviousPose && timestampNanos > previousTimestampNanos) {
+      float seconds = (timestampNanos - previousTimestampNanos) * 1e-9f;
+      moving =
+          translationDistance(tx, ty, tz) > linearSpeedThreshold * seconds
+              || rotationAngle(qx, qy, qz, qw) > angularSpeedThreshold * seconds;
+    } else if (hasPreviousPose && timestampNanos == previousTimestampNanos) {
+      // Same camera frame as before; nothing new to judge motion on.
+      return mode;
+    }
+    setPreviousPose(timestampNanos, tx, ty, tz, qx, qy, qz, qw);
+
+    if (moving) {
+      stillSinceNanos = -1;
+      return mode = Mode.CONTINUOUS;
+    }
+    if (stillSinceNanos < 0) {
+      stillSinceNanos = timestampNanos;
+    }
+    if (timestampNanos - stillSinceNanos < settleTimeNanos) {
+      return mode;
+    }
+    return mode = visibleAnchorCount > 0 ? Mode.REDUCED : Mode.ON_DEMAND;
+  }
+
+  private void setPreviousPose(
+      long timestampNanos, float tx, float ty, float tz, float qx, float qy, float qz, float qw) {
+    hasPreviousPose = true;
+    previousTimestampNanos = timestampNanos;
+    previousPose[0] = tx;
+    previousPose[1] = ty;
+    previousPose[2] = tz;
+    previousPose[3] = qx;
+    previousPose[4] = qy;
+    previousPose[5] = qz;
+    previousPose[6] = qw;
+  }
+
+  private float translationDistance(float tx, float ty, float tz) {
+    float dx = tx - previousPose[0];
+    float dy = ty - previousPose[1];
+    float dz = tz - previousPose[2];
+    return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /** Returns the angle, in radians, of the rotation between the previous and the given pose. */
+  private float rotationAngle(float qx, float qy, float qz, float qw) {
+    float dot =
+        qx * previousPose[3] + qy * previousPose[4] + qz * previousPose[5] + qw * previousPose[6];
+    // q and -q are the same rotation.
+    dot = Math.abs(dot);
+    return 2.0f * (float) Math.acos(Math.min(1.0f, dot));
+  }
+}
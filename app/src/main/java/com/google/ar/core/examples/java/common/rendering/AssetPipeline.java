@@ -0,0 +1,94 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads assets in two stages so that the GL thread never waits on asset IO.
+ *
+ * <p>File reads, image decoding and mesh parsing run on a background loader thread. The resulting
+ * CPU-side data is queued, and {@link #uploadPending(long)} creates the GPU resources for it on the
+ * GL thread, a few at a time so that each frame stays within a time budget.
+ */
+public class AssetPipeline {
+  private static final String TAG = AssetPipeline.class.getSimpleName();
+
+  /** Produces CPU-side data. Called on the loader thread. */
+  public interface Decoder<T> {
+    T decode() throws IOException;
+  }
+
+  /** Creates GPU resources from decoded data. Called on the GL thread. */
+  public interface Uploader<T> {
+    void upload(T data) throws IOException;
+  }
+
+  private static final class PendingUpload<T> {
+    private final String name;
+    private final T data;
+    private final Uploader<T> uploader;
+
+    PendingUpload(String name, T data, Uploader<T> uploader) {
+      this.name = name;
+      this.data = data;
+      this.uploader = uploader;
+    }
+
+    void upload() throws IOException {
+      uploader.upload(data);
+    }
+  }
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "AssetPipeline"));
+  private final ConcurrentLinkedQueue<PendingUpload<?>> pendingUploads =
+      new ConcurrentLinkedQueue<>();
+
+  /**
+   * Decodes an asset on the loader thread and queues its upload for the GL thread.
+   *
+   * @param name Name of the asset, used for logging.
+   * @param decoder Reads and prepares the CPU-side data.
+   * @param uploader Creates the GPU resources from the decoded data.
+   */
+  public <T> void submit(String name, Decoder<T> decoder, Uploader<T> uploader) {
+    executor.execute(
+        () -> {
+          try {
+            pendingUploads.add(new PendingUpload<>(name, decoder.decode(), uploader));
+          } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to decode asset " + name, e);
+          }
+        });
+  }
+
+  /**
+   * Uploads decoded assets until the queue is empty or {@code budgetNanos} has elapsed. At least
+   * one pending asset is uploaded per call so that large assets cannot starve. Must be called on
+   * the GL thread.
+   */
+  public void uploadPending(long budgetNanos) {
+    long start = SystemClock.elapsedRealtimeNanos();
+    PendingUpload<?> pending;
+    while ((pending = pendingUploads.poll()) != null) {
+      try {
+        pending.upload();
+      } catch (IOException | RuntimeException e) {
+        Log.e(TAG, "Failed to upload asset " + pending.name, e);
+      }
+      if (SystemClock.elapsedRealtimeNanos() - start >= budgetNanos) {
+        break;
+      }
+    }
+  }
+
+  /** Stops the loader thread. Queued decodes are discarded. */
+  public void shutdown() {
+    executor.shutdownNow();
+    pendingUploads.clear();
+  }
+}
@@ -51,6 +51,15 @@ public class BackgroundRenderer {
   private FloatBuffer quadCoords;
   private FloatBuffer quadTexCoords;
 
+  // The texture coordinates in quadTexCoords are only recomputed when the display geometry they
+  // were derived from changes. These record which draw method wrote them, and from what inputs.
+  private boolean texCoordsFromFrame = false;
+  private int cachedImageWidth = -1;
+  private int cachedImageHeight = -1;
+  private float cachedScreenAspectRatio = Float.NaN;
+  private int cachedCameraToDisplayRotation = -1;
+  private final float[] texCoordTransformed = new float[8];
+
   private int cameraProgram;
   private int depthProgram;
 
@@ -103,19 +112,13 @@ public class BackgroundRenderer {
         ByteBuffer.allocateDirect(numVertices * TEXCOORDS_PER_VERTEX * FLOAT_SIZE);
     bbTexCoordsTransformed.order(ByteOrder.nativeOrder());
     quadTexCoords = bbTexCoordsTransformed.asFloatBuffer();
+    invalidateTexCoords();
 
     // Load render camera feed shader.
     {
-      int vertexShader =
-          ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, CAMERA_VERTEX_SHADER_NAME);
-      int fragmentShader =
-          ShaderUtil.loadGLShader(
-              TAG, context, GLES20.GL_FRAGMENT_SHADER, CAMERA_FRAGMENT_SHADER_NAME);
-
-      cameraProgram = GLES20.glCreateProgram();
-      GLES20.glAttachShader(cameraProgram, vertexShader);
-      GLES20.glAttachShader(cameraProgram, fragmentShader);
-      GLES20.glLinkProgram(cameraProgram);
+      cameraProgram =
+          ShaderUtil.createProgram(
+              TAG, context, CAMERA_VERTEX_SHADER_NAME, CAMERA_FRAGMENT_SHADER_NAME);
       GLES20.glUseProgram(cameraProgram);
       cameraPositionAttrib = GLES20.glGetAttribLocation(cameraProgram, "a_Position");
       cameraTexCoordAttrib = GLES20.glGetAttribLocation(cameraProgram, "a_TexCoord");
@@ -127,17 +130,12 @@ public class BackgroundRenderer {
 
     // Load render depth map shader.
     {
-      int vertexShader =
-          ShaderUtil.loadGLShader(
-              TAG, context, GLES20.GL_VERTEX_SHADER, DEPTH_VISUALIZER_VERTEX_SHADER_NAME);
-      int fragmentShader =
-          ShaderUtil.loadGLShader(
-              TAG, context, GLES20.GL_FRAGMENT_SHADER, DEPTH_VISUALIZER_FRAGMENT_SHADER_NAME);
-
-      depthProgram = GLES20.glCreateProgram();
-      GLES20.glAttachShader(depthProgram, vertexShader);
-      GLES20.glAttachShader(depthProgram, fragmentShader);
-      GLES20.glLinkProgram(depthProgram);
+      depthProgram =
+          ShaderUtil.createProgram(
+              TAG,
+              context,
+              DEPTH_VISUALIZER_VERTEX_SHADER_NAME,
+              DEPTH_VISUALIZER_FRAGMENT_SHADER_NAME);
       GLES20.glUseProgram(depthProgram);
       depthPositionAttrib = GLES20.glGetAttribLocation(depthProgram, "a_Position");
       depthTexCoordAttrib = GLES20.glGetAttribLocation(depthProgram, "a_TexCoord");
@@ -154,6 +152,12 @@ public class BackgroundRenderer {
     createOnGlThread(context, /*depthTextureId=*/ -1);
   }
 
+  /** Registers the shader programs used by this renderer so they can be built up front. */
+  public static void registerShaderVariants(ShaderVariantRegistry registry) {
+    registry.register(CAMERA_VERTEX_SHADER_NAME, CAMERA_FRAGMENT_SHADER_NAME);
+    registry.register(DEPTH_VISUALIZER_VERTEX_SHADER_NAME, DEPTH_VISUALIZER_FRAGMENT_SHADER_NAME);
+  }
+
   public void suppressTimestampZeroRendering(boolean suppressTimestampZeroRendering) {
     this.suppressTimestampZeroRendering = suppressTimestampZeroRendering;
   }
@@ -171,12 +175,16 @@ public class BackgroundRenderer {
   public void draw(@NonNull Frame frame, boolean debugShowDepthMap) {
     // If display rotation changed (also includes view size change), we need to re-query the uv
     // coordinates for the screen rect, as they may have changed as well.
-    if (frame.hasDisplayGeometryChanged()) {
+    // The coordinates also have to be queried if the buffer was last written by the other draw
+    // method, or has just been allocated.
+    if (frame.hasDisplayGeometryChanged() || !texCoordsFromFrame) {
+      invalidateTexCoords();
       frame.transformCoordinates2d(
           Coordinates2d.OPENGL_NORMALIZED_DEVICE_COORDINATES,
           quadCoords,
           Coordinates2d.TEXTURE_NORMALIZED,
           quadTexCoords);
+      texCoordsFromFrame = true;
     }
 
     if (frame.getTimestamp() == 0 && suppressTimestampZeroRendering) {
@@ -199,9 +207,22 @@ public class BackgroundRenderer {
    * <p>The image will be center cropped if the camera sensor aspect ratio does not match the screen
    * aspect ratio, which matches the cropping behavior of {@link
    * Frame#transformCoordinates2d(Coordinates2d, float[], Coordinates2d, float[])}.
+   *
+   * <p>The texture coordinates are only recomputed when one of the arguments changes.
    */
   public void draw(
       int imageWidth, int imageHeight, float screenAspectRatio, int cameraToDisplayRotation) {
+    if (imageWidth != cachedImageWidth
+        || imageHeight != cachedImageHeight
+        || screenAspectRatio != cachedScreenAspectRatio
+        || cameraToDisplayRotation != cachedCameraToDisplayRotation) {
+      updateCroppedTexCoords(imageWidth, imageHeight, screenAspectRatio, cameraToDisplayRotation);
+    }
+    draw(/*debugShowDepthMap=*/ false);
+  }
+
+  private void updateCroppedTexCoords(
+      int imageWidth, int imageHeight, float screenAspectRatio, int cameraToDisplayRotation) {
     // Crop the camera image to fit the screen aspect ratio.
     float imageAspectRatio = (float) imageWidth / imageHeight;
     float croppedWidth;
@@ -217,19 +238,18 @@ public class BackgroundRenderer {
     float u = (imageWidth - croppedWidth) / imageWidth * 0.5f;
     float v = (imageHeight - croppedHeight) / imageHeight * 0.5f;
 
-    float[] texCoordTransformed;
     switch (cameraToDisplayRotation) {
       case 90:
-        texCoordTransformed = new float[] {1 - u, 1 - v, 1 - u, v, u, 1 - v, u, v};
+        setTexCoords(1 - u, 1 - v, 1 - u, v, u, 1 - v, u, v);
         break;
       case 180:
-        texCoordTransformed = new float[] {1 - u, v, u, v, 1 - u, 1 - v, u, 1 - v};
+        setTexCoords(1 - u, v, u, v, 1 - u, 1 - v, u, 1 - v);
         break;
       case 270:
-        texCoordTransformed = new float[] {u, v, u, 1 - v, 1 - u, v, 1 - u, 1 - v};
+        setTexCoords(u, v, u, 1 - v, 1 - u, v, 1 - u, 1 - v);
         break;
       case 0:
-        texCoordTransformed = new float[] {u, 1 - v, 1 - u, 1 - v, u, v, 1 - u, v};
+        setTexCoords(u, 1 - v, 1 - u, 1 - v, u, v, 1 - u, v);
         break;
       default:
         throw new IllegalArgumentException("Unhandled rotation: " + cameraToDisplayRotation);
@@ -239,7 +259,32 @@ public class BackgroundRenderer {
     quadTexCoords.position(0);
     quadTexCoords.put(texCoordTransformed);
 
-    draw(/*debugShowDepthMap=*/ false);
+    texCoordsFromFrame = false;
+    cachedImageWidth = imageWidth;
+    cachedImageHeight = imageHeight;
+    cachedScreenAspectRatio = screenAspectRatio;
+    cachedCameraToDisplayRotation = cameraToDisplayRotation;
+  }
+
+  private void setTexCoords(
+      float u0, float v0, float u1, float v1, float u2, float v2, float u3, float v3) {
+    texCoordTransformed[0] = u0;
+    texCoordTransformed[1] = v0;
+    texCoordTransformed[2] = u1;
+    texCoordTransformed[3] = v1;
+    texCoordTransformed[4] = u2;
+    texCoordTransformed[5] = v2;
+    texCoordTransformed[6] = u3;
+    texCoordTransformed[7] = v3;
+  }
+
+  /** Forces the texture coordinates to be recomputed by the next draw call. */
+  private void invalidateTexCoords() {
+    texCoordsFromFrame = false;
+    cachedImageWidth = -1;
+    cachedImageHeight = -1;
+    cachedScreenAspectRatio = Float.NaN;
+    cachedCameraToDisplayRotation = -1;
   }
 
   /**
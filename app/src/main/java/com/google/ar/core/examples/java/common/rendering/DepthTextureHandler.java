@@ -0,0 +1,165 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.media.Image;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import com.google.ar.core.Coordinates2d;
+import com.google.ar.core.Frame;
+import com.google.ar.core.exceptions.NotYetAvailableException;
+
+/**
+ * Keeps a texture filled with the latest ARCore depth image, for depth-based occlusion.
+ *
+ * <p>Depth is produced at a lower rate than camera frames, so a new image is only uploaded when its
+ * timestamp advances. The texture storage is allocated once per depth resolution, and later images
+ * are written into it with {@code glTexSubImage2D}. The 16-bit depth in millimeters is uploaded as
+ * a two-channel {@code GL_RG8} texture, the layout the depth shaders unpack; this needs an OpenGL
+ * ES 3.0 capable context.
+ */
+public final class DepthTextureHandler {
+  private static final String TAG = DepthTextureHandler.class.getSimpleName();
+
+  // XY pairs in normalized device coordinates of the origin and a point along each axis.
+  private static final float[] NDC_BASIS = {0, 0, 1, 0, 0, 1};
+
+  private int textureId = -1;
+  private int width = 0;
+  private int height = 0;
+  private long lastTimestamp = -1;
+
+  private final float[] transformedBasis = new float[6];
+  private final float[] uvTransform = new float[9];
+  private boolean uvTransformValid = false;
+
+  /**
+   * Creates the depth texture. Must be called on the OpenGL thread, typically in {@link
+   * android.opengl.GLSurfaceView.Renderer#onSurfaceCreated}.
+   */
+  public void createOnGlThread() {
+    int[] textures = new int[1];
+    GLES20.glGenTextures(1, textures, 0);
+    textureId = textures[0];
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    // The new texture has no storage yet.
+    width = 0;
+    height = 0;
+    lastTimestamp = -1;
+    uvTransformValid = false;
+  }
+
+  /**
+   * Uploads the depth image of {@code frame} if it is newer than the one in the texture. Must be
+   * called on the OpenGL thread.
+   *
+   * @return true if the texture was updated.
+   */
+  public boolean update(Frame frame) {
+    if (textureId == -1) {
+      return false;
+    }
+    try (Image depthImage = frame.acquireDepthImage16Bits()) {
+      if (depthImage.getTimestamp() == lastTimestamp) {
+        return false;
+      }
+      lastTimestamp = depthImage.getTimestamp();
+
+      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+      if (depthImage.getWidth() != width || depthImage.getHeight() != height) {
+        width = depthImage.getWidth();
+        height = depthImage.getHeight();
+        GLES20.glTexImage2D(
+            GLES20.GL_TEXTURE_2D,
+            0,
+            GLES30.GL_RG8,
+            width,
+            height,
+            0,
+            GLES30.GL_RG,
+            GLES20.GL_UNSIGNED_BYTE,
+            depthImage.getPlanes()[0].getBuffer());
+      } else {
+        GLES20.glTexSubImage2D(
+            GLES20.GL_TEXTURE_2D,
+            0,
+            0,
+            0,
+            width,
+            height,
+            GLES30.GL_RG,
+            GLES20.GL_UNSIGNED_BYTE,
+            depthImage.getPlanes()[0].getBuffer());
+      }
+      GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+      ShaderUtil.checkGLError(TAG, "Depth upload");
+      return true;
+    } catch (NotYetAvailableException e) {
+      // Depth is not available for the first frames of a session, nor right after tracking was
+      // lost. Keep the last image.
+      return false;
+    }
+  }
+
+  /**
+   * Recomputes the transform from screen space to depth texture coordinates if the display
+   * geometry changed.
+   *
+   * @return true if the transform changed.
+   */
+  public boolean updateUvTransform(Frame frame) {
+    if (uvTransformValid && !frame.hasDisplayGeometryChanged()) {
+      return false;
+    }
+    frame.transformCoordinates2d(
+        Coordinates2d.OPENGL_NORMALIZED_DEVICE_COORDINATES,
+        NDC_BASIS,
+        Coordinates2d.TEXTURE_NORMALIZED,
+        transformedBasis);
+
+    // Build the column-major affine transform that maps the basis points to their texture
+    // coordinates.
+    float originU = transformedBasis[0];
+    float originV = transformedBasis[1];
+    uvTransform[0] = transformedBasis[2] - originU;
+    uvTransform[1] = transformedBasis[3] - originV;
+    uvTransform[2] = 0;
+    uvTransform[3] = transformedBasis[4] - originU;
+    uvTransform[4] = transformedBasis[5] - originV;
+    uvTransform[5] = 0;
+    uvTransform[6] = originU;
+    uvTransform[7] = originV;
+    uvTransform[8] = 1;
+    uvTransformValid = true;
+    return true;
+  }
+
+  /** Returns true once a depth image has been uploaded and the uv transform computed. */
+  public boolean isReady() {
+    return width > 0 && uvTransformValid;
+  }
+
+  public int getTextureId() {
+    return textureId;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Returns the 3x3 column-major transform from screen space to depth texture coordinates. The
+   * array is updated in place by {@link #updateUvTransform}.
+   */
+  public float[] getUvTransform() {
+    return uvTransform;
+  }
+}
@@ -0,0 +1,74 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Records which elements of a fixed-size array changed, in blocks of 64 elements, and reports them
+ * as coalesced contiguous ranges. Not thread safe.
+ */
+public final class DirtyRangeTracker {
+  /** Receives a contiguous range of changed elements. */
+  public interface RangeConsumer {
+    void accept(int first, int count);
+  }
+
+  private static final int BLOCK_SHIFT = 6;
+  private static final int NONE = -1;
+
+  private final int capacity;
+  private final long[] blocks;
+
+  /** @param capacity Number of elements tracked. */
+  public DirtyRangeTracker(int capacity) {
+    this.capacity = capacity;
+    this.blocks = new long[((Math.max(1, capacity) - 1) >> BLOCK_SHIFT) / Long.SIZE + 1];
+  }
+
+  /** Marks element {@code index} as changed. */
+  public void mark(int index) {
+    int block = index >> BLOCK_SHIFT;
+    blocks[block / Long.SIZE] |= 1L << block;
+  }
+
+  /** Marks {@code count} elements starting at {@code first} as changed. */
+  public void markRange(int first, int count) {
+    if (count <= 0) {
+      return;
+    }
+    int lastBlock = (first + count - 1) >> BLOCK_SHIFT;
+    for (int block = first >> BLOCK_SHIFT; block <= lastBlock; block++) {
+      blocks[block / Long.SIZE] |= 1L << block;
+    }
+  }
+
+  /** Marks every element as changed. */
+  public void markAll() {
+    markRange(0, capacity);
+  }
+
+  /** Forgets all changes. */
+  public void clear() {
+    Arrays.fill(blocks, 0);
+  }
+
+  /**
+   * Reports the changed elements below {@code limit} as ranges in increasing order, then forgets
+   * all changes.
+   */
+  public void consume(int limit, RangeConsumer consumer) {
+    limit = Math.min(limit, capacity);
+    int rangeStart = NONE;
+    int blockCount = ((limit - 1) >> BLOCK_SHIFT) + 1;
+    for (int block = 0; block <= blockCount && limit > 0; block++) {
+      boolean dirty = block < blockCount && (blocks[block / Long.SIZE] & (1L << block)) != 0;
+      if (dirty && rangeStart == NONE) {
+        rangeStart = block << BLOCK_SHIFT;
+      } else if (!dirty && rangeStart != NONE) {
+        int rangeEnd = Math.min(block << BLOCK_SHIFT, limit);
+        consumer.accept(rangeStart, rangeEnd - rangeStart);
+        rangeStart = NONE;
+      }
+    }
+    clear();
+  }
+}
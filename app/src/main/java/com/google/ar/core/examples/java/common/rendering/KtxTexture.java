@@ -0,0 +1,313 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.opengl.GLES20;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A compressed texture with a baked mip chain, read from a KTX (1.1) or KTX2 container.
+ *
+ * <p>Only block-compressed formats are accepted, and KTX2 files must not use supercompression. The
+ * headers are parsed first and the image data is then read straight from the stream into direct
+ * buffers sized from them, and each mip level is uploaded from one of these buffers with {@code
+ * glCompressedTexImage2D}, so no decoding, intermediate copy or runtime mip generation is needed.
+ */
+public final class KtxTexture {
+  private static final byte[] KTX1_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final byte[] KTX2_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final int KTX1_ENDIANNESS = 0x04030201;
+  private static final int KTX1_HEADER_SIZE = 64;
+  private static final int KTX2_LEVEL_INDEX_OFFSET = 80;
+  private static final int KTX2_LEVEL_INDEX_ENTRY_SIZE = 24;
+  private static final int MAX_LEVELS = 32;
+
+  // Compressed formats from OpenGL ES 3.0 (ETC2) and KHR_texture_compression_astc_ldr.
+  public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+  public static final int GL_COMPRESSED_SRGB8_ETC2 = 0x9275;
+  public static final int GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9276;
+  public static final int GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9277;
+  public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+  public static final int GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC = 0x9279;
+  public static final int GL_COMPRESSED_RGBA_ASTC_4x4_KHR = 0x93B0;
+  public static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR = 0x93D0;
+  private static final int ASTC_BLOCK_SIZE_COUNT = 14;
+
+  // VkFormat values used by KTX2 for the same formats.
+  private static final int VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK = 147;
+  private static final int VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK = 152;
+  private static final int VK_FORMAT_ASTC_4x4_UNORM_BLOCK = 157;
+
+  private final int internalFormat;
+  private final int width;
+  private final int height;
+  private final ByteBuffer[] levels;
+
+  private KtxTexture(int internalFormat, int width, int height, ByteBuffer[] levels) {
+    this.internalFormat = internalFormat;
+    this.width = width;
+    this.height = height;
+    this.levels = levels;
+  }
+
+  /** Returns the OpenGL compressed internal format of the texture. */
+  public int getInternalFormat() {
+    return internalFormat;
+  }
+
+  /** Returns the number of mip levels stored in the file. */
+  public int getLevelCount() {
+    return levels.length;
+  }
+
+  /**
+   * Reads a KTX or KTX2 container.
+   *
+   * @throws IOException If the stream cannot be read or is not a supported container.
+   */
+  public static KtxTexture read(InputStream inputStream) throws IOException {
+    byte[] identifier = new byte[KTX1_IDENTIFIER.length];
+    readFully(inputStream, identifier, 0, identifier.length, "Not a KTX file.");
+    if (Arrays.equals(identifier, KTX1_IDENTIFIER)) {
+      return readKtx1(inputStream);
+    }
+    if (Arrays.equals(identifier, KTX2_IDENTIFIER)) {
+      return readKtx2(inputStream);
+    }
+    throw new IOException("Not a KTX file.");
+  }
+
+  private static KtxTexture readKtx1(InputStream inputStream) throws IOException {
+    ByteBuffer header = readHeader(inputStream, KTX1_HEADER_SIZE, KTX1_IDENTIFIER.length);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    if (header.getInt(12) != KTX1_ENDIANNESS) {
+      header.order(ByteOrder.BIG_ENDIAN);
+    }
+    int glType = header.getInt(16);
+    int glInternalFormat = header.getInt(28);
+    int width = header.getInt(36);
+    int height = header.getInt(40);
+    int depth = header.getInt(44);
+    int arrayElements = header.getInt(48);
+    int faces = header.getInt(52);
+    int levelCount = Math.max(1, header.getInt(56));
+    int keyValueBytes = header.getInt(60);
+    if (levelCount > MAX_LEVELS) {
+      throw new IOException("Too many KTX mip levels: " + levelCount);
+    }
+    if (glType != 0) {
+      throw new IOException("KTX texture is not compressed.");
+    }
+    if (depth > 1 || arrayElements > 0 || faces != 1) {
+      throw new IOException("Only 2D KTX textures are supported.");
+    }
+    if (keyValueBytes < 0) {
+      throw new IOException("Truncated KTX file.");
+    }
+    skipFully(inputStream, keyValueBytes);
+
+    // Each level is its image size followed by its data, padded to a multiple of four bytes.
+    ReadableByteChannel channel = Channels.newChannel(inputStream);
+    ByteBuffer imageSize = ByteBuffer.allocate(4).order(header.order());
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    for (int level = 0; level < levelCount; level++) {
+      imageSize.clear();
+      readFully(channel, imageSize);
+      int size = imageSize.getInt(0);
+      if (size < 0) {
+        throw new IOException("Truncated KTX file.");
+      }
+      levels[level] = ByteBuffer.allocateDirect(size);
+      readFully(channel, levels[level]);
+      levels[level].flip();
+      if (level + 1 < levelCount) {
+        skipFully(inputStream, ((size + 3) & ~3) - size);
+      }
+    }
+    return new KtxTexture(glInternalFormat, width, height, levels);
+  }
+
+  private static KtxTexture readKtx2(InputStream inputStream) throws IOException {
+    ByteBuffer header = readHeader(inputStream, KTX2_LEVEL_INDEX_OFFSET, KTX2_IDENTIFIER.length);
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    int vkFormat = header.getInt(12);
+    int width = header.getInt(20);
+    int height = header.getInt(24);
+    int depth = header.getInt(28);
+    int layers = header.getInt(32);
+    int faces = header.getInt(36);
+    int levelCount = Math.max(1, header.getInt(40));
+    int supercompressionScheme = header.getInt(44);
+    if (levelCount > MAX_LEVELS) {
+      throw new IOException("Too many KTX mip levels: " + levelCount);
+    }
+    if (supercompressionScheme != 0) {
+      throw new IOException("Supercompressed KTX2 textures are not supported.");
+    }
+    if (depth > 0 || layers > 0 || faces != 1) {
+      throw new IOException("Only 2D KTX2 textures are supported.");
+    }
+    int glInternalFormat = glFormatFromVkFormat(vkFormat);
+
+    ByteBuffer levelIndex =
+        readHeader(inputStream, levelCount * KTX2_LEVEL_INDEX_ENTRY_SIZE, 0)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    int[] offsets = new int[levelCount];
+    int[] lengths = new int[levelCount];
+    int dataStart = Integer.MAX_VALUE;
+    int dataEnd = 0;
+    for (int level = 0; level < levelCount; level++) {
+      int entry = level * KTX2_LEVEL_INDEX_ENTRY_SIZE;
+      offsets[level] = toIntExact(levelIndex.getLong(entry));
+      lengths[level] = toIntExact(levelIndex.getLong(entry + 8));
+      dataStart = Math.min(dataStart, offsets[level]);
+      dataEnd = Math.max(dataEnd, toIntExact((long) offsets[level] + lengths[level]));
+    }
+    int consumed = KTX2_LEVEL_INDEX_OFFSET + levelIndex.capacity();
+    if (dataStart < consumed) {
+      throw new IOException("KTX2 level data overlaps the header.");
+    }
+
+    // The data format descriptor and key/value data lie between the index and the levels, which
+    // are stored back to back, so all of them are read in one go after skipping the rest.
+    skipFully(inputStream, dataStart - consumed);
+    ByteBuffer data = ByteBuffer.allocateDirect(dataEnd - dataStart);
+    readFully(Channels.newChannel(inputStream), data);
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    for (int level = 0; level < levelCount; level++) {
+      levels[level] = slice(data, offsets[level] - dataStart, lengths[level]);
+    }
+    return new KtxTexture(glInternalFormat, width, height, levels);
+  }
+
+  /**
+   * Reads the next {@code size - alreadyRead} bytes of a header into a heap buffer that is indexed
+   * from the start of the header, leaving the first {@code alreadyRead} bytes zero.
+   */
+  private static ByteBuffer readHeader(InputStream inputStream, int size, int alreadyRead)
+      throws IOException {
+    byte[] bytes = new byte[size];
+    readFully(inputStream, bytes, alreadyRead, size - alreadyRead, "Truncated KTX file.");
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private static void readFully(
+      InputStream inputStream, byte[] bytes, int offset, int length, String truncatedMessage)
+      throws IOException {
+    while (length > 0) {
+      int read = inputStream.read(bytes, offset, length);
+      if (read < 0) {
+        throw new IOException(truncatedMessage);
+      }
+      offset += read;
+      length -= read;
+    }
+  }
+
+  private static void readFully(ReadableByteChannel channel, ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new IOException("Truncated KTX file.");
+      }
+    }
+  }
+
+  private static void skipFully(InputStream inputStream, long count) throws IOException {
+    while (count > 0) {
+      long skipped = inputStream.skip(count);
+      if (skipped <= 0) {
+        // skip() may stop early without being at the end; read() tells the two apart.
+        if (inputStream.read() < 0) {
+          throw new IOException("Truncated KTX file.");
+        }
+        skipped = 1;
+      }
+      count -= skipped;
+    }
+  }
+
+  private static int glFormatFromVkFormat(int vkFormat) throws IOException {
+    if (vkFormat >= VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK
+        && vkFormat <= VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK) {
+      return GL_COMPRESSED_RGB8_ETC2 + (vkFormat - VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK);
+    }
+    int astcIndex = vkFormat - VK_FORMAT_ASTC_4x4_UNORM_BLOCK;
+    if (astcIndex >= 0 && astcIndex < 2 * ASTC_BLOCK_SIZE_COUNT) {
+      // VkFormat interleaves UNORM and SRGB variants; OpenGL keeps them in separate ranges.
+      int base =
+          (astcIndex % 2 == 0)
+              ? GL_COMPRESSED_RGBA_ASTC_4x4_KHR
+              : GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR;
+      return base + astcIndex / 2;
+    }
+    throw new IOException("Unsupported KTX2 format: " + vkFormat);
+  }
+
+  private static ByteBuffer slice(ByteBuffer data, int offset, int length) throws IOException {
+    if (offset < 0 || length < 0 || offset + length > data.capacity()) {
+      throw new IOException("Truncated KTX file.");
+    }
+    ByteBuffer level = data.duplicate();
+    level.clear();
+    level.position(offset).limit(offset + length);
+    return level.slice();
+  }
+
+  private static int toIntExact(long value) throws IOException {
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IOException("KTX offset out of range: " + value);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Returns the compressed texture formats supported by the current context. Must be called on the
+   * OpenGL thread.
+   */
+  public static int[] querySupportedFormats() {
+    int[] count = new int[1];
+    GLES20.glGetIntegerv(GLES20.GL_NUM_COMPRESSED_TEXTURE_FORMATS, count, 0);
+    int[] formats = new int[count[0]];
+    if (count[0] > 0) {
+      GLES20.glGetIntegerv(GLES20.GL_COMPRESSED_TEXTURE_FORMATS, formats, 0);
+    }
+    return formats;
+  }
+
+  /** Returns true if {@code supportedFormats} contains the format of this texture. */
+  public boolean isSupported(int[] supportedFormats) {
+    for (int format : supportedFormats) {
+      if (format == internalFormat) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Uploads all mip levels into the texture bound to {@code GL_TEXTURE_2D}. Must be called on the
+   * OpenGL thread.
+   */
+  public void upload() {
+    for (int level = 0; level < levels.length; level++) {
+      GLES20.glCompressedTexImage2D(
+          GLES20.GL_TEXTURE_2D,
+          level,
+          internalFormat,
+          Math.max(1, width >> level),
+          Math.max(1, height >> level),
+          0,
+          levels[level].remaining(),
+          levels[level]);
+    }
+  }
+}
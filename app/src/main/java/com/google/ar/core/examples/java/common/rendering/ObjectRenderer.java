@@ -21,10 +21,12 @@ import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
 import android.opengl.Matrix;
+import android.util.Log;
 import de.javagl.obj.Obj;
 import de.javagl.obj.ObjData;
 import de.javagl.obj.ObjReader;
 import de.javagl.obj.ObjUtils;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -108,6 +110,9 @@ public class ObjectRenderer {
 
   private BlendMode blendMode = null;
 
+  // Set on the GL thread once all OpenGL resources have been created.
+  private boolean ready = false;
+
   // Temporary matrices allocated here to reduce number of allocations for each frame.
   private final float[] modelMatrix = new float[16];
   private final float[] modelViewMatrix = new float[16];
@@ -126,40 +131,72 @@ public class ObjectRenderer {
   private float[] uvTransform = null;
   private int depthTextureId;
 
+  // Compressed texture containers tried before falling back to the PNG, in order of preference.
+  // They are generated next to the PNG by the compressTextures Gradle task.
+  private static final String[] COMPRESSED_TEXTURE_SUFFIXES = {".astc.ktx", ".etc2.ktx"};
+
+  /** CPU-side model data, decoded off the GL thread by {@link #decode}. */
+  public static final class ModelData {
+    // Exactly one of these is set.
+    private final KtxTexture compressedTexture;
+    private final Bitmap textureBitmap;
+    private final ShortBuffer indices;
+    private final FloatBuffer vertices;
+    private final FloatBuffer texCoords;
+    private final FloatBuffer normals;
+
+    private ModelData(
+        KtxTexture compressedTexture,
+        Bitmap textureBitmap,
+        ShortBuffer indices,
+        FloatBuffer vertices,
+        FloatBuffer texCoords,
+        FloatBuffer normals) {
+      this.compressedTexture = compressedTexture;
+      this.textureBitmap = textureBitmap;
+      this.indices = indices;
+      this.vertices = vertices;
+      this.texCoords = texCoords;
+      this.normals = normals;
+    }
+  }
+
   /**
-   * Creates and initializes OpenGL resources needed for rendering the model.
+   * Reads the model and texture assets and prepares them for upload. Does not touch OpenGL, so it
+   * may be called on any thread.
    *
    * @param context Context for loading the shader and below-named model and texture assets.
    * @param objAssetName Name of the OBJ file containing the model geometry.
-   * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map.
+   * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map. A
+   *     compressed KTX variant next to it is used instead when its format is supported.
+   * @param supportedTextureFormats The compressed texture formats supported by the context, as
+   *     returned by {@link KtxTexture#querySupportedFormats()}.
    */
-  public void createOnGlThread(Context context, String objAssetName, String diffuseTextureAssetName)
+  public static ModelData decode(
+      Context context,
+      String objAssetName,
+      String diffuseTextureAssetName,
+      int[] supportedTextureFormats)
       throws IOException {
-    // Compiles and loads the shader based on the current configuration.
-    compileAndLoadShaderProgram(context);
-
-    // Read the texture.
-    Bitmap textureBitmap =
-        BitmapFactory.decodeStream(context.getAssets().open(diffuseTextureAssetName));
-
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-    GLES20.glGenTextures(textures.length, textures, 0);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
-
-    GLES20.glTexParameteri(
-        GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, textureBitmap, 0);
-    GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-
-    textureBitmap.recycle();
-
-    ShaderUtil.checkGLError(TAG, "Texture loading");
+    // Warm the shader source cache so that the GL thread only has to compile.
+    ShaderUtil.preloadShaderSource(context, VERTEX_SHADER_NAME);
+    ShaderUtil.preloadShaderSource(context, FRAGMENT_SHADER_NAME);
+
+    // Read the texture, preferring a pre-mipmapped compressed variant.
+    KtxTexture compressedTexture =
+        readCompressedTexture(context, diffuseTextureAssetName, supportedTextureFormats);
+    Bitmap textureBitmap = null;
+    if (compressedTexture == null) {
+      try (InputStream textureInputStream = context.getAssets().open(diffuseTextureAssetName)) {
+        textureBitmap = BitmapFactory.decodeStream(textureInputStream);
+      }
+    }
 
     // Read the obj file.
-    InputStream objInputStream = context.getAssets().open(objAssetName);
-    Obj obj = ObjReader.read(objInputStream);
+    Obj obj;
+    try (InputStream objInputStream = context.getAssets().open(objAssetName)) {
+      obj = ObjReader.read(objInputStream);
+    }
 
     // Prepare the Obj so that its structure is suitable for
     // rendering with OpenGL:
@@ -188,6 +225,114 @@ public class ObjectRenderer {
     }
     indices.rewind();
 
+    return new ModelData(compressedTexture, textureBitmap, indices, vertices, texCoords, normals);
+  }
+
+  private static KtxTexture readCompressedTexture(
+      Context context, String pngAssetName, int[] supportedTextureFormats) {
+    String baseName = pngAssetName.replaceFirst("\\.png$", "");
+    for (String suffix : COMPRESSED_TEXTURE_SUFFIXES) {
+      try (InputStream inputStream = context.getAssets().open(baseName + suffix)) {
+        KtxTexture texture = KtxTexture.read(inputStream);
+        if (texture.isSupported(supportedTextureFormats)) {
+          return texture;
+        }
+      } catch (FileNotFoundException e) {
+        // This variant was not generated; try the next one.
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to read compressed texture " + baseName + suffix, e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Creates and initializes OpenGL resources needed for rendering the model.
+   *
+   * @param context Context for loading the shader and below-named model and texture assets.
+   * @param objAssetName Name of the OBJ file containing the model geometry.
+   * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map.
+   */
+  public void createOnGlThread(Context context, String objAssetName, String diffuseTextureAssetName)
+      throws IOException {
+    createOnGlThread(
+        context,
+        decode(
+            context,
+            objAssetName,
+            diffuseTextureAssetName,
+            KtxTexture.querySupportedFormats()));
+  }
+
+  /**
+   * Decodes the model on the {@code pipeline} loader thread, and creates its OpenGL resources once
+   * the pipeline uploads it. {@link #isReady()} returns false until then. Must be called on the
+   * OpenGL thread.
+   *
+   * @param pipeline The pipeline to load the model with.
+   * @param context Context for loading the shader and below-named model and texture assets.
+   * @param objAssetName Name of the OBJ file containing the model geometry.
+   * @param diffuseTextureAssetName Name of the PNG file containing the diffuse texture map.
+   */
+  public void createAsync(
+      AssetPipeline pipeline,
+      Context context,
+      String objAssetName,
+      String diffuseTextureAssetName) {
+    ready = false;
+    int[] supportedTextureFormats = KtxTexture.querySupportedFormats();
+    pipeline.submit(
+        objAssetName,
+        () -> decode(context, objAssetName, diffuseTextureAssetName, supportedTextureFormats),
+        modelData -> createOnGlThread(context, modelData));
+  }
+
+  /** Returns true once the OpenGL resources have been created and the model can be drawn. */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Creates and initializes OpenGL resources needed for rendering the model from decoded data.
+   *
+   * @param context Context for loading the shader.
+   * @param modelData The decoded model, as returned by {@link #decode}.
+   */
+  public void createOnGlThread(Context context, ModelData modelData) throws IOException {
+    // Compiles and loads the shader based on the current configuration.
+    compileAndLoadShaderProgram(context);
+
+    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    GLES20.glGenTextures(textures.length, textures, 0);
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    if (modelData.compressedTexture != null) {
+      // Mip levels are baked into the file; a single-level file must not use a mip filter.
+      KtxTexture compressedTexture = modelData.compressedTexture;
+      GLES20.glTexParameteri(
+          GLES20.GL_TEXTURE_2D,
+          GLES20.GL_TEXTURE_MIN_FILTER,
+          compressedTexture.getLevelCount() > 1
+              ? GLES20.GL_LINEAR_MIPMAP_LINEAR
+              : GLES20.GL_LINEAR);
+      compressedTexture.upload();
+    } else {
+      GLES20.glTexParameteri(
+          GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+      GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, modelData.textureBitmap, 0);
+      GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+      modelData.textureBitmap.recycle();
+    }
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    ShaderUtil.checkGLError(TAG, "Texture loading");
+
+    FloatBuffer vertices = modelData.vertices;
+    FloatBuffer texCoords = modelData.texCoords;
+    FloatBuffer normals = modelData.normals;
+    ShortBuffer indices = modelData.indices;
+
     int[] buffers = new int[2];
     GLES20.glGenBuffers(2, buffers, 0);
     vertexBufferId = buffers[0];
@@ -219,6 +364,7 @@ public class ObjectRenderer {
     ShaderUtil.checkGLError(TAG, "OBJ buffer load");
 
     Matrix.setIdentityM(modelMatrix, 0);
+    ready = true;
   }
 
   /**
@@ -230,14 +376,30 @@ public class ObjectRenderer {
     this.blendMode = blendMode;
   }
 
+  /** Returns the blending mode for rendering, or null for opaque rendering. */
+  public BlendMode getBlendMode() {
+    return blendMode;
+  }
+
+  /** Returns the currently loaded shader program, used to group draws by state. */
+  public int getProgram() {
+    return program;
+  }
+
+  /** Returns the diffuse texture, used to group draws by state. */
+  public int getTextureId() {
+    return textures[0];
+  }
+
   /**
    * Specifies whether to use the depth texture to perform depth-based occlusion of virtual objects
    * from real-world geometry.
    *
    * <p>This function is a no-op if the value provided is the same as what is already set. If the
-   * value changes, this function will recompile and reload the shader program to either
-   * enable/disable depth-based occlusion. NOTE: recompilation of the shader is inefficient. This
-   * code could be optimized to precompile both versions of the shader.
+   * value changes, this function will switch to the shader program that enables/disables
+   * depth-based occlusion. Each variant is compiled once per GL context and cached by {@link
+   * ShaderUtil#createProgram}; later switches only look it up and reload the uniform locations.
+   * Both variants are listed by {@link #registerShaderVariants} so they can be built up front.
    *
    * @param context Context for loading the shader.
    * @param useDepthForOcclusion Specifies whether to use the depth texture to perform occlusion
@@ -254,21 +416,28 @@ public class ObjectRenderer {
     compileAndLoadShaderProgram(context);
   }
 
-  private void compileAndLoadShaderProgram(Context context) throws IOException {
-    // Compiles and loads the shader program based on the selected mode.
+  /**
+   * Registers every shader program variant this renderer may switch to, so that they can be built
+   * before they are needed.
+   */
+  public static void registerShaderVariants(ShaderVariantRegistry registry) {
+    registry.register(VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME, shaderDefines(false));
+    registry.register(VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME, shaderDefines(true));
+  }
+
+  private static Map<String, Integer> shaderDefines(boolean useDepthForOcclusion) {
     Map<String, Integer> defineValuesMap = new TreeMap<>();
     defineValuesMap.put(USE_DEPTH_FOR_OCCLUSION_SHADER_FLAG, useDepthForOcclusion ? 1 : 0);
+    return defineValuesMap;
+  }
 
-    final int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    final int fragmentShader =
-        ShaderUtil.loadGLShader(
-            TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME, defineValuesMap);
+  private void compileAndLoadShaderProgram(Context context) throws IOException {
+    // Compiles and loads the shader program based on the selected mode.
+    Map<String, Integer> defineValuesMap = shaderDefines(useDepthForOcclusion);
 
-    program = GLES20.glCreateProgram();
-    GLES20.glAttachShader(program, vertexShader);
-    GLES20.glAttachShader(program, fragmentShader);
-    GLES20.glLinkProgram(program);
+    program =
+        ShaderUtil.createProgram(
+            TAG, context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME, defineValuesMap);
     GLES20.glUseProgram(program);
 
     ShaderUtil.checkGLError(TAG, "Program creation");
@@ -306,12 +475,14 @@ public class ObjectRenderer {
    * @see android.opengl.Matrix
    */
   public void updateModelMatrix(float[] modelMatrix, float scaleFactor) {
-    float[] scaleMatrix = new float[16];
-    Matrix.setIdentityM(scaleMatrix, 0);
-    scaleMatrix[0] = scaleFactor;
-    scaleMatrix[5] = scaleFactor;
-    scaleMatrix[10] = scaleFactor;
-    Matrix.multiplyMM(this.modelMatrix, 0, modelMatrix, 0, scaleMatrix, 0);
+    updateModelMatrix(modelMatrix, 0, scaleFactor);
+  }
+
+  /**
+   * Overload of {@link #updateModelMatrix(float[], float)} that reads the matrix at {@code offset}.
+   */
+  public void updateModelMatrix(float[] modelMatrix, int offset, float scaleFactor) {
+    Matrix.scaleM(this.modelMatrix, 0, modelMatrix, offset, scaleFactor, scaleFactor, scaleFactor);
   }
 
   /**
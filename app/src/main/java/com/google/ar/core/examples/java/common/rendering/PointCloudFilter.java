@@ -0,0 +1,165 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Thins an ARCore point cloud before it is uploaded.
+ *
+ * <p>Points below a confidence threshold are dropped, and dense regions are reduced to the most
+ * confident point per grid cell. Kept points are copied into a reused array owned by the filter;
+ * the arrays only grow, so a steady-state frame allocates nothing. Not thread safe.
+ */
+public final class PointCloudFilter {
+  /** Number of floats per point: X,Y,Z,confidence. */
+  public static final int FLOATS_PER_POINT = 4;
+
+  private float minConfidence;
+  private float inverseCellSize;
+
+  private float[] points = new float[0];
+  private int pointCount;
+
+  // Open-addressing table from grid cell to the output point kept for it. Entries are valid only if
+  // their generation matches the current one, so the table is never cleared between frames.
+  private long[] cellKeys = new long[0];
+  private int[] cellPoints = new int[0];
+  private int[] cellGenerations = new int[0];
+  private int generation;
+
+  /**
+   * @param minConfidence Points with a lower confidence are dropped.
+   * @param cellSize Edge length of the downsampling grid cells in meters, or 0 to keep every point
+   *     that passes the confidence threshold.
+   */
+  public PointCloudFilter(float minConfidence, float cellSize) {
+    setMinConfidence(minConfidence);
+    setCellSize(cellSize);
+  }
+
+  /** Sets the confidence below which points are dropped. */
+  public void setMinConfidence(float minConfidence) {
+    this.minConfidence = minConfidence;
+  }
+
+  /** Sets the edge length of the downsampling grid cells in meters, or 0 to disable it. */
+  public void setCellSize(float cellSize) {
+    if (cellSize < 0) {
+      throw new IllegalArgumentException("cellSize must not be negative");
+    }
+    this.inverseCellSize = cellSize > 0 ? 1.0f / cellSize : 0;
+  }
+
+  /**
+   * Returns the filtered points, {@link #FLOATS_PER_POINT} floats each. Only the first {@link
+   * #getPointCount()} points are valid, and the array is reused by the next call to {@link
+   * #filter}.
+   */
+  public float[] getPoints() {
+    return points;
+  }
+
+  /** Returns the number of points kept by the last call to {@link #filter}. */
+  public int getPointCount() {
+    return pointCount;
+  }
+
+  /**
+   * Filters the points from the position to the limit of {@code source}. The buffer position is
+   * not changed.
+   *
+   * @return The number of points kept.
+   */
+  public int filter(FloatBuffer source) {
+    int floatCount = source.remaining() - source.remaining() % FLOATS_PER_POINT;
+    if (points.length < floatCount) {
+      points = new float[Integer.highestOneBit(floatCount - 1) << 1];
+    }
+    source.duplicate().get(points, 0, floatCount);
+    return filter(points, floatCount / FLOATS_PER_POINT);
+  }
+
+  /**
+   * Filters the first {@code count} points of {@code data}. The kept points are copied to the
+   * filter's own array, returned by {@link #getPoints()}; {@code data} is neither changed nor
+   * kept.
+   *
+   * @return The number of points kept.
+   */
+  public int filter(float[] data, int count) {
+    if (data != points && points.length < count * FLOATS_PER_POINT) {
+      points = new float[Integer.highestOneBit(count * FLOATS_PER_POINT - 1) << 1];
+    }
+    pointCount =
+        inverseCellSize > 0 ? filterAndDownsample(data, count) : filterConfidence(data, count);
+    return pointCount;
+  }
+
+  // Both filters write kept point i to points[i * FLOATS_PER_POINT], never ahead of the point being
+  // read, so source may be points itself.
+  private int filterConfidence(float[] source, int count) {
+    int kept = 0;
+    for (int i = 0; i < count; i++) {
+      int from = i * FLOATS_PER_POINT;
+      if (source[from + 3] >= minConfidence) {
+        copyPoint(source, from, kept * FLOATS_PER_POINT);
+        kept++;
+      }
+    }
+    return kept;
+  }
+
+  private int filterAndDownsample(float[] source, int count) {
+    prepareCellTable(count);
+    int mask = cellKeys.length - 1;
+    int kept = 0;
+    for (int i = 0; i < count; i++) {
+      int from = i * FLOATS_PER_POINT;
+      float confidence = source[from + 3];
+      if (confidence < minConfidence) {
+        continue;
+      }
+      long key = VoxelKey.of(source[from], source[from + 1], source[from + 2], inverseCellSize);
+      int slot = VoxelKey.hash(key) & mask;
+      while (cellGenerations[slot] == generation && cellKeys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      if (cellGenerations[slot] != generation) {
+        // First point in this cell.
+        cellGenerations[slot] = generation;
+        cellKeys[slot] = key;
+        cellPoints[slot] = kept;
+        copyPoint(source, from, kept * FLOATS_PER_POINT);
+        kept++;
+      } else {
+        int to = cellPoints[slot] * FLOATS_PER_POINT;
+        if (confidence > points[to + 3]) {
+          copyPoint(source, from, to);
+        }
+      }
+    }
+    return kept;
+  }
+
+  private void prepareCellTable(int count) {
+    // Keep the load factor at or below one half.
+    int required = Math.max(16, Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1);
+    if (cellKeys.length < required) {
+      cellKeys = new long[required];
+      cellPoints = new int[required];
+      cellGenerations = new int[required];
+      generation = 0;
+    }
+    if (++generation == 0) {
+      // Wrapped around: stale entries could look current, so start over.
+      Arrays.fill(cellGenerations, 0);
+      generation = 1;
+    }
+  }
+
+  private void copyPoint(float[] source, int from, int to) {
+    if (source != points || from != to) {
+      System.arraycopy(source, from, points, to, FLOATS_PER_POINT);
+    }
+  }
+}
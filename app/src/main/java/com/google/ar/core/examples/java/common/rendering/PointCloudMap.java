@@ -0,0 +1,311 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Accumulates ARCore feature points across frames in a voxel hash with a fixed memory cap.
+ *
+ * <p>Each point is snapped to the voxel that contains it. Points that land in the same voxel are
+ * merged into one point: its position is the confidence-weighted mean of the observations and its
+ * confidence grows with every observation. When the map is full, the least recently observed voxel
+ * is replaced. Voxels that have not been observed for longer than the maximum age are dropped.
+ *
+ * <p>All storage is allocated up front in primitive arrays. Live voxels are kept densely packed at
+ * indices {@code [0, size())} of {@link #getPoints()}, in the X,Y,Z,confidence layout that {@link
+ * PointCloudRenderer} draws, and changed voxels are reported through {@link #consumeDirtyRanges}
+ * so that only those need to be uploaded. Not thread safe.
+ */
+public final class PointCloudMap {
+  /** Number of floats stored per voxel in {@link #getPoints()}: X,Y,Z,confidence. */
+  public static final int FLOATS_PER_POINT = 4;
+
+  private static final int NONE = -1;
+  // Keeps points reported with zero confidence from having no weight at all.
+  private static final float MIN_WEIGHT = 1e-3f;
+
+  private final float inverseVoxelSize;
+  private final int capacity;
+  private final long maxAgeNanos;
+
+  // Per voxel, indexed by voxel number.
+  private final float[] points;
+  private final float[] weights;
+  private final long[] keys;
+  private final long[] lastSeenNanos;
+  // Doubly linked list of live voxels, from least to most recently observed.
+  private final int[] older;
+  private final int[] newer;
+  private int oldest = NONE;
+  private int newest = NONE;
+  private int size;
+
+  // Open addressing with linear probing. Each slot holds voxel number + 1, or 0 when empty.
+  private final int[] table;
+  private final int tableMask;
+
+  private final DirtyRangeTracker dirtyVoxels;
+
+  /**
+   * @param voxelSize Edge length of a voxel, in meters.
+   * @param capacity Maximum number of voxels kept.
+   * @param maxAgeNanos Voxels not observed for longer than this are dropped, or 0 to keep voxels
+   *     until the map is full.
+   */
+  public PointCloudMap(float voxelSize, int capacity, long maxAgeNanos) {
+    if (voxelSize <= 0 || capacity <= 0) {
+      throw new IllegalArgumentException("voxelSize and capacity must be positive");
+    }
+    this.inverseVoxelSize = 1.0f / voxelSize;
+    this.capacity = capacity;
+    this.maxAgeNanos = maxAgeNanos;
+    points = new float[capacity * FLOATS_PER_POINT];
+    weights = new float[capacity];
+    keys = new long[capacity];
+    lastSeenNanos = new long[capacity];
+    older = new int[capacity];
+    newer = new int[capacity];
+    // Keep the load factor at or below one half.
+    table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+    tableMask = table.length - 1;
+    dirtyVoxels = new DirtyRangeTracker(capacity);
+  }
+
+  /** Returns the maximum number of voxels the map keeps. */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /** Returns the number of live voxels. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the merged points, {@link #FLOATS_PER_POINT} floats per voxel. Only the first {@link
+   * #size()} voxels are live. The array must not be modified.
+   */
+  public float[] getPoints() {
+    return points;
+  }
+
+  /** Returns the voxel containing the given world position, or -1 if it has not been observed. */
+  public int find(float x, float y, float z) {
+    long key = VoxelKey.of(x, y, z, inverseVoxelSize);
+    for (int slot = slotFor(key); table[slot] != 0; slot = (slot + 1) & tableMask) {
+      if (keys[table[slot] - 1] == key) {
+        return table[slot] - 1;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * Merges a frame of points into the map.
+   *
+   * @param cloudPoints Points as X,Y,Z,confidence, from its position to its limit. The buffer
+   *     position is not changed.
+   * @param timestampNanos Timestamp of the frame. Must not decrease between calls.
+   */
+  public void insert(FloatBuffer cloudPoints, long timestampNanos) {
+    int end = cloudPoints.limit() - FLOATS_PER_POINT;
+    for (int i = cloudPoints.position(); i <= end; i += FLOATS_PER_POINT) {
+      insert(
+          cloudPoints.get(i),
+          cloudPoints.get(i + 1),
+          cloudPoints.get(i + 2),
+          cloudPoints.get(i + 3),
+          timestampNanos);
+    }
+    removeStale(timestampNanos);
+  }
+
+  /**
+   * Merges a frame of points into the map.
+   *
+   * @param cloudPoints Points as X,Y,Z,confidence.
+   * @param pointCount Number of points to read from the start of {@code cloudPoints}.
+   * @param timestampNanos Timestamp of the frame. Must not decrease between calls.
+   */
+  public void insert(float[] cloudPoints, int pointCount, long timestampNanos) {
+    for (int i = 0; i < pointCount * FLOATS_PER_POINT; i += FLOATS_PER_POINT) {
+      insert(
+          cloudPoints[i],
+          cloudPoints[i + 1],
+          cloudPoints[i + 2],
+          cloudPoints[i + 3],
+          timestampNanos);
+    }
+    removeStale(timestampNanos);
+  }
+
+  private void removeStale(long timestampNanos) {
+    if (maxAgeNanos > 0) {
+      long cutoff = timestampNanos - maxAgeNanos;
+      while (oldest != NONE && lastSeenNanos[oldest] < cutoff) {
+        remove(oldest);
+      }
+    }
+  }
+
+  private void insert(float x, float y, float z, float confidence, long timestampNanos) {
+    confidence = Math.max(0.0f, Math.min(1.0f, confidence));
+    float weight = Math.max(confidence, MIN_WEIGHT);
+    long key = VoxelKey.of(x, y, z, inverseVoxelSize);
+    int slot = slotFor(key);
+    for (; table[slot] != 0; slot = (slot + 1) & tableMask) {
+      int voxel = table[slot] - 1;
+      if (keys[voxel] == key) {
+        merge(voxel, x, y, z, confidence, weight);
+        touch(voxel, timestampNanos);
+        return;
+      }
+    }
+
+    int voxel;
+    if (size == capacity) {
+      // Reuse the least recently observed voxel. Removing it from the table may shift entries, so
+      // the free slot for the new key is searched again.
+      voxel = oldest;
+      removeFromTable(voxel);
+      unlink(voxel);
+      slot = slotFor(key);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & tableMask;
+      }
+    } else {
+      voxel = size++;
+    }
+    table[slot] = voxel + 1;
+    keys[voxel] = key;
+    int offset = voxel * FLOATS_PER_POINT;
+    points[offset] = x;
+    points[offset + 1] = y;
+    points[offset + 2] = z;
+    points[offset + 3] = confidence;
+    weights[voxel] = weight;
+    lastSeenNanos[voxel] = timestampNanos;
+    linkNewest(voxel);
+    markDirty(voxel);
+  }
+
+  private void merge(int voxel, float x, float y, float z, float confidence, float weight) {
+    int offset = voxel * FLOATS_PER_POINT;
+    float total = weights[voxel] + weight;
+    float t = weight / total;
+    points[offset] += (x - points[offset]) * t;
+    points[offset + 1] += (y - points[offset + 1]) * t;
+    points[offset + 2] += (z - points[offset + 2]) * t;
+    // Independent observations: the voxel is wrong only if every observation was wrong.
+    points[offset + 3] = 1.0f - (1.0f - points[offset + 3]) * (1.0f - confidence);
+    weights[voxel] = total;
+    markDirty(voxel);
+  }
+
+  /** Removes all voxels. */
+  public void clear() {
+    Arrays.fill(table, 0);
+    size = 0;
+    oldest = NONE;
+    newest = NONE;
+    dirtyVoxels.clear();
+  }
+
+  /**
+   * Reports the voxels changed since the previous call as contiguous ranges within {@code [0,
+   * size())}, in increasing order, and clears the changed state.
+   */
+  public void consumeDirtyRanges(DirtyRangeTracker.RangeConsumer consumer) {
+    dirtyVoxels.consume(size, consumer);
+  }
+
+  private void remove(int voxel) {
+    removeFromTable(voxel);
+    unlink(voxel);
+    int last = --size;
+    if (voxel == last) {
+      return;
+    }
+    // Move the last voxel into the hole to keep live voxels densely packed.
+    int slot = slotFor(keys[last]);
+    while (table[slot] != last + 1) {
+      slot = (slot + 1) & tableMask;
+    }
+    table[slot] = voxel + 1;
+    System.arraycopy(
+        points, last * FLOATS_PER_POINT, points, voxel * FLOATS_PER_POINT, FLOATS_PER_POINT);
+    weights[voxel] = weights[last];
+    keys[voxel] = keys[last];
+    lastSeenNanos[voxel] = lastSeenNanos[last];
+    older[voxel] = older[last];
+    newer[voxel] = newer[last];
+    if (older[voxel] != NONE) {
+      newer[older[voxel]] = voxel;
+    } else {
+      oldest = voxel;
+    }
+    if (newer[voxel] != NONE) {
+      older[newer[voxel]] = voxel;
+    } else {
+      newest = voxel;
+    }
+    markDirty(voxel);
+  }
+
+  private void removeFromTable(int voxel) {
+    int hole = slotFor(keys[voxel]);
+    while (table[hole] != voxel + 1) {
+      hole = (hole + 1) & tableMask;
+    }
+    // Backward-shift deletion: pull later entries of the probe run into the hole so that lookups
+    // never stop early at it.
+    for (int slot = (hole + 1) & tableMask; table[slot] != 0; slot = (slot + 1) & tableMask) {
+      int home = slotFor(keys[table[slot] - 1]);
+      if (((slot - home) & tableMask) >= ((slot - hole) & tableMask)) {
+        table[hole] = table[slot];
+        hole = slot;
+      }
+    }
+    table[hole] = 0;
+  }
+
+  private void touch(int voxel, long timestampNanos) {
+    lastSeenNanos[voxel] = timestampNanos;
+    if (voxel != newest) {
+      unlink(voxel);
+      linkNewest(voxel);
+    }
+  }
+
+  private void linkNewest(int voxel) {
+    older[voxel] = newest;
+    newer[voxel] = NONE;
+    if (newest != NONE) {
+      newer[newest] = voxel;
+    } else {
+      oldest = voxel;
+    }
+    newest = voxel;
+  }
+
+  private void unlink(int voxel) {
+    if (older[voxel] != NONE) {
+      newer[older[voxel]] = newer[voxel];
+    } else {
+      oldest = newer[voxel];
+    }
+    if (newer[voxel] != NONE) {
+      older[newer[voxel]] = older[voxel];
+    } else {
+      newest = older[voxel];
+    }
+  }
+
+  private void markDirty(int voxel) {
+    dirtyVoxels.mark(voxel);
+  }
+
+  private int slotFor(long key) {
+    return VoxelKey.hash(key) & tableMask;
+  }
+}
@@ -21,8 +21,14 @@ import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 import com.google.ar.core.PointCloud;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 
-/** Renders a point cloud. */
+/**
+ * Renders a point cloud. By default only the points of the latest frame are drawn; when created
+ * with a {@link PointCloudMap}, points accumulate in the map and only changed voxels are uploaded.
+ */
 public class PointCloudRenderer {
   private static final String TAG = PointCloud.class.getSimpleName();
 
@@ -34,9 +40,16 @@ public class PointCloudRenderer {
   private static final int FLOATS_PER_POINT = 4; // X,Y,Z,confidence.
   private static final int BYTES_PER_POINT = BYTES_PER_FLOAT * FLOATS_PER_POINT;
   private static final int INITIAL_BUFFER_POINTS = 1000;
+  // Three buffers, so the one written in a frame was last drawn two frames earlier and the driver
+  // need not wait for the GPU to finish with it.
+  private static final int VBO_RING_SIZE = 3;
+  private static final int SHRINK_AFTER_USES = 60;
 
-  private int vbo;
-  private int vboSize;
+  private final int[] vbos = new int[VBO_RING_SIZE];
+  private final StreamingBufferRing vboRing =
+      new StreamingBufferRing(
+          VBO_RING_SIZE, INITIAL_BUFFER_POINTS * BYTES_PER_POINT, SHRINK_AFTER_USES);
+  private int drawVbo;
 
   private int programName;
   private int positionAttribute;
@@ -50,7 +63,36 @@ public class PointCloudRenderer {
   // was not changed.  Do this using the timestamp since we can't compare PointCloud objects.
   private long lastTimestamp = 0;
 
-  public PointCloudRenderer() {}
+  private final PointCloudMap map;
+  // Staging copy of the map points, uploaded range by range.
+  private final FloatBuffer mapStaging;
+  // Voxels each ring buffer is missing, since the map changes while the other buffers are written.
+  private final DirtyRangeTracker[] staleVoxels;
+  private final DirtyRangeTracker.RangeConsumer markMapRangeStale = this::markMapRangeStale;
+  private final DirtyRangeTracker.RangeConsumer uploadMapRange = this::uploadMapRange;
+
+  private PointCloudFilter filter;
+  // Direct copy of the filtered points for upload; grows as needed.
+  private FloatBuffer filteredStaging;
+
+  public PointCloudRenderer() {
+    this.map = null;
+    this.mapStaging = null;
+    this.staleVoxels = null;
+  }
+
+  /** Creates a renderer that accumulates points in {@code map} and draws all of its voxels. */
+  public PointCloudRenderer(PointCloudMap map) {
+    this.map = map;
+    this.mapStaging =
+        ByteBuffer.allocateDirect(map.getCapacity() * BYTES_PER_POINT)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    this.staleVoxels = new DirtyRangeTracker[VBO_RING_SIZE];
+    for (int i = 0; i < VBO_RING_SIZE; i++) {
+      staleVoxels[i] = new DirtyRangeTracker(map.getCapacity());
+    }
+  }
 
   /**
    * Allocates and initializes OpenGL resources needed by the plane renderer. Must be called on the
@@ -61,26 +103,30 @@ public class PointCloudRenderer {
   public void createOnGlThread(Context context) throws IOException {
     ShaderUtil.checkGLError(TAG, "before create");
 
-    int[] buffers = new int[1];
-    GLES20.glGenBuffers(1, buffers, 0);
-    vbo = buffers[0];
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-
-    vboSize = INITIAL_BUFFER_POINTS * BYTES_PER_POINT;
-    GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
+    GLES20.glGenBuffers(VBO_RING_SIZE, vbos, 0);
+    vboRing.reset();
+    int initialPoints = map != null ? map.getCapacity() : INITIAL_BUFFER_POINTS;
+    for (int slot = 0; slot < VBO_RING_SIZE; slot++) {
+      GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbos[slot]);
+      GLES20.glBufferData(
+          GLES20.GL_ARRAY_BUFFER,
+          vboRing.reserve(slot, initialPoints * BYTES_PER_POINT),
+          null,
+          GLES20.GL_DYNAMIC_DRAW);
+      if (map != null) {
+        // The new buffers are empty, so the whole map has to be uploaded again.
+        staleVoxels[slot].markAll();
+      }
+    }
     GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    drawVbo = vbos[0];
+    numPoints = 0;
+    lastTimestamp = 0;
 
     ShaderUtil.checkGLError(TAG, "buffer alloc");
 
-    int vertexShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_VERTEX_SHADER, VERTEX_SHADER_NAME);
-    int passthroughShader =
-        ShaderUtil.loadGLShader(TAG, context, GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER_NAME);
-
-    programName = GLES20.glCreateProgram();
-    GLES20.glAttachShader(programName, vertexShader);
-    GLES20.glAttachShader(programName, passthroughShader);
-    GLES20.glLinkProgram(programName);
+    programName =
+        ShaderUtil.createProgram(TAG, context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
     GLES20.glUseProgram(programName);
 
     ShaderUtil.checkGLError(TAG, "program");
@@ -93,9 +139,23 @@ public class PointCloudRenderer {
     ShaderUtil.checkGLError(TAG, "program  params");
   }
 
+  /** Registers the shader program used by this renderer so it can be built up front. */
+  public static void registerShaderVariants(ShaderVariantRegistry registry) {
+    registry.register(VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
+  }
+
+  /**
+   * Sets a filter that drops low-confidence points and thins dense regions before they are
+   * uploaded or merged into the map, or null to use every point.
+   */
+  public void setFilter(PointCloudFilter filter) {
+    this.filter = filter;
+  }
+
   /**
    * Updates the OpenGL buffer contents to the provided point. Repeated calls with the same point
-   * cloud will be ignored.
+   * cloud will be ignored. Each update writes the next buffer of a ring, never the one drawn in the
+   * previous frame.
    */
   public void update(PointCloud cloud) {
     if (cloud.getTimestamp() == lastTimestamp) {
@@ -104,24 +164,79 @@ public class PointCloudRenderer {
     }
     ShaderUtil.checkGLError(TAG, "before update");
 
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    int slot = vboRing.nextSlot();
+    drawVbo = vbos[slot];
+    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, drawVbo);
     lastTimestamp = cloud.getTimestamp();
 
-    // If the VBO is not large enough to fit the new point cloud, resize it.
-    numPoints = cloud.getPoints().remaining() / FLOATS_PER_POINT;
-    if (numPoints * BYTES_PER_POINT > vboSize) {
-      while (numPoints * BYTES_PER_POINT > vboSize) {
-        vboSize *= 2;
+    FloatBuffer points = cloud.getPoints();
+    if (filter != null) {
+      filter.filter(points);
+    }
+
+    if (map != null) {
+      if (filter != null) {
+        map.insert(filter.getPoints(), filter.getPointCount(), cloud.getTimestamp());
+      } else {
+        map.insert(points, cloud.getTimestamp());
+      }
+      map.consumeDirtyRanges(markMapRangeStale);
+      numPoints = map.size();
+      staleVoxels[slot].consume(numPoints, uploadMapRange);
+    } else {
+      if (filter != null) {
+        points = stageFilteredPoints();
       }
-      GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vboSize, null, GLES20.GL_DYNAMIC_DRAW);
+      // Grow or shrink this slot if needed; the new allocation also replaces its old contents.
+      numPoints = points.remaining() / FLOATS_PER_POINT;
+      int newSize = vboRing.reserve(slot, numPoints * BYTES_PER_POINT);
+      if (newSize != 0) {
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, newSize, null, GLES20.GL_DYNAMIC_DRAW);
+      }
+      GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, points);
     }
-    GLES20.glBufferSubData(
-        GLES20.GL_ARRAY_BUFFER, 0, numPoints * BYTES_PER_POINT, cloud.getPoints());
     GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 
     ShaderUtil.checkGLError(TAG, "after update");
   }
 
+  private FloatBuffer stageFilteredPoints() {
+    int floatCount = filter.getPointCount() * FLOATS_PER_POINT;
+    if (filteredStaging == null || filteredStaging.capacity() < floatCount) {
+      int capacity = INITIAL_BUFFER_POINTS * FLOATS_PER_POINT;
+      while (capacity < floatCount) {
+        capacity *= 2;
+      }
+      filteredStaging =
+          ByteBuffer.allocateDirect(capacity * BYTES_PER_FLOAT)
+              .order(ByteOrder.nativeOrder())
+              .asFloatBuffer();
+    }
+    filteredStaging.clear();
+    filteredStaging.put(filter.getPoints(), 0, floatCount);
+    filteredStaging.flip();
+    return filteredStaging;
+  }
+
+  private void markMapRangeStale(int firstVoxel, int voxelCount) {
+    for (DirtyRangeTracker tracker : staleVoxels) {
+      tracker.markRange(firstVoxel, voxelCount);
+    }
+  }
+
+  private void uploadMapRange(int firstVoxel, int voxelCount) {
+    int offset = firstVoxel * PointCloudMap.FLOATS_PER_POINT;
+    int length = voxelCount * PointCloudMap.FLOATS_PER_POINT;
+    mapStaging.position(offset);
+    mapStaging.put(map.getPoints(), offset, length);
+    mapStaging.position(offset);
+    GLES20.glBufferSubData(
+        GLES20.GL_ARRAY_BUFFER,
+        firstVoxel * BYTES_PER_POINT,
+        voxelCount * BYTES_PER_POINT,
+        mapStaging);
+  }
+
   /**
    * Renders the point cloud. ARCore point cloud is given in world space.
    *
@@ -138,7 +253,7 @@ public class PointCloudRenderer {
 
     GLES20.glUseProgram(programName);
     GLES20.glEnableVertexAttribArray(positionAttribute);
-    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+    GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, drawVbo);
     GLES20.glVertexAttribPointer(positionAttribute, 4, GLES20.GL_FLOAT, false, BYTES_PER_POINT, 0);
     GLES20.glUniform4f(colorUniform, 31.0f / 255.0f, 188.0f / 255.0f, 210.0f / 255.0f, 1.0f);
     GLES20.glUniformMatrix4fv(modelViewProjectionUniform, 1, false, modelViewProjection, 0);
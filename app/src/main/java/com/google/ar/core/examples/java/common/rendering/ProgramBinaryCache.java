@@ -0,0 +1,198 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Stores linked program binaries on disk so that later cold starts can skip shader compilation.
+ *
+ * <p>Uses {@code glGetProgramBinary}/{@code glProgramBinary}, which require an OpenGL ES 3.0
+ * context. Binaries live in the code cache directory, which the system clears when the app is
+ * updated. A binary that the driver rejects is deleted, and the caller falls back to compiling from
+ * source. Must only be used on the GL thread of the context it was created for, except for the
+ * counters, which may be read from any thread.
+ */
+public final class ProgramBinaryCache {
+  private static final String TAG = ProgramBinaryCache.class.getSimpleName();
+  private static final String CACHE_DIRECTORY = "program_binaries";
+  private static final int FILE_MAGIC = 0x50424331; // "PBC1"
+
+  private final File directory;
+  private final String glVersion;
+  private final String glRenderer;
+
+  // Only written on the GL thread; volatile so that other threads read current values.
+  private volatile int hitCount;
+  private volatile int missCount;
+  private volatile int rejectCount;
+
+  private ProgramBinaryCache(File directory, String glVersion, String glRenderer) {
+    this.directory = directory;
+    this.glVersion = glVersion;
+    this.glRenderer = glRenderer;
+  }
+
+  /**
+   * Creates a cache for the current context, or returns null if the context cannot retrieve
+   * program binaries. Must be called on the GL thread.
+   */
+  public static ProgramBinaryCache create(Context context) {
+    String glVersion = GLES20.glGetString(GLES20.GL_VERSION);
+    if (glVersion == null || !glVersion.startsWith("OpenGL ES ") || majorVersion(glVersion) < 3) {
+      return null;
+    }
+    int[] formatCount = new int[1];
+    GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0);
+    if (formatCount[0] <= 0) {
+      return null;
+    }
+    File directory = new File(context.getCodeCacheDir(), CACHE_DIRECTORY);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      Log.w(TAG, "Could not create " + directory);
+      return null;
+    }
+    return new ProgramBinaryCache(
+        directory, glVersion, GLES20.glGetString(GLES20.GL_RENDERER));
+  }
+
+  private static int majorVersion(String glVersion) {
+    // Format: "OpenGL ES <major>.<minor> <vendor-specific information>".
+    String version = glVersion.substring("OpenGL ES ".length());
+    int dot = version.indexOf('.');
+    try {
+      return Integer.parseInt(dot < 0 ? version : version.substring(0, dot));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /** Returns the cache key for a program built from the given preprocessed sources. */
+  public String keyFor(String vertexSource, String fragmentSource) {
+    return ProgramBinaryKey.derive(vertexSource, fragmentSource, glVersion, glRenderer);
+  }
+
+  /**
+   * Creates a program from the cached binary for {@code key}.
+   *
+   * @return The linked program, or 0 if there is no usable binary.
+   */
+  public int load(String key) {
+    File file = new File(directory, key);
+    if (!file.isFile()) {
+      missCount++;
+      return 0;
+    }
+
+    int format;
+    ByteBuffer binary;
+    try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+      if (inputStream.readInt() != FILE_MAGIC) {
+        throw new IOException("Bad program binary header");
+      }
+      format = inputStream.readInt();
+      byte[] bytes = new byte[inputStream.readInt()];
+      inputStream.readFully(bytes);
+      binary = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.nativeOrder());
+      binary.put(bytes).rewind();
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read program binary " + key, e);
+      reject(file);
+      return 0;
+    }
+
+    int program = GLES20.glCreateProgram();
+    GLES30.glProgramBinary(program, format, binary, binary.capacity());
+    final int[] linkStatus = new int[1];
+    GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+    // Clear any error raised by an unsupported format; the link status already reports it.
+    while (GLES20.glGetError() != GLES20.GL_NO_ERROR) {}
+    if (linkStatus[0] == 0) {
+      Log.i(TAG, "Program binary rejected by the driver: " + key);
+      GLES20.glDeleteProgram(program);
+      reject(file);
+      return 0;
+    }
+    hitCount++;
+    return program;
+  }
+
+  /**
+   * Writes the binary of a linked program. The program should have been linked with {@code
+   * GL_PROGRAM_BINARY_RETRIEVABLE_HINT} set.
+   */
+  public void store(String key, int program) {
+    final int[] length = new int[1];
+    GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+    if (length[0] <= 0) {
+      return;
+    }
+    ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+    final int[] format = new int[1];
+    GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+    if (GLES20.glGetError() != GLES20.GL_NO_ERROR) {
+      return;
+    }
+    byte[] bytes = new byte[length[0]];
+    binary.get(bytes);
+
+    // Write to a temporary file first so that a crash never leaves a truncated binary behind.
+    File temporaryFile = new File(directory, key + ".tmp");
+    try (DataOutputStream outputStream =
+        new DataOutputStream(new FileOutputStream(temporaryFile))) {
+      outputStream.writeInt(FILE_MAGIC);
+      outputStream.writeInt(format[0]);
+      outputStream.writeInt(bytes.length);
+      outputStream.write(bytes);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write program binary " + key, e);
+      temporaryFile.delete();
+      return;
+    }
+    if (!temporaryFile.renameTo(new File(directory, key))) {
+      temporaryFile.delete();
+    }
+  }
+
+  private void reject(File file) {
+    rejectCount++;
+    if (!file.delete()) {
+      Log.w(TAG, "Could not delete " + file);
+    }
+  }
+
+  /** Returns the number of programs created from a cached binary. */
+  public int getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of programs that had no cached binary. */
+  public int getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of cached binaries that were unreadable or rejected by the driver. */
+  public int getRejectCount() {
+    return rejectCount;
+  }
+
+  @Override
+  public String toString() {
+    return "ProgramBinaryCache{hits="
+        + hitCount
+        + ", misses="
+        + missCount
+        + ", rejects="
+        + rejectCount
+        + "}";
+  }
+}
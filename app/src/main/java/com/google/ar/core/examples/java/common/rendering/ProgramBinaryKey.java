@@ -0,0 +1,62 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Derives the on-disk key of a cached program binary.
+ *
+ * <p>A binary is only valid for the exact preprocessed sources it was linked from and for the
+ * driver that produced it, so all of these go into the key. Driver updates change the version or
+ * renderer string and therefore miss the cache instead of feeding an incompatible binary to the
+ * new driver. This class has no Android dependencies.
+ */
+public final class ProgramBinaryKey {
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * Returns a file-name safe key for a program.
+   *
+   * @param vertexSource The vertex shader source, exactly as passed to the compiler.
+   * @param fragmentSource The fragment shader source, exactly as passed to the compiler.
+   * @param glVersion The {@code GL_VERSION} string of the context.
+   * @param glRenderer The {@code GL_RENDERER} string of the context.
+   */
+  public static String derive(
+      String vertexSource, String fragmentSource, String glVersion, String glRenderer) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("SHA-256 is always available", e);
+    }
+    // Length-prefix every field so that moving text between fields changes the key.
+    update(digest, glVersion);
+    update(digest, glRenderer);
+    update(digest, vertexSource);
+    update(digest, fragmentSource);
+    return toHex(digest.digest());
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    int length = bytes.length;
+    digest.update(
+        new byte[] {
+          (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length
+        });
+    digest.update(bytes);
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(hex);
+  }
+
+  private ProgramBinaryKey() {}
+}
@@ -0,0 +1,192 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.util.Arrays;
+
+/**
+ * Collects {@link ObjectRenderer} draws for a frame and submits them in state- and depth-sorted
+ * order.
+ *
+ * <p>Every item gets a 64-bit sort key. Opaque items are keyed by (pass, program, texture, depth)
+ * so that state changes are grouped and, within a material, geometry is drawn front-to-back for
+ * early-z rejection. Blended items are keyed by (pass, inverted depth, program, texture) so that
+ * they are drawn back-to-front after all opaque geometry, which is required for correct blending.
+ *
+ * <p>Keys are sorted with an LSD radix sort over preallocated arrays. The queue only allocates when
+ * it has to grow beyond the largest item count seen so far.
+ */
+public class RenderQueue {
+  private static final int INITIAL_CAPACITY = 64;
+  private static final int MATRIX_SIZE = 16;
+
+  // Key layout, from the most significant bit:
+  //   opaque:  | pass:2 | program:11 | texture:11 | unused:8 | depth:32 |
+  //   blended: | pass:2 | ~depth:32 | program:11 | texture:11 | unused:8 |
+  private static final int PASS_SHIFT = 62;
+  private static final int STATE_BITS = 11;
+  private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+  private static final long DEPTH_MASK = 0xFFFFFFFFL;
+  private static final long PASS_OPAQUE = 0;
+  private static final long PASS_BLENDED = 1;
+
+  private static final int RADIX_BITS = 8;
+  private static final int RADIX_SIZE = 1 << RADIX_BITS;
+  private static final int RADIX_PASSES = Long.SIZE / RADIX_BITS;
+
+  private int count;
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private int[] order = new int[INITIAL_CAPACITY];
+  private ObjectRenderer[] renderers = new ObjectRenderer[INITIAL_CAPACITY];
+  private float[] modelMatrices = new float[INITIAL_CAPACITY * MATRIX_SIZE];
+  private float[] scaleFactors = new float[INITIAL_CAPACITY];
+
+  // Radix sort scratch space.
+  private long[] sortKeys = new long[INITIAL_CAPACITY];
+  private long[] scratchKeys = new long[INITIAL_CAPACITY];
+  private int[] scratchOrder = new int[INITIAL_CAPACITY];
+  private final int[] histogram = new int[RADIX_SIZE];
+
+  /** Removes all items. Must be called at the start of each frame. */
+  public void clear() {
+    for (int i = 0; i < count; i++) {
+      renderers[i] = null;
+    }
+    count = 0;
+  }
+
+  /** Returns the number of items queued for this frame. */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Queues a draw of {@code renderer} with the given model matrix.
+   *
+   * @param renderer The renderer to draw with. Its blend mode, program and texture determine the
+   *     sort order.
+   * @param modelMatrix A 4x4 model-to-world transformation matrix, stored in column-major order.
+   *     The contents are copied.
+   * @param scaleFactor A separate scaling factor to apply before the {@code modelMatrix}.
+   * @param cameraView A 4x4 view matrix, in column-major order, used to compute the view depth.
+   */
+  public void add(
+      ObjectRenderer renderer, float[] modelMatrix, float scaleFactor, float[] cameraView) {
+    add(renderer, modelMatrix, 0, scaleFactor, cameraView);
+  }
+
+  /**
+   * Queues a draw with the model matrix at {@code offset} in {@code modelMatrices}, such as a
+   * buffer holding the matrices of many anchors back to back.
+   */
+  public void add(
+      ObjectRenderer renderer,
+      float[] modelMatrices,
+      int offset,
+      float scaleFactor,
+      float[] cameraView) {
+    if (count == keys.length) {
+      grow();
+    }
+    int index = count++;
+    renderers[index] = renderer;
+    scaleFactors[index] = scaleFactor;
+    System.arraycopy(modelMatrices, offset, this.modelMatrices, index * MATRIX_SIZE, MATRIX_SIZE);
+
+    // View space z of the model origin. The camera looks down -z, so depth is its negation.
+    float depth =
+        -(cameraView[2] * modelMatrices[offset + 12]
+            + cameraView[6] * modelMatrices[offset + 13]
+            + cameraView[10] * modelMatrices[offset + 14]
+            + cameraView[14]);
+    keys[index] =
+        makeKey(
+            renderer.getBlendMode() != null,
+            renderer.getProgram(),
+            renderer.getTextureId(),
+            depth);
+  }
+
+  /** Sorts the queued items and draws them. */
+  public void draw(float[] cameraView, float[] cameraPerspective, float[] colorCorrectionRgba) {
+    sort();
+    for (int i = 0; i < count; i++) {
+      int index = order[i];
+      ObjectRenderer renderer = renderers[index];
+      renderer.updateModelMatrix(modelMatrices, index * MATRIX_SIZE, scaleFactors[index]);
+      renderer.draw(cameraView, cameraPerspective, colorCorrectionRgba);
+    }
+  }
+
+  private static long makeKey(boolean blended, int program, int texture, float depth) {
+    // The bit pattern of a non-negative float increases monotonically with its value. Anything
+    // behind the camera is clamped to zero.
+    long depthBits = Float.floatToRawIntBits(Math.max(depth, 0.0f)) & DEPTH_MASK;
+    long state = ((program & STATE_MASK) << STATE_BITS) | (texture & STATE_MASK);
+    if (blended) {
+      return (PASS_BLENDED << PASS_SHIFT)
+          | ((~depthBits & DEPTH_MASK) << (PASS_SHIFT - 32))
+          | (state << (PASS_SHIFT - 32 - 2 * STATE_BITS));
+    }
+    return (PASS_OPAQUE << PASS_SHIFT) | (state << (PASS_SHIFT - 2 * STATE_BITS)) | depthBits;
+  }
+
+  /** Sorts {@link #order} by ascending key using a stable LSD radix sort. */
+  private void sort() {
+    long[] srcKeys = sortKeys;
+    int[] srcOrder = order;
+    long[] dstKeys = scratchKeys;
+    int[] dstOrder = scratchOrder;
+    System.arraycopy(keys, 0, srcKeys, 0, count);
+    for (int i = 0; i < count; i++) {
+      srcOrder[i] = i;
+    }
+    if (count < 2) {
+      return;
+    }
+
+    for (int pass = 0; pass < RADIX_PASSES; pass++) {
+      int shift = pass * RADIX_BITS;
+      Arrays.fill(histogram, 0);
+      for (int i = 0; i < count; i++) {
+        histogram[(int) (srcKeys[i] >>> shift) & (RADIX_SIZE - 1)]++;
+      }
+      // Skip passes where every key has the same digit; they would not change the order.
+      if (histogram[(int) (srcKeys[0] >>> shift) & (RADIX_SIZE - 1)] == count) {
+        continue;
+      }
+      int offset = 0;
+      for (int digit = 0; digit < RADIX_SIZE; digit++) {
+        int digitCount = histogram[digit];
+        histogram[digit] = offset;
+        offset += digitCount;
+      }
+      for (int i = 0; i < count; i++) {
+        long key = srcKeys[i];
+        int destination = histogram[(int) (key >>> shift) & (RADIX_SIZE - 1)]++;
+        dstKeys[destination] = key;
+        dstOrder[destination] = srcOrder[i];
+      }
+      long[] tmpKeys = srcKeys;
+      srcKeys = dstKeys;
+      dstKeys = tmpKeys;
+      int[] tmpOrder = srcOrder;
+      srcOrder = dstOrder;
+      dstOrder = tmpOrder;
+    }
+
+    if (srcOrder != order) {
+      System.arraycopy(srcOrder, 0, order, 0, count);
+    }
+  }
+
+  private void grow() {
+    int capacity = keys.length * 2;
+    keys = Arrays.copyOf(keys, capacity);
+    order = Arrays.copyOf(order, capacity);
+    renderers = Arrays.copyOf(renderers, capacity);
+    modelMatrices = Arrays.copyOf(modelMatrices, capacity * MATRIX_SIZE);
+    scaleFactors = Arrays.copyOf(scaleFactors, capacity);
+    sortKeys = new long[capacity];
+    scratchKeys = new long[capacity];
+    scratchOrder = new int[capacity];
+  }
+}
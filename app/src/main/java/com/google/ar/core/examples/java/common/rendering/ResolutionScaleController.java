@@ -0,0 +1,90 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+/**
+ * Picks the resolution scale of the AR content layer from measured frame times.
+ *
+ * <p>Frame times are smoothed with an exponential moving average. When the average stays over the
+ * target for a number of frames, the scale is lowered by one step; when it stays well under the
+ * target for a longer run of frames, the scale is raised again. Scaling down reacts faster than
+ * scaling up, so that a sudden load is absorbed quickly while the resolution does not oscillate.
+ * Pure Java and not thread safe.
+ */
+public final class ResolutionScaleController {
+  private static final double SMOOTHING = 0.1;
+  // Below this fraction of the target, there is room to raise the scale.
+  private static final double HEADROOM = 0.75;
+  private static final int FRAMES_BEFORE_DOWNSCALE = 15;
+  private static final int FRAMES_BEFORE_UPSCALE = 90;
+
+  private final long targetFrameNanos;
+  private final float minScale;
+  private final float maxScale;
+  private final float step;
+
+  private float scale;
+  private double averageFrameNanos = -1;
+  private int overBudgetFrames;
+  private int underBudgetFrames;
+
+  /**
+   * @param targetFrameNanos Frame time to hold.
+   * @param minScale Lowest resolution scale, in (0, 1].
+   * @param maxScale Highest resolution scale, in [minScale, 1].
+   * @param step Amount the scale changes by at a time.
+   */
+  public ResolutionScaleController(
+      long targetFrameNanos, float minScale, float maxScale, float step) {
+    if (minScale <= 0 || maxScale > 1 || minScale > maxScale || step <= 0) {
+      throw new IllegalArgumentException("Invalid scale range");
+    }
+    this.targetFrameNanos = targetFrameNanos;
+    this.minScale = minScale;
+    this.maxScale = maxScale;
+    this.step = step;
+    this.scale = maxScale;
+  }
+
+  /** Returns the current resolution scale. */
+  public float getScale() {
+    return scale;
+  }
+
+  /** Forgets the measured frame times, e.g. after frames were not rendered back to back. */
+  public void resetMeasurements() {
+    averageFrameNanos = -1;
+    overBudgetFrames = 0;
+    underBudgetFrames = 0;
+  }
+
+  /**
+   * Records the time a frame took and updates the scale.
+   *
+   * @return true if the scale changed.
+   */
+  public boolean onFrameTime(long frameNanos) {
+    averageFrameNanos =
+        averageFrameNanos < 0
+            ? frameNanos
+            : averageFrameNanos + (frameNanos - averageFrameNanos) * SMOOTHING;
+
+    if (averageFrameNanos > targetFrameNanos) {
+      underBudgetFrames = 0;
+      if (++overBudgetFrames >= FRAMES_BEFORE_DOWNSCALE && scale > minScale) {
+        overBudgetFrames = 0;
+        scale = Math.max(minScale, scale - step);
+        return true;
+      }
+    } else if (averageFrameNanos < targetFrameNanos * HEADROOM) {
+      overBudgetFrames = 0;
+      if (++underBudgetFrames >= FRAMES_BEFORE_UPSCALE && scale < maxScale) {
+        underBudgetFrames = 0;
+        scale = Math.min(maxScale, scale + step);
+        return true;
+      }
+    } else {
+      overBudgetFrames = 0;
+      underBudgetFrames = 0;
+    }
+    return false;
+  }
+}
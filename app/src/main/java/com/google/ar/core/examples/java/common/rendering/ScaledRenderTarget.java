@@ -0,0 +1,205 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.util.Log;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Renders a layer of content at a reduced resolution and composites it over the screen.
+ *
+ * <p>Between {@link #begin(float)} and {@link #end()}, drawing goes to an offscreen framebuffer
+ * scaled from the surface size, cleared to transparent. {@link #end()} upsamples it over whatever
+ * was drawn to the screen before, so the layer underneath keeps its full resolution. At a scale of
+ * 1 the offscreen pass is skipped and content is drawn to the screen directly.
+ *
+ * <p>Content is expected to be drawn either opaque or with {@code GL_SRC_ALPHA,
+ * GL_ONE_MINUS_SRC_ALPHA} blending, which over a transparent clear leaves premultiplied color in the
+ * framebuffer; the composite blends it with {@code GL_ONE, GL_ONE_MINUS_SRC_ALPHA}.
+ */
+public class ScaledRenderTarget {
+  private static final String TAG = ScaledRenderTarget.class.getSimpleName();
+
+  private static final String VERTEX_SHADER_NAME = "shaders/composite.vert";
+  private static final String FRAGMENT_SHADER_NAME = "shaders/composite.frag";
+
+  // Screen-covering triangle strip in normalized device coordinates.
+  private static final float[] QUAD_COORDS = {
+    -1.0f, -1.0f, +1.0f, -1.0f, -1.0f, +1.0f, +1.0f, +1.0f,
+  };
+  private static final int COORDS_PER_VERTEX = 2;
+  private static final int BYTES_PER_FLOAT = Float.SIZE / 8;
+
+  private FloatBuffer quadCoords;
+  private int program;
+  private int positionAttribute;
+  private int textureUniform;
+
+  private final int[] framebuffer = new int[1];
+  private final int[] colorTexture = new int[1];
+  private final int[] depthRenderbuffer = new int[1];
+  private int targetWidth;
+  private int targetHeight;
+
+  private int surfaceWidth;
+  private int surfaceHeight;
+  private boolean active;
+  private boolean failed;
+  private final float[] savedClearColor = new float[4];
+
+  /**
+   * Allocates the composite program. Must be called on the OpenGL thread, typically in {@link
+   * android.opengl.GLSurfaceView.Renderer#onSurfaceCreated}.
+   */
+  public void createOnGlThread(Context context) throws IOException {
+    quadCoords =
+        ByteBuffer.allocateDirect(QUAD_COORDS.length * BYTES_PER_FLOAT)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    quadCoords.put(QUAD_COORDS).position(0);
+
+    program = ShaderUtil.createProgram(TAG, context, VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
+    positionAttribute = GLES20.glGetAttribLocation(program, "a_Position");
+    textureUniform = GLES20.glGetUniformLocation(program, "u_Texture");
+    ShaderUtil.checkGLError(TAG, "Program creation");
+
+    // Objects of a previous context are gone with it.
+    framebuffer[0] = 0;
+    colorTexture[0] = 0;
+    depthRenderbuffer[0] = 0;
+    targetWidth = 0;
+    targetHeight = 0;
+    active = false;
+    failed = false;
+  }
+
+  /** Registers the composite program so it can be built up front. */
+  public static void registerShaderVariants(ShaderVariantRegistry registry) {
+    registry.register(VERTEX_SHADER_NAME, FRAGMENT_SHADER_NAME);
+  }
+
+  /** Sets the size of the screen the layer is composited onto. */
+  public void onSurfaceChanged(int width, int height) {
+    surfaceWidth = width;
+    surfaceHeight = height;
+  }
+
+  /**
+   * Starts drawing the layer at {@code scale} times the surface resolution.
+   *
+   * @return true if drawing now goes to the offscreen framebuffer.
+   */
+  public boolean begin(float scale) {
+    if (scale >= 1.0f || failed || surfaceWidth == 0 || surfaceHeight == 0) {
+      return false;
+    }
+    int width = Math.max(1, Math.round(surfaceWidth * scale));
+    int height = Math.max(1, Math.round(surfaceHeight * scale));
+    if (width != targetWidth || height != targetHeight) {
+      if (!allocate(width, height)) {
+        return false;
+      }
+    }
+
+    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer[0]);
+    GLES20.glViewport(0, 0, targetWidth, targetHeight);
+    GLES20.glGetFloatv(GLES20.GL_COLOR_CLEAR_VALUE, savedClearColor, 0);
+    GLES20.glClearColor(0, 0, 0, 0);
+    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    GLES20.glClearColor(
+        savedClearColor[0], savedClearColor[1], savedClearColor[2], savedClearColor[3]);
+    active = true;
+    return true;
+  }
+
+  /**
+   * Returns drawing to the screen and composites the layer over it. Does nothing if {@link
+   * #begin(float)} did not redirect drawing, so it is safe to call unconditionally.
+   */
+  public void end() {
+    if (!active) {
+      return;
+    }
+    active = false;
+    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+
+    GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+    GLES20.glDepthMask(false);
+    GLES20.glEnable(GLES20.GL_BLEND);
+    GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+
+    GLES20.glUseProgram(program);
+    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, colorTexture[0]);
+    GLES20.glUniform1i(textureUniform, 0);
+    GLES20.glVertexAttribPointer(
+        positionAttribute, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, 0, quadCoords);
+    GLES20.glEnableVertexAttribArray(positionAttribute);
+    GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+    GLES20.glDisableVertexAttribArray(positionAttribute);
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    GLES20.glDisable(GLES20.GL_BLEND);
+    GLES20.glDepthMask(true);
+    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+    ShaderUtil.checkGLError(TAG, "Composite");
+  }
+
+  private boolean allocate(int width, int height) {
+    if (framebuffer[0] == 0) {
+      GLES20.glGenFramebuffers(1, framebuffer, 0);
+      GLES20.glGenTextures(1, colorTexture, 0);
+      GLES20.glGenRenderbuffers(1, depthRenderbuffer, 0);
+    }
+
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, colorTexture[0]);
+    GLES20.glTexImage2D(
+        GLES20.GL_TEXTURE_2D,
+        0,
+        GLES20.GL_RGBA,
+        width,
+        height,
+        0,
+        GLES20.GL_RGBA,
+        GLES20.GL_UNSIGNED_BYTE,
+        null);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+
+    GLES20.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, depthRenderbuffer[0]);
+    GLES20.glRenderbufferStorage(
+        GLES20.GL_RENDERBUFFER, GLES20.GL_DEPTH_COMPONENT16, width, height);
+    GLES20.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, 0);
+
+    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer[0]);
+    GLES20.glFramebufferTexture2D(
+        GLES20.GL_FRAMEBUFFER,
+        GLES20.GL_COLOR_ATTACHMENT0,
+        GLES20.GL_TEXTURE_2D,
+        colorTexture[0],
+        0);
+    GLES20.glFramebufferRenderbuffer(
+        GLES20.GL_FRAMEBUFFER,
+        GLES20.GL_DEPTH_ATTACHMENT,
+        GLES20.GL_RENDERBUFFER,
+        depthRenderbuffer[0]);
+    int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+    GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+      // Keep drawing at full resolution rather than retrying every frame.
+      Log.e(TAG, "Offscreen framebuffer incomplete: 0x" + Integer.toHexString(status));
+      failed = true;
+      return false;
+    }
+    targetWidth = width;
+    targetHeight = height;
+    return true;
+  }
+}
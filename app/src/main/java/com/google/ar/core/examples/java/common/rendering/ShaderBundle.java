@@ -0,0 +1,65 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Preprocessed shader sources, read from the single asset written by the {@code bundleShaders}
+ * Gradle task.
+ *
+ * <p>Every shader in the bundle already has its includes inlined, so looking one up is an index
+ * lookup and a UTF-8 decode of its byte range. See app/build.gradle for the file format.
+ */
+final class ShaderBundle {
+  /** Asset path of the bundle. */
+  static final String ASSET_NAME = "shaders/bundle.bin";
+
+  private static final int MAGIC = 0x53484231; // "SHB1"
+
+  private final byte[] blob;
+  // Asset name to {offset, length} in blob.
+  private final Map<String, int[]> index;
+
+  private ShaderBundle(byte[] blob, Map<String, int[]> index) {
+    this.blob = blob;
+    this.index = index;
+  }
+
+  /**
+   * Reads a bundle.
+   *
+   * @throws IOException If the stream cannot be read or does not contain a valid bundle.
+   */
+  static ShaderBundle read(InputStream inputStream) throws IOException {
+    DataInputStream dataInputStream = new DataInputStream(inputStream);
+    if (dataInputStream.readInt() != MAGIC) {
+      throw new IOException("Not a shader bundle.");
+    }
+    int entryCount = dataInputStream.readInt();
+    Map<String, int[]> index = new HashMap<>();
+    int blobLength = 0;
+    for (int i = 0; i < entryCount; i++) {
+      String name = dataInputStream.readUTF();
+      int offset = dataInputStream.readInt();
+      int length = dataInputStream.readInt();
+      index.put(name, new int[] {offset, length});
+      blobLength = Math.max(blobLength, offset + length);
+    }
+    byte[] blob = new byte[blobLength];
+    dataInputStream.readFully(blob);
+    return new ShaderBundle(blob, index);
+  }
+
+  /** Returns the flattened source of the shader asset {@code filename}, or null if not bundled. */
+  String getSource(String filename) {
+    int[] range = index.get(filename);
+    if (range == null) {
+      return null;
+    }
+    return new String(blob, range[0], range[1], StandardCharsets.UTF_8);
+  }
+}
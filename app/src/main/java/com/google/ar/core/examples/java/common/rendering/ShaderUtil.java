@@ -16,17 +16,49 @@
 package com.google.ar.core.examples.java.common.rendering;
 
 import android.content.Context;
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.util.Log;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Shader helper functions. */
 public final class ShaderUtil {
+  private static final String TAG = ShaderUtil.class.getSimpleName();
+  private static final String INCLUDE_DIRECTIVE = "#include";
+
+  // Build-time bundle of flattened shader sources; see ShaderBundle. Guarded by shaderSourceCache.
+  private static ShaderBundle shaderBundle = null;
+  private static boolean shaderBundleOpened = false;
+
+  // Shader sources with includes resolved, keyed by asset filename. Assets do not change at
+  // runtime, so entries stay valid for the lifetime of the process.
+  private static final Map<String, String> shaderSourceCache = new ConcurrentHashMap<>();
+
+  // Compiled shaders and linked programs, keyed by filename(s) and #define block. OpenGL object
+  // names are only valid in the context that created them, so both maps belong to cacheContext
+  // and are dropped when a different context becomes current. Only accessed on the GL thread.
+  private static final Map<String, Integer> shaderCache = new HashMap<>();
+  private static final Map<String, Integer> programCache = new HashMap<>();
+  private static EGLContext cacheContext = null;
+
+  // On-disk program binaries for cacheContext, or null if the context does not support them or
+  // the cache has not been opened yet.
+  private static volatile ProgramBinaryCache programBinaryCache = null;
+  private static boolean programBinaryCacheOpened = false;
+
   /**
    * Converts a raw text file, saved as a resource, into an OpenGL ES shader.
    *
@@ -38,16 +70,150 @@ public final class ShaderUtil {
   public static int loadGLShader(
       String tag, Context context, int type, String filename, Map<String, Integer> defineValuesMap)
       throws IOException {
-    // Load shader source code.
-    String code = readShaderFileFromAssets(context, filename);
-
     // Prepend any #define values specified during this run.
-    String defines = "";
-    for (Map.Entry<String, Integer> entry : defineValuesMap.entrySet()) {
-      defines += "#define " + entry.getKey() + " " + entry.getValue() + "\n";
+    String code = buildDefines(defineValuesMap) + getShaderSource(context, filename);
+    return compileShader(tag, type, code);
+  }
+
+  /**
+   * Returns a linked program for the given vertex and fragment shader assets, compiling and
+   * linking it only on first use in the current GL context. Switching between variants that were
+   * used before is a map lookup. On OpenGL ES 3.0 contexts, the first use is served from the
+   * on-disk {@link ProgramBinaryCache} when a binary from a previous run is available.
+   *
+   * @param vertexFilename The filename of the vertex shader asset.
+   * @param fragmentFilename The filename of the fragment shader asset.
+   * @param defineValuesMap The #define values to add to the top of both shaders.
+   * @return The program object handle. Owned by the cache; callers must not delete it.
+   */
+  public static int createProgram(
+      String tag,
+      Context context,
+      String vertexFilename,
+      String fragmentFilename,
+      Map<String, Integer> defineValuesMap)
+      throws IOException {
+    checkCacheContext();
+    String defines = buildDefines(defineValuesMap);
+    String programKey = vertexFilename + '|' + fragmentFilename + '|' + defines;
+    Integer cachedProgram = programCache.get(programKey);
+    if (cachedProgram != null) {
+      return cachedProgram;
+    }
+
+    String vertexCode = defines + getShaderSource(context, vertexFilename);
+    String fragmentCode = defines + getShaderSource(context, fragmentFilename);
+
+    ProgramBinaryCache binaryCache = getProgramBinaryCache(context);
+    String binaryKey = null;
+    if (binaryCache != null) {
+      binaryKey = binaryCache.keyFor(vertexCode, fragmentCode);
+      int program = binaryCache.load(binaryKey);
+      if (program != 0) {
+        programCache.put(programKey, program);
+        return program;
+      }
+    }
+
+    int vertexShader =
+        getCachedShader(tag, GLES20.GL_VERTEX_SHADER, vertexFilename, defines, vertexCode);
+    int fragmentShader =
+        getCachedShader(tag, GLES20.GL_FRAGMENT_SHADER, fragmentFilename, defines, fragmentCode);
+
+    int program = GLES20.glCreateProgram();
+    GLES20.glAttachShader(program, vertexShader);
+    GLES20.glAttachShader(program, fragmentShader);
+    if (binaryCache != null) {
+      GLES30.glProgramParameteri(
+          program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+    }
+    GLES20.glLinkProgram(program);
+
+    // Get the link status.
+    final int[] linkStatus = new int[1];
+    GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+    if (linkStatus[0] == 0) {
+      Log.e(tag, "Error linking program: " + GLES20.glGetProgramInfoLog(program));
+      GLES20.glDeleteProgram(program);
+      throw new RuntimeException("Error creating program.");
+    }
+
+    if (binaryCache != null) {
+      binaryCache.store(binaryKey, program);
+    }
+    programCache.put(programKey, program);
+    return program;
+  }
+
+  /** Overload of createProgram that assumes no additional #define values to add. */
+  public static int createProgram(
+      String tag, Context context, String vertexFilename, String fragmentFilename)
+      throws IOException {
+    return createProgram(
+        tag, context, vertexFilename, fragmentFilename, Collections.<String, Integer>emptyMap());
+  }
+
+  /**
+   * Forgets all cached shaders and programs without deleting them. Must be called on the GL thread
+   * when a new EGL context has been created, typically in {@link
+   * android.opengl.GLSurfaceView.Renderer#onSurfaceCreated}, since the old context and all of its
+   * objects are gone by then.
+   */
+  public static void onContextCreated() {
+    shaderCache.clear();
+    programCache.clear();
+    programBinaryCache = null;
+    programBinaryCacheOpened = false;
+    cacheContext = EGL14.eglGetCurrentContext();
+  }
+
+  /**
+   * Returns the program binary cache of the current GL context, or null if the context does not
+   * support program binaries. Its hit and miss counts cover the lifetime of the context.
+   */
+  public static ProgramBinaryCache getProgramBinaryCache() {
+    return programBinaryCache;
+  }
+
+  private static ProgramBinaryCache getProgramBinaryCache(Context context) {
+    if (!programBinaryCacheOpened) {
+      programBinaryCache = ProgramBinaryCache.create(context);
+      programBinaryCacheOpened = true;
     }
-    code = defines + code;
+    return programBinaryCache;
+  }
 
+  /** Drops the caches if they belong to a context other than the current one. */
+  private static void checkCacheContext() {
+    EGLContext currentContext = EGL14.eglGetCurrentContext();
+    if (!currentContext.equals(cacheContext)) {
+      onContextCreated();
+    }
+  }
+
+  private static int getCachedShader(
+      String tag, int type, String filename, String defines, String code) {
+    String shaderKey = type + "|" + filename + '|' + defines;
+    Integer cachedShader = shaderCache.get(shaderKey);
+    if (cachedShader != null) {
+      return cachedShader;
+    }
+    int shader = compileShader(tag, type, code);
+    shaderCache.put(shaderKey, shader);
+    return shader;
+  }
+
+  /** Returns the #define block for {@code defineValuesMap}, sorted by name. */
+  private static String buildDefines(Map<String, Integer> defineValuesMap) {
+    StringBuilder defines = new StringBuilder();
+    for (Map.Entry<String, Integer> entry : new TreeMap<>(defineValuesMap).entrySet()) {
+      defines.append("#define ").append(entry.getKey()).append(' ').append(entry.getValue());
+      defines.append('\n');
+    }
+    return defines.toString();
+  }
+
+  private static int compileShader(String tag, int type, String code) {
     // Compiles shader code.
     int shader = GLES20.glCreateShader(type);
     GLES20.glShaderSource(shader, code);
@@ -78,6 +244,47 @@ public final class ShaderUtil {
     return loadGLShader(tag, context, type, filename, emptyDefineValuesMap);
   }
 
+  /**
+   * Reads a shader asset and resolves its includes into the source cache, so that a later {@link
+   * #loadGLShader} call does not need to touch the asset. May be called on any thread.
+   *
+   * @param filename The filename of the shader asset.
+   */
+  public static void preloadShaderSource(Context context, String filename) throws IOException {
+    getShaderSource(context, filename);
+  }
+
+  private static String getShaderSource(Context context, String filename) throws IOException {
+    String source = shaderSourceCache.get(filename);
+    if (source == null) {
+      ShaderBundle bundle = getShaderBundle(context);
+      source = bundle != null ? bundle.getSource(filename) : null;
+      if (source == null) {
+        source = readShaderFileFromAssets(context, filename, new HashSet<>());
+      }
+      shaderSourceCache.put(filename, source);
+    }
+    return source;
+  }
+
+  /**
+   * Returns the build-time shader bundle, reading it on first use, or null if the APK was built
+   * without one. In that case shaders are read and flattened from the individual assets.
+   */
+  private static ShaderBundle getShaderBundle(Context context) {
+    synchronized (shaderSourceCache) {
+      if (!shaderBundleOpened) {
+        try (InputStream inputStream = context.getAssets().open(ShaderBundle.ASSET_NAME)) {
+          shaderBundle = ShaderBundle.read(new BufferedInputStream(inputStream));
+        } catch (IOException e) {
+          Log.w(TAG, "No shader bundle, reading individual shader assets", e);
+        }
+        shaderBundleOpened = true;
+      }
+      return shaderBundle;
+    }
+  }
+
   /**
    * Checks if we've had an error inside of OpenGL ES, and if so what that error is.
    *
@@ -98,26 +305,32 @@ public final class ShaderUtil {
   }
 
   /**
-   * Converts a raw shader file into a string.
+   * Converts a raw shader file into a string, inlining each #include the first time it appears.
+   * Only used when the shader is not in the build-time bundle.
    *
    * @param filename The filename of the shader file about to be turned into a shader.
+   * @param included The files already inlined into the shader being read.
    * @return The context of the text file, or null in case of error.
    */
-  private static String readShaderFileFromAssets(Context context, String filename)
-      throws IOException {
+  private static String readShaderFileFromAssets(
+      Context context, String filename, Set<String> included) throws IOException {
+    included.add(filename);
     try (InputStream inputStream = context.getAssets().open(filename);
         BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
       StringBuilder sb = new StringBuilder();
       String line;
       while ((line = reader.readLine()) != null) {
-        String[] tokens = line.split(" ", -1);
-        if (tokens[0].equals("#include")) {
-          String includeFilename = tokens[1];
-          includeFilename = includeFilename.replace("\"", "");
+        // Trimmed like the bundleShaders task does, so that both accept indented includes.
+        String trimmed = line.trim();
+        if (trimmed.startsWith(INCLUDE_DIRECTIVE)) {
+          String includeFilename =
+              trimmed.substring(INCLUDE_DIRECTIVE.length()).trim().replace("\"", "");
           if (includeFilename.equals(filename)) {
             throw new IOException("Do not include the calling file.");
           }
-          sb.append(readShaderFileFromAssets(context, includeFilename));
+          if (!included.contains(includeFilename)) {
+            sb.append(readShaderFileFromAssets(context, includeFilename, included));
+          }
         } else {
           sb.append(line).append("\n");
         }
@@ -0,0 +1,88 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import android.content.Context;
+import android.os.SystemClock;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lists every shader program variant the renderers may use, and builds them ahead of time.
+ *
+ * <p>Renderers register each define combination they can switch to. {@link #precompile} then
+ * builds the registered programs through {@link ShaderUtil#createProgram}, a few per frame within a
+ * time budget, so that a later variant switch at runtime is a cache lookup rather than a compile
+ * on the GL thread.
+ */
+public final class ShaderVariantRegistry {
+  private static final class Variant {
+    private final String vertexFilename;
+    private final String fragmentFilename;
+    private final Map<String, Integer> defineValuesMap;
+
+    Variant(String vertexFilename, String fragmentFilename, Map<String, Integer> defineValuesMap) {
+      this.vertexFilename = vertexFilename;
+      this.fragmentFilename = fragmentFilename;
+      this.defineValuesMap = defineValuesMap;
+    }
+  }
+
+  private final List<Variant> variants = new ArrayList<>();
+  private int compiledCount = 0;
+
+  /** Registers a program variant with the given #define values. */
+  public void register(
+      String vertexFilename, String fragmentFilename, Map<String, Integer> defineValuesMap) {
+    variants.add(
+        new Variant(
+            vertexFilename,
+            fragmentFilename,
+            Collections.unmodifiableMap(new TreeMap<>(defineValuesMap))));
+  }
+
+  /** Registers a program variant without additional #define values. */
+  public void register(String vertexFilename, String fragmentFilename) {
+    register(vertexFilename, fragmentFilename, Collections.<String, Integer>emptyMap());
+  }
+
+  /**
+   * Marks all variants as not yet built. Must be called when a new GL context has been created,
+   * after {@link ShaderUtil#onContextCreated()}.
+   */
+  public void reset() {
+    compiledCount = 0;
+  }
+
+  /** Returns true once every registered variant has been built in the current context. */
+  public boolean isComplete() {
+    return compiledCount == variants.size();
+  }
+
+  /**
+   * Builds registered variants until all are done or {@code budgetNanos} has elapsed. At least one
+   * variant is built per call. Variants already in the program cache cost only a lookup. Must be
+   * called on the GL thread.
+   *
+   * @return true if every registered variant has been built.
+   */
+  public boolean precompile(String tag, Context context, long budgetNanos) throws IOException {
+    long start = SystemClock.elapsedRealtimeNanos();
+    while (compiledCount < variants.size()) {
+      // Advance first so that a variant that fails to build is not retried every frame.
+      Variant variant = variants.get(compiledCount++);
+      ShaderUtil.createProgram(
+          tag,
+          context,
+          variant.vertexFilename,
+          variant.fragmentFilename,
+          variant.defineValuesMap);
+      if (SystemClock.elapsedRealtimeNanos() - start >= budgetNanos) {
+        break;
+      }
+    }
+    return isComplete();
+  }
+}
@@ -0,0 +1,94 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+/**
+ * Chooses the buffer to write for streamed vertex data, and when to grow or shrink it.
+ *
+ * <p>Writing a vertex buffer that a draw call from a recent frame may still read makes the driver
+ * wait for the GPU, which is costly on tile-based GPUs. Rotating through several buffers means the
+ * buffer written in a frame was last drawn {@code slotCount - 1} frames earlier. This class holds
+ * only the policy; the caller owns the GL buffer objects, one per slot.
+ *
+ * <p>Capacities are powers of two. A slot grows as soon as the data does not fit, and shrinks once
+ * the data has used at most a quarter of it for {@code shrinkAfterUses} consecutive writes. Not
+ * thread safe.
+ */
+public final class StreamingBufferRing {
+  private final int minCapacity;
+  private final int shrinkAfterUses;
+  private final int[] capacities;
+  private final int[] underusedCounts;
+  private int currentSlot = -1;
+
+  /**
+   * @param slotCount Number of buffers in the ring, typically 3.
+   * @param minCapacity Smallest capacity a slot is allocated with, in bytes.
+   * @param shrinkAfterUses Consecutive underused writes before a slot shrinks.
+   */
+  public StreamingBufferRing(int slotCount, int minCapacity, int shrinkAfterUses) {
+    if (slotCount <= 0 || minCapacity <= 0 || shrinkAfterUses <= 0) {
+      throw new IllegalArgumentException("Arguments must be positive");
+    }
+    this.minCapacity = roundUpToPowerOfTwo(minCapacity);
+    this.shrinkAfterUses = shrinkAfterUses;
+    this.capacities = new int[slotCount];
+    this.underusedCounts = new int[slotCount];
+  }
+
+  /** Returns the number of slots. */
+  public int getSlotCount() {
+    return capacities.length;
+  }
+
+  /** Advances to and returns the slot to write this frame. */
+  public int nextSlot() {
+    currentSlot = (currentSlot + 1) % capacities.length;
+    return currentSlot;
+  }
+
+  /** Returns the slot returned by the last {@link #nextSlot()} call, or -1 if there was none. */
+  public int getCurrentSlot() {
+    return currentSlot;
+  }
+
+  /** Returns the capacity of {@code slot} in bytes, or 0 if it has not been allocated. */
+  public int getCapacity(int slot) {
+    return capacities[slot];
+  }
+
+  /**
+   * Records a write of {@code requiredBytes} into {@code slot}.
+   *
+   * @return The new capacity if the slot must be (re)allocated before writing, or 0 if the current
+   *     allocation is kept.
+   */
+  public int reserve(int slot, int requiredBytes) {
+    int capacity = capacities[slot];
+    if (requiredBytes > capacity) {
+      underusedCounts[slot] = 0;
+      return capacities[slot] = Math.max(minCapacity, roundUpToPowerOfTwo(requiredBytes));
+    }
+    if (capacity > minCapacity && requiredBytes <= capacity / 4) {
+      if (++underusedCounts[slot] >= shrinkAfterUses) {
+        underusedCounts[slot] = 0;
+        // Keep headroom so that the slot does not grow again on the next small increase.
+        return capacities[slot] = Math.max(minCapacity, roundUpToPowerOfTwo(requiredBytes * 2));
+      }
+    } else {
+      underusedCounts[slot] = 0;
+    }
+    return 0;
+  }
+
+  /** Forgets all allocations, e.g. after the GL context was lost. */
+  public void reset() {
+    for (int slot = 0; slot < capacities.length; slot++) {
+      capacities[slot] = 0;
+      underusedCounts[slot] = 0;
+    }
+    currentSlot = -1;
+  }
+
+  private static int roundUpToPowerOfTwo(int value) {
+    return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+  }
+}
@@ -0,0 +1,37 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+/**
+ * Packs the grid cell containing a position into a {@code long}, for the open-addressing tables of
+ * {@link PointCloudMap} and {@link PointCloudFilter}.
+ *
+ * <p>Each coordinate is divided by the cell size, floored and kept to 21 bits, so keys are unique
+ * within about a million cells along each axis and wrap around beyond that.
+ */
+final class VoxelKey {
+  private static final int COORDINATE_BITS = 21;
+  private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+  /** Returns the key of the cell of edge 1 / {@code inverseSize} that contains (x, y, z). */
+  static long of(float x, float y, float z, float inverseSize) {
+    return (quantize(x, inverseSize) << (2 * COORDINATE_BITS))
+        | (quantize(y, inverseSize) << COORDINATE_BITS)
+        | quantize(z, inverseSize);
+  }
+
+  /** Spreads a key over all bits, so that neighboring cells land far apart in a table. */
+  static int hash(long key) {
+    // Finalizer of MurmurHash3.
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  private static long quantize(float coordinate, float inverseSize) {
+    return (long) Math.floor(coordinate * inverseSize) & COORDINATE_MASK;
+  }
+
+  private VoxelKey() {}
+}
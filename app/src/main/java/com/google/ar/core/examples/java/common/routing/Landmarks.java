@@ -0,0 +1,111 @@
+package com.google.ar.core.examples.java.common.routing;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed shortest-path distances from a few landmark nodes, which give the lower bounds the
+ * ALT (A*, landmarks, triangle inequality) search is guided by.
+ *
+ * <p>For a landmark L, the triangle inequality gives |d(L, t) - d(L, v)| <= d(v, t) on an
+ * undirected graph, and the bound of the best landmark is used. Landmarks are picked by farthest
+ * point selection, which places them at the periphery of the venue where they bound best. Computing
+ * them takes one Dijkstra search per landmark, so it belongs on a background thread when a venue is
+ * loaded. Immutable once computed.
+ */
+public final class Landmarks {
+  private final int count;
+  private final int nodeCount;
+  // Distance from landmark i to node v at i * nodeCount + v.
+  private final float[] distances;
+
+  private Landmarks(int count, int nodeCount, float[] distances) {
+    this.count = count;
+    this.nodeCount = nodeCount;
+    this.distances = distances;
+  }
+
+  /** Selects up to {@code count} landmarks of {@code graph} and computes their distances. */
+  public static Landmarks compute(RoutingGraph graph, int count) {
+    int nodeCount = graph.getNodeCount();
+    count = Math.min(count, nodeCount);
+    float[] distances = new float[count * nodeCount];
+    if (count == 0) {
+      return new Landmarks(0, nodeCount, distances);
+    }
+    NodeHeap heap = new NodeHeap();
+    float[] scratch = new float[nodeCount];
+    // Distance from every node to its closest landmark so far.
+    float[] closest = new float[nodeCount];
+    Arrays.fill(closest, Float.POSITIVE_INFINITY);
+
+    // The first landmark is the node farthest from an arbitrary start.
+    shortestDistances(graph, 0, scratch, 0, heap);
+    int landmark = farthest(scratch);
+    for (int i = 0; i < count; i++) {
+      shortestDistances(graph, landmark, distances, i * nodeCount, heap);
+      for (int v = 0; v < nodeCount; v++) {
+        closest[v] = Math.min(closest[v], distances[i * nodeCount + v]);
+      }
+      // Nodes no landmark reaches yet come first, so that every component gets a landmark.
+      landmark = farthest(closest);
+    }
+    return new Landmarks(count, nodeCount, distances);
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  /** Returns a lower bound of the cost from {@code from} to {@code to}; infinite if unreachable. */
+  public float lowerBound(int from, int to) {
+    float bound = 0;
+    for (int i = 0, base = 0; i < count; i++, base += nodeCount) {
+      float toLandmark = distances[base + to];
+      float fromLandmark = distances[base + from];
+      if (toLandmark == Float.POSITIVE_INFINITY || fromLandmark == Float.POSITIVE_INFINITY) {
+        if (toLandmark != fromLandmark) {
+          // One of them shares the landmark's component, the other does not.
+          return Float.POSITIVE_INFINITY;
+        }
+        continue;
+      }
+      bound = Math.max(bound, Math.abs(toLandmark - fromLandmark));
+    }
+    return bound;
+  }
+
+  /** Writes the shortest distances from {@code source} to {@code out}, starting at offset. */
+  static void shortestDistances(
+      RoutingGraph graph, int source, float[] out, int offset, NodeHeap heap) {
+    int nodeCount = graph.getNodeCount();
+    Arrays.fill(out, offset, offset + nodeCount, Float.POSITIVE_INFINITY);
+    out[offset + source] = 0;
+    heap.clear();
+    heap.push(source, 0);
+    while (!heap.isEmpty()) {
+      float distance = heap.peekKey();
+      int u = heap.pop();
+      if (distance > out[offset + u]) {
+        continue;
+      }
+      for (int e = graph.getEdgeStart(u), end = graph.getEdgeStart(u + 1); e < end; e++) {
+        int v = graph.getEdgeTarget(e);
+        float candidate = distance + graph.getEdgeCost(e);
+        if (candidate < out[offset + v]) {
+          out[offset + v] = candidate;
+          heap.push(v, candidate);
+        }
+      }
+    }
+  }
+
+  private static int farthest(float[] distances) {
+    int farthest = 0;
+    for (int v = 1; v < distances.length; v++) {
+      if (distances[v] > distances[farthest]) {
+        farthest = v;
+      }
+    }
+    return farthest;
+  }
+}
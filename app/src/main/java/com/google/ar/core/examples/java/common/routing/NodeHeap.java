@@ -0,0 +1,69 @@
+package com.google.ar.core.examples.java.common.routing;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of graph nodes keyed by float priority. A node may be pushed several times;
+ * searches skip entries of nodes that were already settled. Not thread safe.
+ */
+final class NodeHeap {
+  private float[] keys = new float[64];
+  private int[] nodes = new int[64];
+  private int size;
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  void push(int node, float key) {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      nodes = Arrays.copyOf(nodes, size * 2);
+    }
+    int i = size++;
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (keys[parent] <= key) {
+        break;
+      }
+      keys[i] = keys[parent];
+      nodes[i] = nodes[parent];
+      i = parent;
+    }
+    keys[i] = key;
+    nodes[i] = node;
+  }
+
+  /** Returns the key of the top entry. The heap must not be empty. */
+  float peekKey() {
+    return keys[0];
+  }
+
+  /** Removes the top entry and returns its node. The heap must not be empty. */
+  int pop() {
+    int top = nodes[0];
+    float key = keys[--size];
+    int node = nodes[size];
+    int i = 0;
+    int half = size >>> 1;
+    while (i < half) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && keys[child + 1] < keys[child]) {
+        child++;
+      }
+      if (key <= keys[child]) {
+        break;
+      }
+      keys[i] = keys[child];
+      nodes[i] = nodes[child];
+      i = child;
+    }
+    keys[i] = key;
+    nodes[i] = node;
+    return top;
+  }
+}
@@ -0,0 +1,99 @@
+package com.google.ar.core.examples.java.common.routing;
+
+/**
+ * Follows the user along a route to a destination, replanning only when needed.
+ *
+ * <p>While the user's position stays on the planned path, the tracker only advances along it.
+ * Only a position off the path runs a new {@link Router} query, from that position. Not thread
+ * safe.
+ */
+public final class RouteTracker {
+  private final Router router;
+
+  private int destination = -1;
+  private int[] path;
+  // Cost from path[i] to the destination.
+  private float[] remaining;
+  private int cursor;
+  private int replanCount;
+
+  public RouteTracker(Router router) {
+    this.router = router;
+  }
+
+  public RoutingGraph getGraph() {
+    return router.getGraph();
+  }
+
+  /** Sets the destination node, or -1 for none. The route is planned on the next position. */
+  public void setDestination(int node) {
+    destination = node;
+    path = null;
+  }
+
+  public int getDestination() {
+    return destination;
+  }
+
+  /**
+   * Updates the user's position to a node of the graph.
+   *
+   * @return true if the route or the position along it changed.
+   */
+  public boolean onPosition(int node) {
+    if (destination < 0 || node < 0) {
+      return false;
+    }
+    if (path != null) {
+      for (int i = cursor; i < path.length; i++) {
+        if (path[i] == node) {
+          if (i == cursor) {
+            return false;
+          }
+          cursor = i;
+          return true;
+        }
+      }
+    }
+    replanCount++;
+    path = router.route(node, destination);
+    cursor = 0;
+    if (path == null) {
+      return true;
+    }
+    float total = router.getCostTo(destination);
+    remaining = new float[path.length];
+    for (int i = 0; i < path.length; i++) {
+      remaining[i] = total - router.getCostTo(path[i]);
+    }
+    return true;
+  }
+
+  /** Returns true if there is a route from the last position to the destination. */
+  public boolean hasRoute() {
+    return path != null;
+  }
+
+  /** Returns true if the last position is the destination. */
+  public boolean hasArrived() {
+    return path != null && cursor == path.length - 1;
+  }
+
+  /** Returns the next node to walk to, the destination once arrived, or -1 without a route. */
+  public int getNextNode() {
+    if (path == null) {
+      return -1;
+    }
+    return path[Math.min(cursor + 1, path.length - 1)];
+  }
+
+  /** Returns the cost of the rest of the route, or NaN without a route. */
+  public float getRemainingCost() {
+    return path == null ? Float.NaN : remaining[cursor];
+  }
+
+  /** Returns the number of routes planned, for diagnostics. */
+  public int getReplanCount() {
+    return replanCount;
+  }
+}
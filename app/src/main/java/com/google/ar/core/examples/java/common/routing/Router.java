@@ -0,0 +1,108 @@
+package com.google.ar.core.examples.java.common.routing;
+
+import java.util.Arrays;
+
+/**
+ * Answers shortest-path queries on a {@link RoutingGraph} with A* guided by {@link Landmarks}.
+ *
+ * <p>The per-node search state is allocated once and invalidated between queries by bumping a
+ * stamp, so a query only touches the nodes it explores. Not thread safe; use one router per thread.
+ */
+public final class Router {
+  private final RoutingGraph graph;
+  private final Landmarks landmarks;
+  private final NodeHeap heap = new NodeHeap();
+
+  private final float[] cost;
+  private final int[] parent;
+  private final int[] seenStamp;
+  private final int[] settledStamp;
+  private int stamp;
+  private int settledCount;
+
+  public Router(RoutingGraph graph, Landmarks landmarks) {
+    this.graph = graph;
+    this.landmarks = landmarks;
+    int nodeCount = graph.getNodeCount();
+    cost = new float[nodeCount];
+    parent = new int[nodeCount];
+    seenStamp = new int[nodeCount];
+    settledStamp = new int[nodeCount];
+  }
+
+  public RoutingGraph getGraph() {
+    return graph;
+  }
+
+  /**
+   * Returns the nodes of a shortest path from {@code source} to {@code target}, both included, or
+   * null if there is none.
+   */
+  public int[] route(int source, int target) {
+    if (++stamp == 0) {
+      // Wrapped around; stale stamps could match again.
+      Arrays.fill(seenStamp, 0);
+      Arrays.fill(settledStamp, 0);
+      stamp = 1;
+    }
+    settledCount = 0;
+    heap.clear();
+    cost[source] = 0;
+    parent[source] = -1;
+    seenStamp[source] = stamp;
+    heap.push(source, landmarks.lowerBound(source, target));
+
+    while (!heap.isEmpty()) {
+      int u = heap.pop();
+      if (settledStamp[u] == stamp) {
+        continue;
+      }
+      settledStamp[u] = stamp;
+      settledCount++;
+      if (u == target) {
+        return path(target);
+      }
+      for (int e = graph.getEdgeStart(u), end = graph.getEdgeStart(u + 1); e < end; e++) {
+        int v = graph.getEdgeTarget(e);
+        float candidate = cost[u] + graph.getEdgeCost(e);
+        if (seenStamp[v] == stamp && candidate >= cost[v]) {
+          continue;
+        }
+        float bound = landmarks.lowerBound(v, target);
+        if (bound == Float.POSITIVE_INFINITY) {
+          continue;
+        }
+        seenStamp[v] = stamp;
+        cost[v] = candidate;
+        parent[v] = u;
+        heap.push(v, candidate + bound);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the cost from the source of the last query to {@code node}, for nodes of the returned
+   * path.
+   */
+  public float getCostTo(int node) {
+    return cost[node];
+  }
+
+  /** Returns the number of nodes the last query settled, a measure of its work. */
+  public int getSettledCount() {
+    return settledCount;
+  }
+
+  private int[] path(int target) {
+    int length = 0;
+    for (int v = target; v != -1; v = parent[v]) {
+      length++;
+    }
+    int[] path = new int[length];
+    for (int v = target; v != -1; v = parent[v]) {
+      path[--length] = v;
+    }
+    return path;
+  }
+}
@@ -0,0 +1,243 @@
+package com.google.ar.core.examples.java.common.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable walkable graph of a venue, with nodes at 3D positions in meters.
+ *
+ * <p>Edges are undirected and stored in compressed sparse row form: the edges leaving node {@code
+ * i} are {@code [getEdgeStart(i), getEdgeStart(i + 1))}. Nodes carry a string id, such as the cloud
+ * anchor id of a POI or the id of a connector node like a corridor junction or stair landing.
+ */
+public final class RoutingGraph {
+
+  /** Collects nodes and edges. Not thread safe. */
+  public static final class Builder {
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> indices = new HashMap<>();
+    private float[] positions = new float[3 * 16];
+    // Endpoints of edge i at 2i and 2i+1.
+    private int[] edgeEnds = new int[2 * 16];
+    private float[] edgeCosts = new float[16];
+    private int edgeCount;
+    private final Set<Long> edgeKeys = new HashSet<>();
+
+    /**
+     * Adds a node, or moves it if a node with the same id exists.
+     *
+     * @return The index of the node.
+     */
+    public int addNode(String id, float x, float y, float z) {
+      Integer index = indices.get(id);
+      if (index == null) {
+        index = ids.size();
+        ids.add(id);
+        indices.put(id, index);
+        if (positions.length < 3 * ids.size()) {
+          positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+      }
+      positions[3 * index] = x;
+      positions[3 * index + 1] = y;
+      positions[3 * index + 2] = z;
+      return index;
+    }
+
+    /** Returns the index of the node with {@code id}, or -1. */
+    public int indexOf(String id) {
+      Integer index = indices.get(id);
+      return index == null ? -1 : index;
+    }
+
+    /** Connects two nodes, at the cost of the straight-line distance between them. */
+    public Builder addEdge(int a, int b) {
+      return addEdge(a, b, distance(positions, a, b));
+    }
+
+    /** Connects two nodes at a non-negative {@code cost}, e.g. a longer one for stairs. */
+    public Builder addEdge(int a, int b, float cost) {
+      if (a == b) {
+        return this;
+      }
+      if (cost < 0) {
+        throw new IllegalArgumentException("Negative edge cost");
+      }
+      if (!edgeKeys.add(((long) Math.min(a, b) << 32) | Math.max(a, b))) {
+        return this;
+      }
+      if (edgeCosts.length == edgeCount) {
+        edgeEnds = Arrays.copyOf(edgeEnds, edgeEnds.length * 2);
+        edgeCosts = Arrays.copyOf(edgeCosts, edgeCosts.length * 2);
+      }
+      edgeEnds[2 * edgeCount] = a;
+      edgeEnds[2 * edgeCount + 1] = b;
+      edgeCosts[edgeCount++] = cost;
+      return this;
+    }
+
+    /**
+     * Connects every node that has no edges yet to its {@code maxNeighbors} closest nodes within
+     * {@code maxDistance}. Used where the venue does not describe walkways explicitly.
+     */
+    public Builder connectNearby(float maxDistance, int maxNeighbors) {
+      int nodeCount = ids.size();
+      boolean[] connected = new boolean[nodeCount];
+      for (int i = 0; i < 2 * edgeCount; i++) {
+        connected[edgeEnds[i]] = true;
+      }
+      int[] nearest = new int[maxNeighbors];
+      float[] nearestDistance = new float[maxNeighbors];
+      for (int a = 0; a < nodeCount; a++) {
+        if (connected[a]) {
+          continue;
+        }
+        int found = 0;
+        for (int b = 0; b < nodeCount; b++) {
+          float d = distance(positions, a, b);
+          if (b == a || d > maxDistance) {
+            continue;
+          }
+          // Insert into the sorted list of the closest nodes so far.
+          if (found < maxNeighbors) {
+            found++;
+          } else if (d >= nearestDistance[found - 1]) {
+            continue;
+          }
+          int slot = found - 1;
+          while (slot > 0 && nearestDistance[slot - 1] > d) {
+            nearest[slot] = nearest[slot - 1];
+            nearestDistance[slot] = nearestDistance[slot - 1];
+            slot--;
+          }
+          nearest[slot] = b;
+          nearestDistance[slot] = d;
+        }
+        for (int i = 0; i < found; i++) {
+          addEdge(a, nearest[i], nearestDistance[i]);
+        }
+      }
+      return this;
+    }
+
+    public RoutingGraph build() {
+      int nodeCount = ids.size();
+      int[] edgeStart = new int[nodeCount + 1];
+      for (int i = 0; i < 2 * edgeCount; i++) {
+        edgeStart[edgeEnds[i] + 1]++;
+      }
+      for (int i = 0; i < nodeCount; i++) {
+        edgeStart[i + 1] += edgeStart[i];
+      }
+      int[] edgeTarget = new int[2 * edgeCount];
+      float[] edgeCost = new float[2 * edgeCount];
+      int[] fill = Arrays.copyOf(edgeStart, nodeCount);
+      for (int i = 0; i < edgeCount; i++) {
+        int a = edgeEnds[2 * i];
+        int b = edgeEnds[2 * i + 1];
+        float cost = edgeCosts[i];
+        edgeTarget[fill[a]] = b;
+        edgeCost[fill[a]++] = cost;
+        edgeTarget[fill[b]] = a;
+        edgeCost[fill[b]++] = cost;
+      }
+      return new RoutingGraph(
+          ids.toArray(new String[0]),
+          new HashMap<>(indices),
+          Arrays.copyOf(positions, 3 * nodeCount),
+          edgeStart,
+          edgeTarget,
+          edgeCost);
+    }
+  }
+
+  private final String[] ids;
+  private final Map<String, Integer> indices;
+  private final float[] positions;
+  private final int[] edgeStart;
+  private final int[] edgeTarget;
+  private final float[] edgeCost;
+
+  private RoutingGraph(
+      String[] ids,
+      Map<String, Integer> indices,
+      float[] positions,
+      int[] edgeStart,
+      int[] edgeTarget,
+      float[] edgeCost) {
+    this.ids = ids;
+    this.indices = indices;
+    this.positions = positions;
+    this.edgeStart = edgeStart;
+    this.edgeTarget = edgeTarget;
+    this.edgeCost = edgeCost;
+  }
+
+  public int getNodeCount() {
+    return ids.length;
+  }
+
+  public String getId(int node) {
+    return ids[node];
+  }
+
+  /** Returns the index of the node with {@code id}, or -1. */
+  public int indexOf(String id) {
+    Integer index = indices.get(id);
+    return index == null ? -1 : index;
+  }
+
+  public float getX(int node) {
+    return positions[3 * node];
+  }
+
+  public float getY(int node) {
+    return positions[3 * node + 1];
+  }
+
+  public float getZ(int node) {
+    return positions[3 * node + 2];
+  }
+
+  /** Returns the first edge of {@code node}. Its edges end where those of {@code node + 1} start. */
+  public int getEdgeStart(int node) {
+    return edgeStart[node];
+  }
+
+  public int getEdgeTarget(int edge) {
+    return edgeTarget[edge];
+  }
+
+  public float getEdgeCost(int edge) {
+    return edgeCost[edge];
+  }
+
+  /** Returns the node closest to a position, or -1 if the graph is empty. */
+  public int nearestNode(float x, float y, float z) {
+    int nearest = -1;
+    float nearestDistance = Float.MAX_VALUE;
+    for (int i = 0; i < ids.length; i++) {
+      float dx = positions[3 * i] - x;
+      float dy = positions[3 * i + 1] - y;
+      float dz = positions[3 * i + 2] - z;
+      float d = dx * dx + dy * dy + dz * dz;
+      if (d < nearestDistance) {
+        nearest = i;
+        nearestDistance = d;
+      }
+    }
+    return nearest;
+  }
+
+  private static float distance(float[] positions, int a, int b) {
+    float dx = positions[3 * a] - positions[3 * b];
+    float dy = positions[3 * a + 1] - positions[3 * b + 1];
+    float dz = positions[3 * a + 2] - positions[3 * b + 2];
+    return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+}
@@ -0,0 +1,296 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import android.util.Log;
+import com.google.common.base.Preconditions;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Relative poses between cloud anchors that were tracked together, so that one resolved anchor
+ * can place its neighbors before their own resolves complete.
+ *
+ * <p>Poses are arrays of {@link #POSE_SIZE} floats: the translation followed by the rotation
+ * quaternion (x, y, z, w), as in {@link com.google.ar.core.Pose}. For every pair of anchors, the
+ * pose of each one in the frame of the other is kept as a running average over observations, which
+ * converges while still following changes. Each anchor keeps only its closest neighbors, which
+ * bounds the graph to a linear size.
+ *
+ * <p>The graph is persisted to a local file across sessions. Not thread safe.
+ */
+class AnchorGraph {
+  private static final String TAG = AnchorGraph.class.getSimpleName();
+  private static final int FILE_MAGIC = 0x41475231; // "AGR1"
+
+  static final int POSE_SIZE = 7;
+
+  // Later observations weigh at least 1 / MAX_WEIGHT, so that a moved anchor is followed.
+  private static final int MAX_WEIGHT = 32;
+
+  private static final class Edge {
+    final float[] relativePose = new float[POSE_SIZE];
+    int weight;
+  }
+
+  private final int maxNeighbors;
+  private final Map<String, Map<String, Edge>> edges = new HashMap<>();
+  private final float[] scratchPose = new float[POSE_SIZE];
+  private boolean dirty;
+
+  /** @param maxNeighbors Number of neighbors kept per anchor; the closest ones are kept. */
+  AnchorGraph(int maxNeighbors) {
+    Preconditions.checkArgument(maxNeighbors > 0, "maxNeighbors must be positive.");
+    this.maxNeighbors = maxNeighbors;
+  }
+
+  /** Records the poses of two anchors tracked in the same frame. */
+  void observe(String idA, float[] poseA, String idB, float[] poseB) {
+    if (idA.equals(idB)) {
+      return;
+    }
+    relative(poseA, poseB, scratchPose);
+    addObservation(idA, idB, scratchPose);
+    relative(poseB, poseA, scratchPose);
+    addObservation(idB, idA, scratchPose);
+    dirty = true;
+  }
+
+  /** Returns the ids of the anchors with a known pose relative to {@code id}. */
+  Set<String> getNeighbors(String id) {
+    Map<String, Edge> neighbors = edges.get(id);
+    return neighbors == null ? Collections.emptySet() : neighbors.keySet();
+  }
+
+  /**
+   * Computes the pose of anchor {@code to} from the pose of anchor {@code from}.
+   *
+   * @return false if the relative pose of the two anchors is not known.
+   */
+  boolean place(String from, float[] fromPose, String to, float[] outPose) {
+    Map<String, Edge> neighbors = edges.get(from);
+    Edge edge = neighbors == null ? null : neighbors.get(to);
+    if (edge == null) {
+      return false;
+    }
+    compose(fromPose, edge.relativePose, outPose);
+    return true;
+  }
+
+  /** Returns true if observations were added since the graph was loaded or serialized. */
+  boolean isDirty() {
+    return dirty;
+  }
+
+  /** Loads a graph written by {@link #save}, or returns an empty graph if the file is unusable. */
+  static AnchorGraph load(File file, int maxNeighbors) {
+    AnchorGraph graph = new AnchorGraph(maxNeighbors);
+    if (!file.isFile()) {
+      return graph;
+    }
+    try (DataInputStream inputStream = new DataInputStream(new FileInputStream(file))) {
+      if (inputStream.readInt() != FILE_MAGIC) {
+        throw new IOException("Bad magic");
+      }
+      int edgeCount = inputStream.readInt();
+      for (int i = 0; i < edgeCount; i++) {
+        String from = inputStream.readUTF();
+        String to = inputStream.readUTF();
+        Edge edge = new Edge();
+        edge.weight = inputStream.readInt();
+        for (int j = 0; j < POSE_SIZE; j++) {
+          edge.relativePose[j] = inputStream.readFloat();
+        }
+        graph.neighborsOf(from).put(to, edge);
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Discarding unreadable anchor graph " + file, e);
+      return new AnchorGraph(maxNeighbors);
+    }
+    return graph;
+  }
+
+  /**
+   * Serializes the graph for {@link #save}, so that the file can be written without holding on to
+   * the graph, and marks it as saved.
+   */
+  byte[] serialize() {
+    int edgeCount = 0;
+    for (Map<String, Edge> neighbors : edges.values()) {
+      edgeCount += neighbors.size();
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream outputStream = new DataOutputStream(bytes)) {
+      outputStream.writeInt(FILE_MAGIC);
+      outputStream.writeInt(edgeCount);
+      for (Map.Entry<String, Map<String, Edge>> from : edges.entrySet()) {
+        for (Map.Entry<String, Edge> to : from.getValue().entrySet()) {
+          outputStream.writeUTF(from.getKey());
+          outputStream.writeUTF(to.getKey());
+          outputStream.writeInt(to.getValue().weight);
+          for (float value : to.getValue().relativePose) {
+            outputStream.writeFloat(value);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // Not thrown by in-memory streams.
+      throw new IllegalStateException(e);
+    }
+    dirty = false;
+    return bytes.toByteArray();
+  }
+
+  /** Writes a graph returned by {@link #serialize} to {@code file}, replacing it atomically. */
+  static void save(byte[] data, File file) throws IOException {
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    try (FileOutputStream outputStream = new FileOutputStream(temporaryFile)) {
+      outputStream.write(data);
+    } catch (IOException e) {
+      temporaryFile.delete();
+      throw e;
+    }
+    if (!temporaryFile.renameTo(file)) {
+      temporaryFile.delete();
+      throw new IOException("Could not replace " + file);
+    }
+  }
+
+  private Map<String, Edge> neighborsOf(String id) {
+    Map<String, Edge> neighbors = edges.get(id);
+    if (neighbors == null) {
+      neighbors = new HashMap<>();
+      edges.put(id, neighbors);
+    }
+    return neighbors;
+  }
+
+  private void addObservation(String from, String to, float[] relativePose) {
+    Map<String, Edge> neighbors = neighborsOf(from);
+    Edge edge = neighbors.get(to);
+    if (edge == null) {
+      if (neighbors.size() >= maxNeighbors && !replaceFarthest(neighbors, relativePose)) {
+        return;
+      }
+      edge = new Edge();
+      neighbors.put(to, edge);
+    }
+    if (edge.weight < MAX_WEIGHT) {
+      edge.weight++;
+    }
+    blend(edge.relativePose, relativePose, 1.0f / edge.weight);
+  }
+
+  /** Drops the farthest neighbor if it is farther than {@code relativePose}. */
+  private static boolean replaceFarthest(Map<String, Edge> neighbors, float[] relativePose) {
+    String farthest = null;
+    float farthestDistance = lengthSquared(relativePose);
+    for (Map.Entry<String, Edge> entry : neighbors.entrySet()) {
+      float distance = lengthSquared(entry.getValue().relativePose);
+      if (distance > farthestDistance) {
+        farthest = entry.getKey();
+        farthestDistance = distance;
+      }
+    }
+    if (farthest == null) {
+      return false;
+    }
+    neighbors.remove(farthest);
+    return true;
+  }
+
+  private static float lengthSquared(float[] pose) {
+    return pose[0] * pose[0] + pose[1] * pose[1] + pose[2] * pose[2];
+  }
+
+  /** Moves {@code average} towards {@code sample} by {@code t}, in place. */
+  private static void blend(float[] average, float[] sample, float t) {
+    for (int i = 0; i < 3; i++) {
+      average[i] += (sample[i] - average[i]) * t;
+    }
+    // q and -q are the same rotation; blend within one hemisphere.
+    float dot =
+        average[3] * sample[3] + average[4] * sample[4] + average[5] * sample[5]
+            + average[6] * sample[6];
+    float sign = dot < 0 ? -1 : 1;
+    for (int i = 3; i < POSE_SIZE; i++) {
+      average[i] += (sign * sample[i] - average[i]) * t;
+    }
+    normalizeRotation(average);
+  }
+
+  private static void normalizeRotation(float[] pose) {
+    float length =
+        (float)
+            Math.sqrt(pose[3] * pose[3] + pose[4] * pose[4] + pose[5] * pose[5] + pose[6] * pose[6]);
+    if (length == 0) {
+      pose[3] = pose[4] = pose[5] = 0;
+      pose[6] = 1;
+      return;
+    }
+    for (int i = 3; i < POSE_SIZE; i++) {
+      pose[i] /= length;
+    }
+  }
+
+  /** Writes the pose of {@code b} in the frame of {@code a}: a^-1 * b. */
+  static void relative(float[] a, float[] b, float[] out) {
+    float ix = -a[3];
+    float iy = -a[4];
+    float iz = -a[5];
+    float iw = a[6];
+    rotate(ix, iy, iz, iw, b[0] - a[0], b[1] - a[1], b[2] - a[2], out);
+    multiply(ix, iy, iz, iw, b[3], b[4], b[5], b[6], out);
+  }
+
+  /** Writes a * r, the pose {@code r} relative to {@code a} in the frame {@code a} is in. */
+  static void compose(float[] a, float[] r, float[] out) {
+    float ax = a[3];
+    float ay = a[4];
+    float az = a[5];
+    float aw = a[6];
+    float tx = a[0];
+    float ty = a[1];
+    float tz = a[2];
+    float rx = r[3];
+    float ry = r[4];
+    float rz = r[5];
+    float rw = r[6];
+    rotate(ax, ay, az, aw, r[0], r[1], r[2], out);
+    out[0] += tx;
+    out[1] += ty;
+    out[2] += tz;
+    multiply(ax, ay, az, aw, rx, ry, rz, rw, out);
+  }
+
+  /** Writes the vector v rotated by the unit quaternion q to out[0..2]. */
+  private static void rotate(
+      float qx, float qy, float qz, float qw, float vx, float vy, float vz, float[] out) {
+    // v + 2w(q x v) + 2q x (q x v)
+    float cx = qy * vz - qz * vy;
+    float cy = qz * vx - qx * vz;
+    float cz = qx * vy - qy * vx;
+    float ccx = qy * cz - qz * cy;
+    float ccy = qz * cx - qx * cz;
+    float ccz = qx * cy - qy * cx;
+    out[0] = vx + 2 * (qw * cx + ccx);
+    out[1] = vy + 2 * (qw * cy + ccy);
+    out[2] = vz + 2 * (qw * cz + ccz);
+  }
+
+  /** Writes the quaternion product a * b to out[3..6]. */
+  private static void multiply(
+      float ax, float ay, float az, float aw, float bx, float by, float bz, float bw, float[] out) {
+    out[3] = aw * bx + ax * bw + ay * bz - az * by;
+    out[4] = aw * by - ax * bz + ay * bw + az * bx;
+    out[5] = aw * bz + ax * by - ay * bx + az * bw;
+    out[6] = aw * bw - ax * bx - ay * by - az * bz;
+  }
+}
@@ -0,0 +1,344 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Decides which resolved anchors stay attached, to bound the tracking work ARCore spends on them.
+ *
+ * <p>An anchor is detached once it is farther than the detach distance from the camera, or has not
+ * been tracked for the staleness period. If more anchors are live than the cap allows, the farthest
+ * ones are detached. Detached anchors are remembered by the {@link PoiStore} handle of their POI
+ * and their last known position, and are queued for resolving again when the camera comes back
+ * within the resolve distance.
+ *
+ * <p>To avoid thrashing, the resolve distance is shorter than the detach distance, an anchor keeps
+ * its state for a minimum time before it may change again, and an anchor detached as stale is only
+ * resolved again after the camera has left its surroundings and returned.
+ *
+ * <p>The cap also covers resolves requested elsewhere, such as for the anchors of a map that was
+ * entered: {@link #admitResolves} starts as many of them as the cap allows and defers the rest
+ * until {@link #update} finds room.
+ *
+ * <p>Anchors are kept by handle and in a dense list, so {@link #onAnchorTracked} and {@link
+ * #update}, which run every frame, only index arrays. Handles must be forgotten before the store
+ * reuses them. Pure Java and not thread safe. Distances are in meters and times are frame
+ * timestamps in nanoseconds.
+ */
+class AnchorLifecycleManager {
+
+  private static final class Entry {
+    final int handle;
+    // Position in the dense list of entries.
+    int index;
+    boolean live;
+    boolean resolving;
+    // Set after a stale detach or failed resolve; cleared once the camera moved out of range.
+    boolean awaitingReturn;
+    // Last known position; NaN until the anchor was tracked.
+    float x = Float.NaN;
+    float y = Float.NaN;
+    float z = Float.NaN;
+    // -1 until the next update stamps the time of a change.
+    long lastSeenNanos = -1;
+    long changedNanos = -1;
+    // Scratch value of the current update.
+    float distance;
+
+    Entry(int handle) {
+      this.handle = handle;
+    }
+  }
+
+  private final float detachDistance;
+  private final float resolveDistance;
+  private final long staleAfterNanos;
+  private final long minStateNanos;
+  private final int maxLiveAnchors;
+
+  // By handle; null for POIs without an anchor.
+  private Entry[] entriesByHandle = new Entry[16];
+  private final ArrayList<Entry> entries = new ArrayList<>();
+  // Resolves deferred by admitResolves, in the order they were requested.
+  private final LinkedHashSet<Integer> deferredHandles = new LinkedHashSet<>();
+  private final List<Entry> candidates = new ArrayList<>();
+
+  /**
+   * @param detachDistance Distance beyond which a live anchor is detached.
+   * @param resolveDistance Distance within which a detached anchor is resolved again; shorter than
+   *     {@code detachDistance}.
+   * @param staleAfterNanos Time without tracking after which a live anchor is detached.
+   * @param minStateNanos Time an anchor stays attached or detached before it may change again.
+   * @param maxLiveAnchors Number of anchors live or resolving at a time.
+   */
+  AnchorLifecycleManager(
+      float detachDistance,
+      float resolveDistance,
+      long staleAfterNanos,
+      long minStateNanos,
+      int maxLiveAnchors) {
+    Preconditions.checkArgument(
+        0 < resolveDistance && resolveDistance < detachDistance,
+        "The resolve distance must be positive and shorter than the detach distance.");
+    Preconditions.checkArgument(maxLiveAnchors > 0, "The anchor cap must be positive.");
+    this.detachDistance = detachDistance;
+    this.resolveDistance = resolveDistance;
+    this.staleAfterNanos = staleAfterNanos;
+    this.minStateNanos = minStateNanos;
+    this.maxLiveAnchors = maxLiveAnchors;
+  }
+
+  /**
+   * Admits resolves requested outside of {@link #update} as far as the cap allows, and defers the
+   * others until a later update finds room. Anchors that are live are skipped, and anchors that
+   * an update already queued for resolving are admitted without being counted again.
+   *
+   * @param admitted Receives the handles to resolve now; they are considered resolving until
+   *     {@link #onAnchorAttached} or {@link #onResolveFailed}.
+   * @param deferred Receives the handles deferred; later updates hand them out to resolve.
+   */
+  void admitResolves(Collection<Integer> handles, List<Integer> admitted, List<Integer> deferred) {
+    int active = getActiveCount();
+    for (int handle : handles) {
+      Entry entry = get(handle);
+      if (entry != null && entry.live) {
+        continue;
+      }
+      if (entry != null && entry.resolving) {
+        admitted.add(handle);
+      } else if (active < maxLiveAnchors) {
+        deferredHandles.remove(handle);
+        startResolving(getOrCreate(handle), -1);
+        admitted.add(handle);
+        active++;
+      } else {
+        deferredHandles.add(handle);
+        deferred.add(handle);
+      }
+    }
+  }
+
+  /** Records an anchor that was resolved. */
+  void onAnchorAttached(int handle) {
+    deferredHandles.remove(handle);
+    Entry entry = getOrCreate(handle);
+    entry.live = true;
+    entry.resolving = false;
+    entry.awaitingReturn = false;
+    entry.lastSeenNanos = -1;
+    entry.changedNanos = -1;
+  }
+
+  /**
+   * Records that resolving an anchor failed. An anchor that was tracked before is resolved again
+   * once the camera has left and returned; one that never was is forgotten, so that it is only
+   * requested again through {@link #admitResolves}.
+   */
+  void onResolveFailed(int handle) {
+    Entry entry = get(handle);
+    if (entry == null || !entry.resolving) {
+      return;
+    }
+    if (Float.isNaN(entry.x)) {
+      remove(entry);
+      return;
+    }
+    entry.resolving = false;
+    entry.awaitingReturn = true;
+    entry.changedNanos = -1;
+  }
+
+  /** Records the position of a live anchor that is being tracked. */
+  void onAnchorTracked(int handle, float x, float y, float z, long timestampNanos) {
+    Entry entry = get(handle);
+    if (entry == null || !entry.live) {
+      return;
+    }
+    entry.x = x;
+    entry.y = y;
+    entry.z = z;
+    entry.lastSeenNanos = timestampNanos;
+  }
+
+  /** Forgets anchors, e.g. because their POIs were removed and the handles may be reused. */
+  void forget(Collection<Integer> handles) {
+    for (int handle : handles) {
+      Entry entry = get(handle);
+      if (entry != null) {
+        remove(entry);
+      }
+    }
+    deferredHandles.removeAll(handles);
+  }
+
+  /** Returns the number of resolves deferred by {@link #admitResolves}. */
+  int getDeferredCount() {
+    return deferredHandles.size();
+  }
+
+  /** Returns the number of anchors that are live or resolving. */
+  int getActiveCount() {
+    int count = 0;
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (entry.live || entry.resolving) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Applies the limits for the camera position of a frame.
+   *
+   * @param toDetach Receives the handles of anchors to detach; they are considered detached on
+   *     return.
+   * @param toResolve Receives the handles of anchors to resolve again; they are considered
+   *     resolving until {@link #onAnchorAttached} or {@link #onResolveFailed}.
+   */
+  void update(
+      long timestampNanos,
+      float cameraX,
+      float cameraY,
+      float cameraZ,
+      List<Integer> toDetach,
+      List<Integer> toResolve) {
+    int active = 0;
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (entry.lastSeenNanos < 0 && entry.live) {
+        entry.lastSeenNanos = timestampNanos;
+      }
+      if (entry.changedNanos < 0) {
+        entry.changedNanos = timestampNanos;
+      }
+      entry.distance = distance(entry, cameraX, cameraY, cameraZ);
+      boolean settled = timestampNanos - entry.changedNanos >= minStateNanos;
+
+      if (entry.live) {
+        boolean far = entry.distance > detachDistance;
+        boolean stale = timestampNanos - entry.lastSeenNanos > staleAfterNanos;
+        if (settled && (far || stale)) {
+          detach(entry, timestampNanos);
+          entry.awaitingReturn = stale && !far;
+          toDetach.add(entry.handle);
+          continue;
+        }
+      } else if (entry.awaitingReturn && entry.distance > detachDistance) {
+        entry.awaitingReturn = false;
+      }
+      if (entry.live || entry.resolving) {
+        active++;
+      }
+    }
+
+    // Over the cap, detach the farthest live anchors; anchors at an unknown position go first.
+    while (active > maxLiveAnchors) {
+      Entry farthest = null;
+      for (int i = 0; i < entries.size(); i++) {
+        Entry entry = entries.get(i);
+        if (entry.live && (farthest == null || rank(entry) > rank(farthest))) {
+          farthest = entry;
+        }
+      }
+      if (farthest == null) {
+        // Only resolving anchors are left; they are counted against the cap once attached.
+        break;
+      }
+      detach(farthest, timestampNanos);
+      toDetach.add(farthest.handle);
+      active--;
+    }
+
+    // Resolve the closest detached anchors that came back within range, as far as the cap allows.
+    candidates.clear();
+    for (int i = 0; i < entries.size(); i++) {
+      Entry entry = entries.get(i);
+      if (!entry.live
+          && !entry.resolving
+          && !entry.awaitingReturn
+          && entry.distance < resolveDistance
+          && timestampNanos - entry.changedNanos >= minStateNanos) {
+        candidates.add(entry);
+      }
+    }
+    if (active >= maxLiveAnchors) {
+      return;
+    }
+    candidates.sort((a, b) -> Float.compare(a.distance, b.distance));
+    for (int i = 0; i < candidates.size() && active < maxLiveAnchors; i++) {
+      Entry entry = candidates.get(i);
+      startResolving(entry, timestampNanos);
+      toResolve.add(entry.handle);
+      active++;
+    }
+
+    // Then the deferred resolves, in the order they were requested.
+    for (Iterator<Integer> it = deferredHandles.iterator();
+        it.hasNext() && active < maxLiveAnchors; ) {
+      int handle = it.next();
+      it.remove();
+      startResolving(getOrCreate(handle), timestampNanos);
+      toResolve.add(handle);
+      active++;
+    }
+  }
+
+  private Entry get(int handle) {
+    return handle < 0 || handle >= entriesByHandle.length ? null : entriesByHandle[handle];
+  }
+
+  private Entry getOrCreate(int handle) {
+    Entry entry = get(handle);
+    if (entry == null) {
+      if (handle >= entriesByHandle.length) {
+        entriesByHandle =
+            Arrays.copyOf(entriesByHandle, Math.max(handle + 1, entriesByHandle.length * 2));
+      }
+      entry = new Entry(handle);
+      entry.index = entries.size();
+      entries.add(entry);
+      entriesByHandle[handle] = entry;
+    }
+    return entry;
+  }
+
+  /** Removes an entry, moving the last one of the dense list into its place. */
+  private void remove(Entry entry) {
+    Entry last = entries.remove(entries.size() - 1);
+    if (last != entry) {
+      last.index = entry.index;
+      entries.set(entry.index, last);
+    }
+    entriesByHandle[entry.handle] = null;
+  }
+
+  private static void startResolving(Entry entry, long timestampNanos) {
+    entry.resolving = true;
+    entry.awaitingReturn = false;
+    entry.changedNanos = timestampNanos;
+  }
+
+  private static void detach(Entry entry, long timestampNanos) {
+    entry.live = false;
+    entry.changedNanos = timestampNanos;
+  }
+
+  /** Orders anchors by distance, with anchors at an unknown position farthest. */
+  private static float rank(Entry entry) {
+    return Float.isNaN(entry.distance) ? Float.POSITIVE_INFINITY : entry.distance;
+  }
+
+  /** Returns the distance from the camera, or NaN if the anchor was never tracked. */
+  private static float distance(Entry entry, float cameraX, float cameraY, float cameraZ) {
+    float dx = entry.x - cameraX;
+    float dy = entry.y - cameraY;
+    float dz = entry.z - cameraZ;
+    return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+}
@@ -0,0 +1,241 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Anchors in dense rows, each paired with the {@link PoiStore} handle of its POI, its cloud anchor
+ * id and a snapshot of its pose, so that per frame loops index arrays instead of calling ARCore.
+ *
+ * <p>{@link Anchor#getCloudAnchorId()} creates a new string on every call; the id is taken from
+ * the resolve request once instead. Tracking states, translations, rotations and model matrices
+ * are kept in column arrays and refreshed by {@link #refreshPoses} only for the anchors the frame
+ * reports as changed, so an anchor costs at most two calls into ARCore in a frame that moved it,
+ * and none otherwise.
+ *
+ * <p>Rows are {@code [0, size())}, and removing a row moves the last row into its place, so loops
+ * that remove rows run backwards. Not thread safe.
+ */
+final class AnchorTable {
+  static final int MATRIX_SIZE = 16;
+  static final int ROTATION_SIZE = 4;
+
+  private Anchor[] anchors = new Anchor[16];
+  private int[] handles = new int[16];
+  private String[] cloudAnchorIds = new String[16];
+  private int size;
+
+  // Pose snapshot, by row. Translations, rotations and matrices are those of the last refresh that
+  // found the anchor tracking; rows not refreshed yet are PAUSED.
+  private TrackingState[] trackingStates = new TrackingState[16];
+  private boolean[] stale = new boolean[16];
+  private float[] xs = new float[16];
+  private float[] ys = new float[16];
+  private float[] zs = new float[16];
+  // 0 for rows tracking at the last refresh and infinity for the others, so that their distances
+  // are masked by an addition.
+  private float[] distanceOffsets = new float[16];
+  private float[] rotations = new float[16 * ROTATION_SIZE];
+  private float[] modelMatrices = new float[16 * MATRIX_SIZE];
+
+  // Row + 1 by handle, 0 for handles without an anchor.
+  private int[] rowsByHandle = new int[16];
+  private final Map<Anchor, Integer> rowsByAnchor = new HashMap<>();
+
+  /**
+   * Adds the anchor of the POI with {@code handle}.
+   *
+   * @return The anchor it replaces, or null.
+   */
+  Anchor put(int handle, Anchor anchor, String cloudAnchorId) {
+    if (handle >= rowsByHandle.length) {
+      rowsByHandle = Arrays.copyOf(rowsByHandle, Math.max(handle + 1, rowsByHandle.length * 2));
+    }
+    int row = rowsByHandle[handle] - 1;
+    Anchor replaced = null;
+    if (row >= 0) {
+      replaced = anchors[row];
+      rowsByAnchor.remove(replaced);
+    } else {
+      if (size == anchors.length) {
+        grow();
+      }
+      row = size++;
+      rowsByHandle[handle] = row + 1;
+    }
+    anchors[row] = anchor;
+    handles[row] = handle;
+    cloudAnchorIds[row] = cloudAnchorId;
+    rowsByAnchor.put(anchor, row);
+    trackingStates[row] = TrackingState.PAUSED;
+    distanceOffsets[row] = Float.POSITIVE_INFINITY;
+    stale[row] = true;
+    return replaced;
+  }
+
+  /** Returns the row of the anchor of the POI with {@code handle}, or -1. */
+  int rowOf(int handle) {
+    return handle < 0 || handle >= rowsByHandle.length ? -1 : rowsByHandle[handle] - 1;
+  }
+
+  /**
+   * Removes the anchor of the POI with {@code handle}.
+   *
+   * @return The removed anchor, or null if there was none.
+   */
+  Anchor remove(int handle) {
+    int row = rowOf(handle);
+    return row < 0 ? null : removeRow(row);
+  }
+
+  /** Removes a row, moving the last row into its place, and returns its anchor. */
+  Anchor removeRow(int row) {
+    Anchor removed = anchors[row];
+    rowsByHandle[handles[row]] = 0;
+    rowsByAnchor.remove(removed);
+    int last = --size;
+    if (row != last) {
+      anchors[row] = anchors[last];
+      handles[row] = handles[last];
+      cloudAnchorIds[row] = cloudAnchorIds[last];
+      trackingStates[row] = trackingStates[last];
+      distanceOffsets[row] = distanceOffsets[last];
+      stale[row] = stale[last];
+      xs[row] = xs[last];
+      ys[row] = ys[last];
+      zs[row] = zs[last];
+      System.arraycopy(
+          rotations, last * ROTATION_SIZE, rotations, row * ROTATION_SIZE, ROTATION_SIZE);
+      System.arraycopy(
+          modelMatrices, last * MATRIX_SIZE, modelMatrices, row * MATRIX_SIZE, MATRIX_SIZE);
+      rowsByHandle[handles[row]] = row + 1;
+      rowsByAnchor.put(anchors[row], row);
+    }
+    anchors[last] = null;
+    cloudAnchorIds[last] = null;
+    trackingStates[last] = null;
+    return removed;
+  }
+
+  int size() {
+    return size;
+  }
+
+  Anchor getAnchor(int row) {
+    return anchors[row];
+  }
+
+  int getHandle(int row) {
+    return handles[row];
+  }
+
+  String getCloudAnchorId(int row) {
+    return cloudAnchorIds[row];
+  }
+
+  /**
+   * Refreshes the pose snapshot of the anchors in {@code updatedAnchors}, as returned by {@link
+   * com.google.ar.core.Frame#getUpdatedAnchors()}, and of the anchors added since the last refresh.
+   * Anchors of other tables are ignored.
+   */
+  void refreshPoses(Collection<Anchor> updatedAnchors) {
+    for (Anchor anchor : updatedAnchors) {
+      Integer row = rowsByAnchor.get(anchor);
+      if (row != null) {
+        stale[row] = true;
+      }
+    }
+    for (int row = 0; row < size; row++) {
+      if (!stale[row]) {
+        continue;
+      }
+      stale[row] = false;
+      trackingStates[row] = anchors[row].getTrackingState();
+      if (trackingStates[row] != TrackingState.TRACKING) {
+        distanceOffsets[row] = Float.POSITIVE_INFINITY;
+      } else {
+        distanceOffsets[row] = 0;
+        Pose pose = anchors[row].getPose();
+        xs[row] = pose.tx();
+        ys[row] = pose.ty();
+        zs[row] = pose.tz();
+        pose.getRotationQuaternion(rotations, row * ROTATION_SIZE);
+        pose.toMatrix(modelMatrices, row * MATRIX_SIZE);
+      }
+    }
+  }
+
+  /**
+   * Makes the next {@link #refreshPoses} read every anchor, for when the updated anchors of some
+   * frames were not passed to it.
+   */
+  void markAllStale() {
+    Arrays.fill(stale, 0, size, true);
+  }
+
+  /** Returns the tracking state of the anchor at the last refresh. */
+  TrackingState getTrackingState(int row) {
+    return trackingStates[row];
+  }
+
+  /** Returns true if the anchor was tracking at the last refresh. */
+  boolean isTracking(int row) {
+    return trackingStates[row] == TrackingState.TRACKING;
+  }
+
+  float getX(int row) {
+    return xs[row];
+  }
+
+  float getY(int row) {
+    return ys[row];
+  }
+
+  float getZ(int row) {
+    return zs[row];
+  }
+
+  /**
+   * Writes the translation and then the rotation quaternion (x, y, z, w) of the row to {@code
+   * out}, starting at {@code offset}, in the layout of {@link AnchorGraph#POSE_SIZE} poses.
+   */
+  void getPose(int row, float[] out, int offset) {
+    out[offset] = xs[row];
+    out[offset + 1] = ys[row];
+    out[offset + 2] = zs[row];
+    System.arraycopy(rotations, row * ROTATION_SIZE, out, offset + 3, ROTATION_SIZE);
+  }
+
+  /**
+   * Writes the squared distance of every row from (x, y, z) to {@code out}, or infinity for rows
+   * that were not tracking at the last refresh.
+   */
+  void squaredDistances(float x, float y, float z, float[] out) {
+    DistanceKernel.squaredDistances(xs, ys, zs, distanceOffsets, size, x, y, z, out);
+  }
+
+  /** Returns the model matrices of all rows, the one of row i at {@code i * MATRIX_SIZE}. */
+  float[] getModelMatrices() {
+    return modelMatrices;
+  }
+
+  private void grow() {
+    int capacity = anchors.length * 2;
+    anchors = Arrays.copyOf(anchors, capacity);
+    handles = Arrays.copyOf(handles, capacity);
+    cloudAnchorIds = Arrays.copyOf(cloudAnchorIds, capacity);
+    trackingStates = Arrays.copyOf(trackingStates, capacity);
+    distanceOffsets = Arrays.copyOf(distanceOffsets, capacity);
+    stale = Arrays.copyOf(stale, capacity);
+    xs = Arrays.copyOf(xs, capacity);
+    ys = Arrays.copyOf(ys, capacity);
+    zs = Arrays.copyOf(zs, capacity);
+    rotations = Arrays.copyOf(rotations, capacity * ROTATION_SIZE);
+    modelMatrices = Arrays.copyOf(modelMatrices, capacity * MATRIX_SIZE);
+  }
+}
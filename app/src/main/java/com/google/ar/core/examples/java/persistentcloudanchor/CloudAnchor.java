@@ -40,6 +40,18 @@ public class CloudAnchor {
 
     public String getId(){return this.id;}
 
+    public double getLatitude() {
+        return lat;
+    }
+
+    public double getLongitude() {
+        return lon;
+    }
+
+    public double getAltitude() {
+        return alt;
+    }
+
     public double getDistance(CloudAnchor a1)
     {
         return 0;
@@ -1,10 +1,20 @@
 package com.google.ar.core.examples.java.persistentcloudanchor;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
 import android.content.SharedPreferences;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.WindowManager;
 import android.widget.TextView;
@@ -22,31 +32,54 @@ import com.google.ar.core.Camera;
 import com.google.ar.core.Config;
 import com.google.ar.core.Config.CloudAnchorMode;
 import com.google.ar.core.Frame;
+import com.google.ar.core.LightEstimate;
 import com.google.ar.core.PointCloud;
 import com.google.ar.core.Pose;
 import com.google.ar.core.Session;
 import com.google.ar.core.TrackingState;
 import com.google.ar.core.examples.java.common.helpers.CameraPermissionHelper;
 import com.google.ar.core.examples.java.common.helpers.DisplayRotationHelper;
+import com.google.ar.core.examples.java.common.helpers.FrameScheduler;
 import com.google.ar.core.examples.java.common.helpers.FullScreenHelper;
+import com.google.ar.core.examples.java.common.helpers.LocationPermissionHelper;
 import com.google.ar.core.examples.java.common.helpers.TrackingStateHelper;
+import com.google.ar.core.examples.java.common.rendering.AssetPipeline;
 import com.google.ar.core.examples.java.common.rendering.BackgroundRenderer;
+import com.google.ar.core.examples.java.common.rendering.DepthTextureHandler;
 import com.google.ar.core.examples.java.common.rendering.ObjectRenderer;
+import com.google.ar.core.examples.java.common.rendering.PointCloudFilter;
+import com.google.ar.core.examples.java.common.rendering.PointCloudMap;
 import com.google.ar.core.examples.java.common.rendering.PointCloudRenderer;
+import com.google.ar.core.examples.java.common.rendering.ProgramBinaryCache;
+import com.google.ar.core.examples.java.common.rendering.RenderQueue;
+import com.google.ar.core.examples.java.common.rendering.ResolutionScaleController;
+import com.google.ar.core.examples.java.common.rendering.ScaledRenderTarget;
+import com.google.ar.core.examples.java.common.rendering.ShaderUtil;
+import com.google.ar.core.examples.java.common.rendering.ShaderVariantRegistry;
+import com.google.ar.core.examples.java.common.routing.RouteTracker;
+import com.google.ar.core.examples.java.common.routing.RoutingGraph;
 import com.google.ar.core.examples.java.persistentcloudanchor.PrivacyNoticeDialogFragment.HostResolveListener;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 import com.google.ar.core.exceptions.UnavailableApkTooOldException;
 import com.google.ar.core.exceptions.UnavailableArcoreNotInstalledException;
 import com.google.ar.core.exceptions.UnavailableSdkTooOldException;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -62,17 +95,69 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     private static final String TAG = CloudAnchorActivity.class.getSimpleName();
     private static final String ALLOW_SHARE_IMAGES_KEY = "ALLOW_SHARE_IMAGES";
     protected static final String PREFERENCE_FILE_KEY = "CLOUD_ANCHOR_PREFERENCES";
+    // Name of a SessionProfile to run with instead of the balanced one.
+    static final String EXTRA_SESSION_PROFILE = "SESSION_PROFILE";
 
     // Rendering. The Renderers are created here, and initialized when the GL surface is created.
     private GLSurfaceView surfaceView;
     private final BackgroundRenderer backgroundRenderer = new BackgroundRenderer();
     private final ObjectRenderer anchorObject = new ObjectRenderer();
-    private final PointCloudRenderer pointCloudRenderer = new PointCloudRenderer();
+    // Feature points accumulate in 5 cm voxels. 20000 voxels bound the map to about 1.3 MB, and
+    // voxels unseen for a minute are dropped.
+    private final PointCloudRenderer pointCloudRenderer =
+            new PointCloudRenderer(new PointCloudMap(0.05f, 20_000, 60_000_000_000L));
+    private final RenderQueue renderQueue = new RenderQueue();
+    private final DepthTextureHandler depthTexture = new DepthTextureHandler();
+    // Set when the session is configured; read on the GL thread.
+    private volatile boolean isDepthEnabled = false;
+
+    // Assets are decoded off the GL thread and uploaded within this budget per frame.
+    private static final long ASSET_UPLOAD_BUDGET_NANOS = 4_000_000;
+    private final AssetPipeline assetPipeline = new AssetPipeline();
+
+    // Every shader variant the renderers may switch to is built ahead of use, within this budget
+    // per frame, so that runtime switches never compile.
+    private static final long SHADER_PRECOMPILE_BUDGET_NANOS = 2_000_000;
+    private final ShaderVariantRegistry shaderVariants = new ShaderVariantRegistry();
+
+    // Rendering slows down once the camera has been still for a second (below 5 cm/s and
+    // 0.1 rad/s), or while tracking is lost. In those modes frames are requested from the UI thread.
+    private final FrameScheduler frameScheduler =
+            new FrameScheduler(0.05f, 0.1f, 1_000_000_000L);
+    private final Handler renderHandler = new Handler(Looper.getMainLooper());
+    private final Runnable requestRender = () -> surfaceView.requestRender();
+    private FrameScheduler.Mode renderMode = FrameScheduler.Mode.CONTINUOUS;
+    private int visibleAnchorCount = 0;
+
+    // The point cloud and anchors are drawn at a reduced resolution when frames take longer than
+    // 20 ms to render and present, and composited over the full-resolution camera image.
+    private final ScaledRenderTarget contentTarget = new ScaledRenderTarget();
+    private final ResolutionScaleController resolutionScale =
+            new ResolutionScaleController(20_000_000L, 0.5f, 1.0f, 0.125f);
+    private long lastUpdateEndNanos = 0;
+    // Set when a frame returned before refreshing the anchor snapshots, so the anchor updates of
+    // that frame were dropped. Only used on the GL thread.
+    private boolean anchorUpdatesSkipped = false;
+
+    // Camera configuration and optional session features. The low-power profile takes over while
+    // battery saver is on, and the preferred one is restored when it is turned off.
+    private SessionProfile preferredProfile = SessionProfile.BALANCED;
+    private SessionProfile sessionProfile;
+    private PowerManager powerManager;
+    private final BroadcastReceiver powerSaveReceiver =
+            new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    onPowerSaveModeChanged();
+                }
+            };
+    // Neutral color correction, for when light estimation is off or not valid yet.
+    private static final float[] DEFAULT_COLOR_CORRECTION = {1.0f, 1.0f, 1.0f, 0.466f};
+    private final float[] colorCorrectionRgba = new float[4];
 
     private boolean installRequested;
 
     // Temporary matrices allocated here to reduce number of allocations for each frame.
-    private final float[] anchorMatrix = new float[16];
     private final float[] viewMatrix = new float[16];
     private final float[] projectionMatrix = new float[16];
 
@@ -89,15 +174,92 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     private Session session;
 
     @GuardedBy("anchorLock")
-    private final List<Anchor> resolvedAnchors = new ArrayList<>();
+    private final AnchorTable resolvedAnchors = new AnchorTable();
 
     @GuardedBy("anchorLock")
     private List<String> unresolvedAnchorIds = new ArrayList<>();
 
-    private final Map<String, CloudAnchor> anchorMap = new HashMap<>();
+    // POIs of all loaded maps, by cloud anchor id.
+    @GuardedBy("anchorLock")
+    private final PoiStore pois = new PoiStore();
 
     private CloudAnchorManager cloudAnchorManager;
 
+    // Each building has its own map of POIs under /maps. The map whose region the device is in is
+    // loaded on entry; the default map is used until a location fix says otherwise. At most 40
+    // anchors and about 1 MB of POI data are kept across maps.
+    private static final String MAPS_COLLECTION = "/maps";
+    private static final String DEFAULT_MAP_ID = "fisat";
+    private static final int MAX_RESOLVED_ANCHORS = 40;
+    private static final long MAX_POI_BYTES = 1 << 20;
+    private static final long LOCATION_INTERVAL_MILLIS = 10_000;
+    private static final float LOCATION_MIN_DISTANCE_METERS = 10.0f;
+    private final MapRegistry mapRegistry =
+            new MapRegistry(MAX_RESOLVED_ANCHORS, MAX_POI_BYTES, new MapCallbacks());
+    private final ResolveListener resolveListener = new ResolveListener();
+
+    // Anchors farther than 30 m, or untracked for 30 s, are detached, and at most 20 are live.
+    // Detached anchors are resolved again within 20 m; an anchor keeps its state for at least 5 s.
+    @GuardedBy("anchorLock")
+    private final AnchorLifecycleManager anchorLifecycle =
+            new AnchorLifecycleManager(30.0f, 20.0f, 30_000_000_000L, 5_000_000_000L, 20);
+    // POI handles filled in by the lifecycle manager on each frame.
+    private final List<Integer> anchorsToDetach = new ArrayList<>();
+    private final List<Integer> anchorsToResolve = new ArrayList<>();
+
+    // Poses of anchors relative to the up to 8 closest anchors tracked with them, sampled once a
+    // second and kept across sessions. As soon as an anchor resolves, neighbors still resolving are
+    // placed as local anchors, which their cloud resolves then replace.
+    private static final String ANCHOR_GRAPH_FILE = "anchor_graph.bin";
+    private static final int ANCHOR_GRAPH_NEIGHBORS = 8;
+    private static final long ANCHOR_GRAPH_INTERVAL_NANOS = 1_000_000_000L;
+    @GuardedBy("anchorLock")
+    private AnchorGraph anchorGraph = new AnchorGraph(ANCHOR_GRAPH_NEIGHBORS);
+    @GuardedBy("anchorLock")
+    private final AnchorTable provisionalAnchors = new AnchorTable();
+    // Handles of resolved anchors whose neighbors are still to be placed.
+    @GuardedBy("anchorLock")
+    private final List<Integer> anchorsToPlaceFrom = new ArrayList<>();
+    private long lastAnchorGraphNanos = 0;
+    private final List<String> graphAnchorIds = new ArrayList<>();
+    private final List<float[]> graphPoses = new ArrayList<>();
+    private final float[] placedFromPose = new float[AnchorGraph.POSE_SIZE];
+    private final float[] placementPose = new float[AnchorGraph.POSE_SIZE];
+    // Writes the anchor graph when the activity pauses, off the UI thread.
+    private final ExecutorService anchorGraphExecutor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "AnchorGraph"));
+
+    // The POI shown to the user is the closest one by a distance filtered over 0.3 s, and only
+    // changes once another POI has been closer by 0.5 m for a second. The text is refreshed when
+    // the POI changes or the distance moves by a displayed step.
+    private final NearestPoiSelector nearestPoi =
+            new NearestPoiSelector(300_000_000L, 0.5f, 1_000_000_000L);
+    private static final float DISTANCE_DISPLAY_STEP = 0.1f;
+    private float shownPoiDistance = Float.NaN;
+    // Only the 8 closest anchors of each kind are candidates; any farther one could not win.
+    private static final int NEAREST_POI_CANDIDATES = 8;
+    private float[] anchorSquaredDistances = new float[64];
+    private final int[] nearestRows = new int[NEAREST_POI_CANDIDATES];
+
+    // Routes lead to the POI named by this extra. The graph of the map that holds it is built from
+    // its POIs and connector nodes in the background, and the route follows the nearest POI.
+    static final String EXTRA_DESTINATION = "DESTINATION";
+    private String destinationName;
+    // Names of the POIs of all loaded maps, on the UI thread. The destination is the best match
+    // for its name, tolerating typos and preferring POIs within about 200 m of the device.
+    private final PoiNameIndex poiNames = new PoiNameIndex(pois);
+    private static final float MIN_DESTINATION_SCORE = 0.3f;
+    private static final double DESTINATION_DISTANCE_SCALE_METERS = 200.0;
+    private Location lastLocation;
+    private final ExecutorService routingExecutor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Routing"));
+    private final Map<String, RouteTracker> routesByMap = new HashMap<>();
+    private volatile RouteTracker routeTracker;
+    // Tracker last fed a position, on the GL thread.
+    private RouteTracker trackedRoute;
+    private LocationManager locationManager;
+    private final LocationListener locationListener = this::onLocationChanged;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -105,6 +267,29 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
         setContentView(R.layout.cloud_anchor);
         surfaceView = findViewById(R.id.surfaceview);
         displayRotationHelper = new DisplayRotationHelper(this);
+        powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
+        String profileName = getIntent().getStringExtra(EXTRA_SESSION_PROFILE);
+        if (profileName != null) {
+            try {
+                preferredProfile = SessionProfile.valueOf(profileName);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown session profile: " + profileName);
+            }
+        }
+        destinationName = getIntent().getStringExtra(EXTRA_DESTINATION);
+
+        BackgroundRenderer.registerShaderVariants(shaderVariants);
+        PointCloudRenderer.registerShaderVariants(shaderVariants);
+        ScaledRenderTarget.registerShaderVariants(shaderVariants);
+        ObjectRenderer.registerShaderVariants(shaderVariants);
+        synchronized (anchorLock) {
+            anchorGraph =
+                    AnchorGraph.load(
+                            new File(getFilesDir(), ANCHOR_GRAPH_FILE), ANCHOR_GRAPH_NEIGHBORS);
+        }
+        // Drop feature points ARCore is unsure about and keep one per 2 cm cell before merging.
+        pointCloudRenderer.setFilter(new PointCloudFilter(0.2f, 0.02f));
 
         // Set up renderer.
         surfaceView.setPreserveEGLContextOnPause(true);
@@ -134,6 +319,10 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
 
     @Override
     protected void onDestroy() {
+        assetPipeline.shutdown();
+        routingExecutor.shutdownNow();
+        // Lets a pending save of the anchor graph finish.
+        anchorGraphExecutor.shutdown();
         if (session != null) {
             session.close();
             session = null;
@@ -147,9 +336,42 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
         super.onResume();
         if (sharedPreferences.getBoolean(ALLOW_SHARE_IMAGES_KEY, false)) {
             createSession();
+            startMaps();
         }
+        registerReceiver(
+                powerSaveReceiver, new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+        frameScheduler.wake();
+        surfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
         surfaceView.onResume();
         displayRotationHelper.onResume();
+        startLocationUpdates();
+    }
+
+    private void onLocationChanged(Location location) {
+        lastLocation = location;
+        if (mapRegistry.onLocation(location.getLatitude(), location.getLongitude())) {
+            routeTracker = routesByMap.get(mapRegistry.getCurrentMapId());
+        }
+    }
+
+    /** Follows the device between map regions, if location permission was granted. */
+    private void startLocationUpdates() {
+        if (mapRegistry.getCurrentMapId() == null
+                || !LocationPermissionHelper.hasFineLocationPermission(this)
+                || !locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
+            return;
+        }
+        Location lastLocation =
+                locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
+        if (lastLocation != null) {
+            onLocationChanged(lastLocation);
+        }
+        locationManager.requestLocationUpdates(
+                LocationManager.NETWORK_PROVIDER,
+                LOCATION_INTERVAL_MILLIS,
+                LOCATION_MIN_DISTANCE_METERS,
+                locationListener,
+                Looper.getMainLooper());
     }
 
     private void createSession() {
@@ -192,11 +414,13 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
                 Log.e(TAG, "Exception creating session", exception);
                 return;
             }
+        }
 
-            // Create default config and check if supported.
-            Config config = new Config(session);
-            config.setCloudAnchorMode(CloudAnchorMode.ENABLED);
-            session.configure(config);
+        // Configure a new session, or reconfigure if battery saver was toggled while paused.
+        SessionProfile profile = selectSessionProfile();
+        if (profile != sessionProfile) {
+            sessionProfile = profile;
+            configureSession();
         }
 
         // Note that order matters - see the note in onPause(), the reverse applies here.
@@ -207,12 +431,59 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             debugText.setText(R.string.camera_unavailable);
             session = null;
             cloudAnchorManager = null;
+            sessionProfile = null;
         }
     }
 
+    private SessionProfile selectSessionProfile() {
+        return powerManager.isPowerSaveMode() ? SessionProfile.LOW_POWER : preferredProfile;
+    }
+
+    /** Applies {@link #sessionProfile} to the session, which must be paused. */
+    private void configureSession() {
+        sessionProfile.selectCameraConfig(session);
+        Config config = new Config(session);
+        config.setCloudAnchorMode(CloudAnchorMode.ENABLED);
+        // Occlude anchors behind real geometry on devices that support depth, unless the profile
+        // saves the power.
+        isDepthEnabled = sessionProfile.applyFeatures(session, config);
+        session.configure(config);
+    }
+
+    private void onPowerSaveModeChanged() {
+        SessionProfile profile = selectSessionProfile();
+        if (session == null || profile == sessionProfile) {
+            return;
+        }
+        Log.i(TAG, "Switching to session profile " + profile);
+        // The camera configuration can only change while the session is paused. Pause rendering
+        // first, for the same reason as in onPause().
+        surfaceView.onPause();
+        session.pause();
+        resetFrameTimes();
+        sessionProfile = profile;
+        configureSession();
+        try {
+            session.resume();
+        } catch (CameraNotAvailableException e) {
+            userMessageText.setText(R.string.camera_unavailable);
+            debugText.setText(R.string.camera_unavailable);
+            return;
+        }
+        frameScheduler.wake();
+        surfaceView.onResume();
+    }
+
     @Override
     public void onPause() {
         super.onPause();
+        unregisterReceiver(powerSaveReceiver);
+        locationManager.removeUpdates(locationListener);
+        renderHandler.removeCallbacks(requestRender);
+        ProgramBinaryCache programBinaryCache = ShaderUtil.getProgramBinaryCache();
+        if (programBinaryCache != null) {
+            Log.i(TAG, "Shader program binaries: " + programBinaryCache);
+        }
         if (session != null) {
             // Note that the order matters - GLSurfaceView is paused first so that it does not try
             // to query the session. If Session is paused before GLSurfaceView, GLSurfaceView may
@@ -220,6 +491,22 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             displayRotationHelper.onPause();
             surfaceView.onPause();
             session.pause();
+            resetFrameTimes();
+        }
+        byte[] anchorGraphData;
+        synchronized (anchorLock) {
+            anchorGraphData = anchorGraph.isDirty() ? anchorGraph.serialize() : null;
+        }
+        if (anchorGraphData != null) {
+            File anchorGraphFile = new File(getFilesDir(), ANCHOR_GRAPH_FILE);
+            anchorGraphExecutor.execute(
+                    () -> {
+                        try {
+                            AnchorGraph.save(anchorGraphData, anchorGraphFile);
+                        } catch (IOException e) {
+                            Log.w(TAG, "Failed to save the anchor graph", e);
+                        }
+                    });
         }
     }
 
@@ -249,24 +536,31 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1.0f);
 
+        // This is a new EGL context; programs cached for a previous one are gone.
+        ShaderUtil.onContextCreated();
+        shaderVariants.reset();
+
         // Prepare the rendering objects. This involves reading shaders, so may throw an IOException.
         try {
             // Create the texture and pass it to ARCore session to be filled during update().
-            backgroundRenderer.createOnGlThread(this);
+            depthTexture.createOnGlThread();
+            backgroundRenderer.createOnGlThread(this, depthTexture.getTextureId());
             pointCloudRenderer.createOnGlThread(this);
-
-            anchorObject.createOnGlThread(this, "models/anchor.obj", "models/anchor.png");
-            anchorObject.setMaterialProperties(0.0f, 0.75f, 0.1f, 0.5f);
-
+            contentTarget.createOnGlThread(this);
         } catch (IOException ex) {
             Log.e(TAG, "Failed to read an asset file", ex);
         }
+
+        // The anchor model is loaded in the background while the camera feed is already drawn.
+        anchorObject.createAsync(assetPipeline, this, "models/anchor.obj", "models/anchor.png");
+        anchorObject.setMaterialProperties(0.0f, 0.75f, 0.1f, 0.5f);
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         displayRotationHelper.onSurfaceChanged(width, height);
         GLES20.glViewport(0, 0, width, height);
+        contentTarget.onSurfaceChanged(width, height);
     }
 
     @Override
@@ -287,21 +581,68 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             // Obtain the current frame from ARSession. When the configuration is set to
             // UpdateMode.BLOCKING (it is by default), this will throttle the rendering to the
             // camera framerate.
+            // The time from the previous update() returning to this call is what the previous
+            // frame took to render and present. It is only measured while frames run back to back.
+            long updateStartNanos = SystemClock.elapsedRealtimeNanos();
+            if (lastUpdateEndNanos != 0) {
+                resolutionScale.onFrameTime(updateStartNanos - lastUpdateEndNanos);
+            }
             Frame frame = session.update();
+            lastUpdateEndNanos = SystemClock.elapsedRealtimeNanos();
             Camera camera = frame.getCamera();
             TrackingState cameraTrackingState = camera.getTrackingState();
 
+            // Decide how soon the next frame is needed, from tracking, camera motion and the
+            // anchors drawn in the previous frame.
+            Pose cameraPose = camera.getPose();
+            scheduleNextFrame(
+                    frameScheduler.onFrame(
+                            frame.getTimestamp(),
+                            cameraTrackingState == TrackingState.TRACKING,
+                            visibleAnchorCount,
+                            cameraPose.tx(),
+                            cameraPose.ty(),
+                            cameraPose.tz(),
+                            cameraPose.qx(),
+                            cameraPose.qy(),
+                            cameraPose.qz(),
+                            cameraPose.qw()));
+
             // Notify the cloudAnchorManager of all the updates.
             cloudAnchorManager.onUpdate();
 
             // If frame is ready, render camera preview image to the GL surface.
             backgroundRenderer.draw(frame);
 
+            // Depth is only uploaded when ARCore produced a new depth image, and the uv transform
+            // only recomputed when the display geometry changed. Occlusion is switched on once the
+            // model has loaded and the first depth image is in the texture.
+            if (isDepthEnabled) {
+                depthTexture.update(frame);
+                depthTexture.updateUvTransform(frame);
+                if (anchorObject.isReady() && depthTexture.isReady()) {
+                    anchorObject.setDepthTexture(
+                            depthTexture.getTextureId(),
+                            depthTexture.getWidth(),
+                            depthTexture.getHeight());
+                    anchorObject.setUvTransformMatrix(depthTexture.getUvTransform());
+                    anchorObject.setUseDepthForOcclusion(this, true);
+                }
+            } else if (anchorObject.isReady()) {
+                // The session profile turned depth off.
+                anchorObject.setUseDepthForOcclusion(this, false);
+            }
+
+            // Create GPU resources for any assets that finished decoding.
+            assetPipeline.uploadPending(ASSET_UPLOAD_BUDGET_NANOS);
+
             // Keep the screen unlocked while tracking, but allow it to lock when tracking stops.
             trackingStateHelper.updateKeepScreenOnFlag(camera.getTrackingState());
 
             // If not tracking, don't draw 3d objects.
             if (cameraTrackingState == TrackingState.PAUSED) {
+                anchorUpdatesSkipped = true;
+                precompileShaderVariants();
                 return;
             }
 
@@ -309,6 +650,9 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             camera.getViewMatrix(viewMatrix, 0);
             camera.getProjectionMatrix(projectionMatrix, 0, 0.1f, 100.0f);
 
+            // Draw the virtual content into the scaled layer, if the scale is below 1.
+            contentTarget.begin(resolutionScale.getScale());
+
             // Visualize tracked points.
             // Use try-with-resources to automatically release the point cloud.
             try (PointCloud pointCloud = frame.acquirePointCloud()) {
@@ -316,80 +660,372 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
                 pointCloudRenderer.draw(viewMatrix, projectionMatrix);
             }
 
-            float[] colorCorrectionRgba = new float[4];
             float scaleFactor = 1.0f;
-            frame.getLightEstimate().getColorCorrection(colorCorrectionRgba, 0);
+            LightEstimate lightEstimate = frame.getLightEstimate();
+            if (lightEstimate.getState() == LightEstimate.State.VALID) {
+                lightEstimate.getColorCorrection(colorCorrectionRgba, 0);
+            } else {
+                System.arraycopy(
+                        DEFAULT_COLOR_CORRECTION, 0, colorCorrectionRgba, 0, 4);
+            }
 
-            String textFiledContent = "";
+            renderQueue.clear();
 
             synchronized (anchorLock) {
-                Pose anchorPose;
-                double minDistance = 100000;
-                String minName = "";
-
-                for (Anchor resolvedAnchor : resolvedAnchors) {
-                    // Update the poses of resolved anchors that can be drawn and render them.
-                    if (resolvedAnchor != null
-                            && resolvedAnchor.getTrackingState() == TrackingState.TRACKING) {
-                        // Get the current pose of an Anchor in world space. The Anchor pose is updated
-                        // during calls to session.update() as ARCore refines its estimate of the world.
-                        anchorPose = resolvedAnchor.getPose();
-                        anchorPose.toMatrix(anchorMatrix, 0);
-                        // Update and draw the model and its shadow.
-                        drawAnchor(anchorMatrix, scaleFactor, colorCorrectionRgba);
+                nearestPoi.beginFrame(frame.getTimestamp());
+
+                // Snapshot the poses of the anchors ARCore changed in this update, and of new
+                // anchors. The loops below only read the snapshot. Provisional anchors are placed
+                // from the resolved snapshot first, so that the new ones are snapshot as well.
+                // After frames that skipped the refresh, every anchor is read again.
+                if (anchorUpdatesSkipped) {
+                    resolvedAnchors.markAllStale();
+                    provisionalAnchors.markAllStale();
+                    anchorUpdatesSkipped = false;
+                }
+                Collection<Anchor> updatedAnchors = frame.getUpdatedAnchors();
+                resolvedAnchors.refreshPoses(updatedAnchors);
+                if (cameraTrackingState == TrackingState.TRACKING) {
+                    placeProvisionalAnchors();
+                }
+                provisionalAnchors.refreshPoses(updatedAnchors);
+                float cameraX = cameraPose.tx();
+                float cameraY = cameraPose.ty();
+                float cameraZ = cameraPose.tz();
+
+                for (int row = 0; row < resolvedAnchors.size(); row++) {
+                    // Render the resolved anchors that are tracking.
+                    if (!resolvedAnchors.isTracking(row)) {
+                        continue;
+                    }
+                    anchorLifecycle.onAnchorTracked(
+                            resolvedAnchors.getHandle(row),
+                            resolvedAnchors.getX(row),
+                            resolvedAnchors.getY(row),
+                            resolvedAnchors.getZ(row),
+                            frame.getTimestamp());
+                    // Queue the model; it is drawn once all anchors have been visited. Until the
+                    // model has loaded, the anchor is skipped.
+                    if (anchorObject.isReady()) {
+                        renderQueue.add(
+                                anchorObject,
+                                resolvedAnchors.getModelMatrices(),
+                                row * AnchorTable.MATRIX_SIZE,
+                                scaleFactor,
+                                viewMatrix);
+                    }
+                }
 
-                        try {
-                            CloudAnchor anchor = Objects.requireNonNull(anchorMap.get(resolvedAnchor.getCloudAnchorId()));
-                            Pose cameraPose = camera.getPose();
-                            float x = anchorPose.tx() - cameraPose.tx();
-                            float y = anchorPose.ty() - cameraPose.ty();
-                            float z = anchorPose.tz() - cameraPose.tz();
+                // Neighbors placed from the anchor graph, until their cloud resolves complete.
+                for (int row = 0; row < provisionalAnchors.size(); row++) {
+                    if (!provisionalAnchors.isTracking(row)) {
+                        continue;
+                    }
+                    if (anchorObject.isReady()) {
+                        renderQueue.add(
+                                anchorObject,
+                                provisionalAnchors.getModelMatrices(),
+                                row * AnchorTable.MATRIX_SIZE,
+                                scaleFactor,
+                                viewMatrix);
+                    }
+                }
+
+                offerNearestAnchors(resolvedAnchors, cameraX, cameraY, cameraZ);
+                offerNearestAnchors(provisionalAnchors, cameraX, cameraY, cameraZ);
+
+                boolean poiChanged = nearestPoi.endFrame();
+                int poi = nearestPoi.getCurrentHandle();
+                // Advance along the route, or replan from the nearest POI if it is off the route.
+                // The graph is laid out from geographic positions and the camera pose is in session
+                // space, so the nearest POI is what ties the user to the graph; its hysteresis also
+                // keeps pose jitter from replanning.
+                RouteTracker tracker = routeTracker;
+                boolean routeChanged = false;
+                if (tracker != null && (poiChanged || tracker != trackedRoute)) {
+                    trackedRoute = tracker;
+                    routeChanged =
+                            tracker.onPosition(
+                                    poi == PoiStore.NO_HANDLE
+                                            ? -1
+                                            : tracker.getGraph().indexOf(pois.getId(poi)));
+                }
+                float poiDistance = nearestPoi.getCurrentDistance();
+                if (poi != PoiStore.NO_HANDLE
+                        && (poiChanged
+                                || routeChanged
+                                || !(Math.abs(poiDistance - shownPoiDistance)
+                                        < DISTANCE_DISPLAY_STEP))) {
+                    shownPoiDistance = poiDistance;
+                    String routeText =
+                            tracker != null && tracker.hasRoute()
+                                    ? "\n" + describeRoute(tracker)
+                                    : "";
+                    String poiName = pois.getName(poi);
+                    String text = getString(R.string.got_point, poiDistance, poiName) + routeText;
+                    if (poiChanged) {
+                        Log.i(TAG, "Nearest POI: " + poiName);
+                    }
+                    runOnUiThread(() -> userMessageText.setText(text));
+                }
 
-                            double distance = Math.sqrt(x*x+y*y+z*z);
+                if (cameraTrackingState == TrackingState.TRACKING) {
+                    updateAnchorLifecycle(frame.getTimestamp(), cameraPose);
+                    observeAnchorGraph(frame.getTimestamp());
+                }
+            }
 
-                            if(minDistance > distance || anchor.getName().equals(minName)) {
-                                minDistance = distance;
-                                minName = anchor.getName();
-                                textFiledContent = getString(R.string.got_point, minDistance, minName);
+            // Draw the queued anchors sorted by state and depth.
+            renderQueue.draw(viewMatrix, projectionMatrix, colorCorrectionRgba);
+            visibleAnchorCount = renderQueue.size();
+            contentTarget.end();
 
-                            }
+            precompileShaderVariants();
+        } catch (Throwable t) {
+            // Avoid crashing the application due to unhandled exceptions.
+            Log.e(TAG, "Exception on the OpenGL thread", t);
+            contentTarget.end();
+            // Keep frames coming even if this one failed before the next one was scheduled.
+            if (renderMode != FrameScheduler.Mode.CONTINUOUS) {
+                scheduleNextFrame(renderMode);
+            }
+        }
+    }
 
-                            Log.i("Cords", textFiledContent);
-                            String finalTextFiledContent = textFiledContent;
-                            runOnUiThread(() -> userMessageText.setText(finalTextFiledContent));
+    /**
+     * Builds the remaining shader variants, a few per frame. Called after the last draw call of the
+     * frame, so that the compiles do not delay the frame's own draws.
+     */
+    private void precompileShaderVariants() {
+        if (shaderVariants.isComplete()) {
+            return;
+        }
+        try {
+            shaderVariants.precompile(TAG, this, SHADER_PRECOMPILE_BUDGET_NANOS);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to precompile a shader variant", e);
+        }
+    }
 
-                        } catch (Throwable e) {
-                            Log.e(TAG,"Exception showing user text", e);
+    /**
+     * Detaches anchors that are far or stale, and hands anchors that came back within range to the
+     * map registry to be resolved again.
+     */
+    @GuardedBy("anchorLock")
+    private void updateAnchorLifecycle(long timestampNanos, Pose cameraPose) {
+        anchorsToDetach.clear();
+        anchorsToResolve.clear();
+        anchorLifecycle.update(
+                timestampNanos,
+                cameraPose.tx(),
+                cameraPose.ty(),
+                cameraPose.tz(),
+                anchorsToDetach,
+                anchorsToResolve);
+        if (anchorsToDetach.isEmpty() && anchorsToResolve.isEmpty()) {
+            return;
+        }
+        // The map registry knows anchors by id.
+        List<String> detached = new ArrayList<>(anchorsToDetach.size());
+        for (int i = 0; i < anchorsToDetach.size(); i++) {
+            int handle = anchorsToDetach.get(i);
+            Anchor anchor = resolvedAnchors.remove(handle);
+            if (anchor != null) {
+                anchor.detach();
+            }
+            detached.add(pois.getId(handle));
+        }
+        List<String> toResolve = new ArrayList<>(anchorsToResolve.size());
+        for (int i = 0; i < anchorsToResolve.size(); i++) {
+            toResolve.add(pois.getId(anchorsToResolve.get(i)));
+        }
+        runOnUiThread(
+                () -> {
+                    if (!detached.isEmpty()) {
+                        Log.i(TAG, "Detached far or stale anchors: " + detached);
+                        mapRegistry.onAnchorsDetached(detached);
+                    }
+                    if (!toResolve.isEmpty()) {
+                        List<String> unknown = mapRegistry.requestResolve(toResolve);
+                        synchronized (anchorLock) {
+                            anchorLifecycle.forget(handlesOf(unknown));
                         }
                     }
-                }
+                });
+    }
 
+    /**
+     * Places the graph neighbors of newly resolved anchors that are still resolving themselves as
+     * local anchors. Anchors that are not tracked yet stay queued. Reads the pose snapshot of the
+     * resolved anchors, which must be refreshed first.
+     */
+    @GuardedBy("anchorLock")
+    private void placeProvisionalAnchors() {
+        for (Iterator<Integer> it = anchorsToPlaceFrom.iterator(); it.hasNext(); ) {
+            int row = resolvedAnchors.rowOf(it.next());
+            // Detached again before it was tracked.
+            TrackingState state =
+                    row < 0 ? TrackingState.STOPPED : resolvedAnchors.getTrackingState(row);
+            if (state == TrackingState.PAUSED) {
+                continue;
+            }
+            it.remove();
+            if (state == TrackingState.STOPPED) {
+                continue;
+            }
+            String cloudAnchorId = resolvedAnchors.getCloudAnchorId(row);
+            resolvedAnchors.getPose(row, placedFromPose, 0);
+            for (String neighborId : anchorGraph.getNeighbors(cloudAnchorId)) {
+                int neighbor = pois.find(neighborId);
+                if (neighbor == PoiStore.NO_HANDLE
+                        || !unresolvedAnchorIds.contains(neighborId)
+                        || provisionalAnchors.rowOf(neighbor) >= 0
+                        || !anchorGraph.place(
+                                cloudAnchorId, placedFromPose, neighborId, placementPose)) {
+                    continue;
+                }
+                Pose neighborPose =
+                        new Pose(
+                                Arrays.copyOfRange(placementPose, 0, 3),
+                                Arrays.copyOfRange(placementPose, 3, AnchorGraph.POSE_SIZE));
+                provisionalAnchors.put(neighbor, session.createAnchor(neighborPose), neighborId);
+            }
+        }
+    }
 
+    /** Records the relative poses of the tracked resolved anchors, once per interval. */
+    @GuardedBy("anchorLock")
+    private void observeAnchorGraph(long timestampNanos) {
+        if (timestampNanos - lastAnchorGraphNanos < ANCHOR_GRAPH_INTERVAL_NANOS) {
+            return;
+        }
+        lastAnchorGraphNanos = timestampNanos;
+        graphAnchorIds.clear();
+        for (int row = 0; row < resolvedAnchors.size(); row++) {
+            if (!resolvedAnchors.isTracking(row)) {
+                continue;
             }
+            if (graphPoses.size() <= graphAnchorIds.size()) {
+                graphPoses.add(new float[AnchorGraph.POSE_SIZE]);
+            }
+            resolvedAnchors.getPose(row, graphPoses.get(graphAnchorIds.size()), 0);
+            graphAnchorIds.add(resolvedAnchors.getCloudAnchorId(row));
+        }
+        for (int i = 0; i < graphAnchorIds.size(); i++) {
+            for (int j = i + 1; j < graphAnchorIds.size(); j++) {
+                anchorGraph.observe(
+                        graphAnchorIds.get(i),
+                        graphPoses.get(i),
+                        graphAnchorIds.get(j),
+                        graphPoses.get(j));
+            }
+        }
+    }
 
-        } catch (Throwable t) {
-            // Avoid crashing the application due to unhandled exceptions.
-            Log.e(TAG, "Exception on the OpenGL thread", t);
+    /** Detaches the local anchor standing in for a cloud anchor, if there is one. */
+    @GuardedBy("anchorLock")
+    private void discardProvisionalAnchor(int handle) {
+        Anchor provisionalAnchor = provisionalAnchors.remove(handle);
+        if (provisionalAnchor != null) {
+            provisionalAnchor.detach();
+        }
+    }
+
+    @GuardedBy("anchorLock")
+    private String describeRoute(RouteTracker tracker) {
+        RoutingGraph graph = tracker.getGraph();
+        int destination = pois.find(graph.getId(tracker.getDestination()));
+        String name =
+                destination == PoiStore.NO_HANDLE ? destinationName : pois.getName(destination);
+        if (tracker.hasArrived()) {
+            return getString(R.string.route_arrived, name);
+        }
+        int next = pois.find(graph.getId(tracker.getNextNode()));
+        return next == PoiStore.NO_HANDLE
+                ? getString(R.string.route_remaining, tracker.getRemainingCost(), name)
+                : getString(
+                        R.string.route_next, tracker.getRemainingCost(), name, pois.getName(next));
+    }
+
+    /** Passes the distances of the closest tracking anchors of a table to the POI selector. */
+    @GuardedBy("anchorLock")
+    private void offerNearestAnchors(AnchorTable anchors, float x, float y, float z) {
+        if (anchorSquaredDistances.length < anchors.size()) {
+            anchorSquaredDistances = new float[2 * anchors.size()];
+        }
+        anchors.squaredDistances(x, y, z, anchorSquaredDistances);
+        int found =
+                DistanceKernel.selectSmallest(
+                        anchorSquaredDistances,
+                        anchors.size(),
+                        NEAREST_POI_CANDIDATES,
+                        nearestRows);
+        for (int i = 0; i < found; i++) {
+            int row = nearestRows[i];
+            nearestPoi.onDistance(
+                    anchors.getHandle(row), (float) Math.sqrt(anchorSquaredDistances[row]));
         }
     }
 
+    /**
+     * Forgets the end of the last frame and the measured frame times, so that a gap between frames
+     * is not taken for a slow frame. Called from the GL thread, or while it is paused.
+     */
+    private void resetFrameTimes() {
+        lastUpdateEndNanos = 0;
+        resolutionScale.resetMeasurements();
+    }
 
-    private void drawAnchor(float[] anchorMatrix, float scaleFactor, float[] colorCorrectionRgba) {
-        anchorObject.updateModelMatrix(anchorMatrix, scaleFactor);
-        anchorObject.draw(viewMatrix, projectionMatrix, colorCorrectionRgba);
+    /** Applies the frame scheduling mode, requesting the next frame if not rendering continuously. */
+    private void scheduleNextFrame(FrameScheduler.Mode mode) {
+        if (mode != renderMode) {
+            if (renderMode == FrameScheduler.Mode.CONTINUOUS) {
+                resetFrameTimes();
+            }
+            renderMode = mode;
+            surfaceView.setRenderMode(
+                    mode == FrameScheduler.Mode.CONTINUOUS
+                            ? GLSurfaceView.RENDERMODE_CONTINUOUSLY
+                            : GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        }
+        if (mode != FrameScheduler.Mode.CONTINUOUS) {
+            // Frame times are meaningless while frames are spaced out on purpose.
+            lastUpdateEndNanos = 0;
+            renderHandler.removeCallbacks(requestRender);
+            renderHandler.postDelayed(requestRender, mode.getFrameIntervalMillis());
+        }
     }
 
 
     /**
      * Adds a new anchor to the set of resolved anchors.
+     *
+     * @return false if the POI of the anchor was evicted while it was resolving; the anchor is
+     *     then detached.
      */
-    private void setAnchorAsResolved(@NonNull Anchor newAnchor) {
+    private boolean setAnchorAsResolved(@NonNull Anchor newAnchor, String cloudAnchorId) {
         synchronized (anchorLock) {
-            if (unresolvedAnchorIds.contains(newAnchor.getCloudAnchorId())) {
-                resolvedAnchors.add(newAnchor);
-                unresolvedAnchorIds.remove(newAnchor.getCloudAnchorId());
+            // The handle of the request may have been reused if the POI was evicted meanwhile.
+            int handle = pois.find(cloudAnchorId);
+            if (handle == PoiStore.NO_HANDLE) {
+                // The lifecycle manager forgot the handle when the POI was evicted.
+                unresolvedAnchorIds.remove(cloudAnchorId);
+                newAnchor.detach();
+                return false;
+            }
+            if (unresolvedAnchorIds.contains(cloudAnchorId)) {
+                resolvedAnchors.put(handle, newAnchor, cloudAnchorId);
+                unresolvedAnchorIds.remove(cloudAnchorId);
+                anchorLifecycle.onAnchorAttached(handle);
+                // The cloud pose replaces the one derived from a neighbor.
+                discardProvisionalAnchor(handle);
+                anchorsToPlaceFrom.add(handle);
             }
         }
+        // Show the new anchor right away, even if rendering had slowed down.
+        frameScheduler.wake();
+        surfaceView.requestRender();
+        return true;
     }
 
     private void onPrivacyAcceptedForResolve() {
@@ -397,63 +1033,314 @@ public class CloudAnchorActivity extends AppCompatActivity implements GLSurfaceV
             throw new AssertionError("Could not save the user preference to SharedPreferences!");
         }
         createSession();
-        ResolveListener resolveListener = new ResolveListener();
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        startMaps();
+    }
+
+    /** Enters the default map once the session is ready, and fetches the regions of all maps. */
+    private void startMaps() {
+        if (cloudAnchorManager == null || mapRegistry.getCurrentMapId() != null) {
+            return;
+        }
+        mapRegistry.enter(DEFAULT_MAP_ID);
+        startLocationUpdates();
 
-        db.collection("/maps/fisat/poi")
+        // Regions of the other maps, so that they are entered by location.
+        FirebaseFirestore.getInstance()
+                .collection(MAPS_COLLECTION)
                 .get()
                 .addOnCompleteListener((task) -> {
-                    if (task.isSuccessful()) {
+                    if (!task.isSuccessful()) {
+                        Log.w(TAG, "Error getting maps.", task.getException());
+                        return;
+                    }
+                    for (QueryDocumentSnapshot document : task.getResult()) {
+                        Double latitude = document.getDouble("latitude");
+                        Double longitude = document.getDouble("longitude");
+                        Double radius = document.getDouble("radius");
+                        if (latitude != null && longitude != null && radius != null) {
+                            mapRegistry.setRegion(document.getId(), latitude, longitude, radius);
+                        }
+                    }
+                });
+    }
+
+    /** Loads POIs and resolves anchors for the {@link MapRegistry}, on the UI thread. */
+    private final class MapCallbacks implements MapRegistry.Callbacks {
+
+        @Override
+        public void loadPois(String mapId) {
+            FirebaseFirestore.getInstance()
+                    .collection(MAPS_COLLECTION + "/" + mapId + "/poi")
+                    .get()
+                    .addOnCompleteListener((task) -> {
+                        if (!task.isSuccessful()) {
+                            Log.w(TAG, "Error getting documents.", task.getException());
+                            mapRegistry.onPoisFailed(mapId);
+                            return;
+                        }
                         List<String> aIds = new ArrayList<>();
-                        for (QueryDocumentSnapshot document : task.getResult()) {
-                            try {
-                                anchorMap.put(document.get("anchorId", String.class),
-                                        new CloudAnchor(
-                                                document.getString("anchorId"),
-                                                document.getString("name"),
-                                                document.getDouble("latitude"),
-                                                document.getDouble("longitude"),
-                                                document.getDouble("altitude")
-                                        ));
-                                aIds.add(document.get("anchorId", String.class));
+                        long bytes = 0;
+                        synchronized (anchorLock) {
+                            for (QueryDocumentSnapshot document : task.getResult()) {
+                                // Fields go straight into the store; documents missing one are
+                                // skipped.
+                                String id = document.getString("anchorId");
+                                String name = document.getString("name");
+                                Double latitude = document.getDouble("latitude");
+                                Double longitude = document.getDouble("longitude");
+                                Double altitude = document.getDouble("altitude");
+                                if (id == null
+                                        || name == null
+                                        || latitude == null
+                                        || longitude == null
+                                        || altitude == null) {
+                                    continue;
+                                }
+                                int handle = pois.put(id, name, latitude, longitude, altitude);
+                                aIds.add(id);
+                                bytes += PoiStore.estimateBytes(id, name);
+                                poiNames.put(handle, name);
                             }
-                            catch (NullPointerException ignored){}
-
+                            pois.trimToSize();
                         }
+                        mapRegistry.onPoisLoaded(mapId, aIds, bytes);
+                        String destinationId = findDestination();
+                        if (destinationId != null && aIds.contains(destinationId)) {
+                            loadRouting(mapId, poiNodesOf(task.getResult()), destinationId);
+                        }
+                    });
+        }
 
-                        synchronized (anchorLock) {
-                            unresolvedAnchorIds = aIds;
-                            debugText.setText(getString(R.string.debug_resolving_processing, unresolvedAnchorIds.size()));
-                            // Encourage the user to look at a previously mapped area.
-                            Log.i(
-                                    TAG,
-                                    String.format(
-                                            "Attempting to resolve %d anchor(s): %s",
-                                            unresolvedAnchorIds.size(), unresolvedAnchorIds));
-                            for (String cloudAnchorId : unresolvedAnchorIds) {
-                                cloudAnchorManager.resolveCloudAnchor(cloudAnchorId, resolveListener);
+        @Override
+        public void resolveAnchors(String mapId, List<String> cloudAnchorIds) {
+            if (cloudAnchorManager == null) {
+                return;
+            }
+            // Every resolve counts against the cap on live anchors; the ones over it are handed
+            // out again by the lifecycle manager when room frees up.
+            List<String> admitted = new ArrayList<>();
+            List<String> deferred = new ArrayList<>();
+            synchronized (anchorLock) {
+                List<Integer> admittedHandles = new ArrayList<>();
+                List<Integer> deferredHandles = new ArrayList<>();
+                anchorLifecycle.admitResolves(
+                        handlesOf(cloudAnchorIds), admittedHandles, deferredHandles);
+                for (int handle : admittedHandles) {
+                    admitted.add(pois.getId(handle));
+                }
+                for (int handle : deferredHandles) {
+                    deferred.add(pois.getId(handle));
+                }
+                for (String cloudAnchorId : admitted) {
+                    if (!unresolvedAnchorIds.contains(cloudAnchorId)) {
+                        unresolvedAnchorIds.add(cloudAnchorId);
+                    }
+                }
+                for (String cloudAnchorId : deferred) {
+                    if (!unresolvedAnchorIds.contains(cloudAnchorId)) {
+                        unresolvedAnchorIds.add(cloudAnchorId);
+                    }
+                }
+                debugText.setText(
+                        getString(R.string.debug_resolving_processing, unresolvedAnchorIds.size()));
+                // Encourage the user to look at a previously mapped area.
+                Log.i(
+                        TAG,
+                        String.format(
+                                "Attempting to resolve %d anchor(s) of map %s: %s, deferred: %s",
+                                admitted.size(), mapId, admitted, deferred));
+            }
+            for (String cloudAnchorId : admitted) {
+                cloudAnchorManager.resolveCloudAnchor(cloudAnchorId, resolveListener);
+            }
+        }
+
+        @Override
+        public void onAnchorsEvicted(
+                String mapId, List<Anchor> detachedAnchors, List<String> cancelledIds) {
+            Log.i(
+                    TAG,
+                    String.format(
+                            "Detaching %d anchor(s) of map %s", detachedAnchors.size(), mapId));
+            // Removed under the lock so that the GL thread is done with them before the registry
+            // detaches them.
+            synchronized (anchorLock) {
+                unresolvedAnchorIds.removeAll(cancelledIds);
+                List<Integer> evictedHandles = handlesOf(cancelledIds);
+                for (int handle : evictedHandles) {
+                    discardProvisionalAnchor(handle);
+                }
+                for (Anchor anchor : detachedAnchors) {
+                    int handle = pois.find(anchor.getCloudAnchorId());
+                    resolvedAnchors.remove(handle);
+                    evictedHandles.add(handle);
+                }
+                anchorLifecycle.forget(evictedHandles);
+            }
+        }
+
+        @Override
+        public void onPoisEvicted(String mapId, List<String> cloudAnchorIds) {
+            synchronized (anchorLock) {
+                // The handles may be reused by the next POIs added.
+                anchorLifecycle.forget(handlesOf(cloudAnchorIds));
+                for (String cloudAnchorId : cloudAnchorIds) {
+                    int handle = pois.find(cloudAnchorId);
+                    nearestPoi.forget(handle);
+                    poiNames.remove(handle);
+                    pois.remove(cloudAnchorId);
+                }
+            }
+            routesByMap.remove(mapId);
+            routeTracker = routesByMap.get(mapRegistry.getCurrentMapId());
+        }
+    }
+
+    /** Returns the handles of the loaded POIs with the given ids, skipping ids not loaded. */
+    @GuardedBy("anchorLock")
+    private List<Integer> handlesOf(List<String> cloudAnchorIds) {
+        List<Integer> handles = new ArrayList<>(cloudAnchorIds.size());
+        for (String cloudAnchorId : cloudAnchorIds) {
+            int handle = pois.find(cloudAnchorId);
+            if (handle != PoiStore.NO_HANDLE) {
+                handles.add(handle);
+            }
+        }
+        return handles;
+    }
+
+    /** Returns the id of the loaded POI that best matches the destination name, or null. */
+    private String findDestination() {
+        if (destinationName == null) {
+            return null;
+        }
+        synchronized (anchorLock) {
+            List<PoiNameIndex.Match> matches =
+                    poiNames.search(
+                            destinationName,
+                            1,
+                            lastLocation == null ? Double.NaN : lastLocation.getLatitude(),
+                            lastLocation == null ? Double.NaN : lastLocation.getLongitude(),
+                            DESTINATION_DISTANCE_SCALE_METERS);
+            if (matches.isEmpty() || matches.get(0).score < MIN_DESTINATION_SCORE) {
+                return null;
+            }
+            return pois.getId(matches.get(0).handle);
+        }
+    }
+
+    /**
+     * Returns the routing nodes of the stored POIs among {@code documents}, located from the store.
+     * Only built once a destination is known, as the nodes copy the id and location of every POI.
+     */
+    private List<VenueRouting.Node> poiNodesOf(QuerySnapshot documents) {
+        List<VenueRouting.Node> nodes = new ArrayList<>();
+        synchronized (anchorLock) {
+            for (QueryDocumentSnapshot document : documents) {
+                String id = document.getString("anchorId");
+                int handle = id == null ? PoiStore.NO_HANDLE : pois.find(id);
+                if (handle != PoiStore.NO_HANDLE) {
+                    nodes.add(
+                            new VenueRouting.Node(
+                                    id,
+                                    pois.getLatitude(handle),
+                                    pois.getLongitude(handle),
+                                    pois.getAltitude(handle),
+                                    linksOf(document)));
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Adds the connector nodes of a map to its POIs, and builds the routing graph in the
+     * background.
+     */
+    private void loadRouting(String mapId, List<VenueRouting.Node> poiNodes, String destinationId) {
+        FirebaseFirestore.getInstance()
+                .collection(MAPS_COLLECTION + "/" + mapId + "/connectors")
+                .get()
+                .addOnCompleteListener((task) -> {
+                    List<VenueRouting.Node> nodes = new ArrayList<>(poiNodes);
+                    if (task.isSuccessful()) {
+                        for (QueryDocumentSnapshot document : task.getResult()) {
+                            Double latitude = document.getDouble("latitude");
+                            Double longitude = document.getDouble("longitude");
+                            Double altitude = document.getDouble("altitude");
+                            if (latitude != null && longitude != null && altitude != null) {
+                                nodes.add(
+                                        new VenueRouting.Node(
+                                                document.getId(),
+                                                latitude,
+                                                longitude,
+                                                altitude,
+                                                linksOf(document)));
                             }
                         }
                     } else {
-                        Log.w(TAG, "Error getting documents.", task.getException());
+                        Log.w(TAG, "Error getting connectors.", task.getException());
                     }
+                    routingExecutor.execute(
+                            () -> {
+                                RouteTracker tracker = VenueRouting.build(nodes);
+                                tracker.setDestination(tracker.getGraph().indexOf(destinationId));
+                                runOnUiThread(
+                                        () -> {
+                                            routesByMap.put(mapId, tracker);
+                                            routeTracker =
+                                                    routesByMap.get(mapRegistry.getCurrentMapId());
+                                        });
+                            });
                 });
     }
 
+    /** Returns the ids listed in the "links" field of a node, or null if it has none. */
+    private static List<String> linksOf(DocumentSnapshot document) {
+        Object links = document.get("links");
+        if (!(links instanceof List)) {
+            return null;
+        }
+        List<String> ids = new ArrayList<>();
+        for (Object link : (List<?>) links) {
+            if (link instanceof String) {
+                ids.add((String) link);
+            }
+        }
+        return ids;
+    }
+
     /* Listens for a resolved anchor. */
     private final class ResolveListener implements CloudAnchorManager.CloudAnchorListener {
 
         @Override
-        public void onComplete(Anchor anchor) {
+        public void onComplete(Anchor anchor, String cloudAnchorId) {
             runOnUiThread(
                     () -> {
                         CloudAnchorState state = anchor.getCloudAnchorState();
+                        boolean kept = mapRegistry.onAnchorResolved(anchor);
+                        if (!kept) {
+                            synchronized (anchorLock) {
+                                anchorLifecycle.onResolveFailed(pois.find(cloudAnchorId));
+                                unresolvedAnchorIds.remove(cloudAnchorId);
+                                // The POI may be gone and its handle reused.
+                                discardProvisionalAnchor(pois.find(cloudAnchorId));
+                            }
+                        }
                         if (state.isError()) {
                             Log.e(TAG, "Error hosting a cloud anchor, state " + state);
                             userMessageText.setText(getString(R.string.resolving_error, state));
                             return;
                         }
-                        setAnchorAsResolved(anchor);
+                        if (!kept) {
+                            // The anchor's map was evicted while it was resolving.
+                            return;
+                        }
+                        if (!setAnchorAsResolved(anchor, cloudAnchorId)) {
+                            mapRegistry.onAnchorsDetached(
+                                    Collections.singletonList(cloudAnchorId));
+                            return;
+                        }
                         userMessageText.setText(getString(R.string.resolving_success));
                         synchronized (anchorLock) {
                             if (unresolvedAnchorIds.isEmpty()) {
@@ -21,34 +21,51 @@ class CloudAnchorManager {
   /** Listener for the results of a host operation. */
   interface CloudAnchorListener {
 
-    /** This method is invoked when the results of a Cloud Anchor operation are available. */
-    void onComplete(Anchor anchor);
+    /**
+     * This method is invoked when the results of a Cloud Anchor operation are available.
+     *
+     * @param cloudAnchorId The id the anchor was resolved with.
+     */
+    void onComplete(Anchor anchor, String cloudAnchorId);
+  }
+
+  private static final class PendingResolve {
+    final String cloudAnchorId;
+    final CloudAnchorListener listener;
+
+    PendingResolve(String cloudAnchorId, CloudAnchorListener listener) {
+      this.cloudAnchorId = cloudAnchorId;
+      this.listener = listener;
+    }
   }
 
   private final Session session;
-  private final Map<Anchor, CloudAnchorListener> pendingAnchors = new HashMap<>();
+  private final Map<Anchor, PendingResolve> pendingAnchors = new HashMap<>();
 
   CloudAnchorManager(Session session) {
     this.session = Preconditions.checkNotNull(session);
   }
 
-  /** Resolves an anchor. The {@code listener} will be invoked when the results are available. */
+  /**
+   * Resolves an anchor. The {@code listener} will be invoked when the results are available, with
+   * the id of the request, so that the caller need not read the id back from ARCore.
+   */
   synchronized void resolveCloudAnchor(String anchorId, CloudAnchorListener listener) {
     Preconditions.checkNotNull(listener, "The listener cannot be null.");
     Anchor newAnchor = session.resolveCloudAnchor(anchorId);
-    pendingAnchors.put(newAnchor, listener);
+    pendingAnchors.put(newAnchor, new PendingResolve(anchorId, listener));
   }
 
   /** Should be called after a {@link Session#update()} call. */
   synchronized void onUpdate() {
     Preconditions.checkNotNull(session, "The session cannot be null.");
-    for (Iterator<Map.Entry<Anchor, CloudAnchorListener>> it = pendingAnchors.entrySet().iterator();
+    for (Iterator<Map.Entry<Anchor, PendingResolve>> it = pendingAnchors.entrySet().iterator();
         it.hasNext(); ) {
-      Map.Entry<Anchor, CloudAnchorListener> entry = it.next();
+      Map.Entry<Anchor, PendingResolve> entry = it.next();
       Anchor anchor = entry.getKey();
       if (isReturnableState(anchor.getCloudAnchorState())) {
-        CloudAnchorListener listener = entry.getValue();
-        listener.onComplete(anchor);
+        PendingResolve request = entry.getValue();
+        request.listener.onComplete(anchor, request.cloudAnchorId);
         it.remove();
       }
     }
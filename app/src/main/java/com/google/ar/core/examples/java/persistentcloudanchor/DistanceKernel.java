@@ -0,0 +1,70 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+/**
+ * Distance computations over positions stored as separate x, y and z columns.
+ *
+ * <p>{@link #squaredDistances} is a single loop of independent iterations without calls, branches
+ * or square roots, which the JIT unrolls and compiles to SIMD instructions. Callers rank by squared
+ * distance with {@link #selectSmallest} and only take the square root of the winners. Points to
+ * leave out are given an offset of infinity, which the loop adds instead of testing.
+ */
+final class DistanceKernel {
+
+  private DistanceKernel() {}
+
+  /**
+   * Writes the squared distance of point {@code i} from (x, y, z), plus {@code offsets[i]}, to
+   * {@code out[i]}. An offset of 0 keeps the distance and one of infinity masks the point.
+   */
+  static void squaredDistances(
+      float[] xs,
+      float[] ys,
+      float[] zs,
+      float[] offsets,
+      int count,
+      float x,
+      float y,
+      float z,
+      float[] out) {
+    for (int i = 0; i < count; i++) {
+      float dx = xs[i] - x;
+      float dy = ys[i] - y;
+      float dz = zs[i] - z;
+      out[i] = dx * dx + dy * dy + dz * dz + offsets[i];
+    }
+  }
+
+  /**
+   * Finds the indices of the {@code k} smallest of {@code values[0, count)} without sorting them
+   * all. Infinite and NaN values are never selected.
+   *
+   * <p>The selection is kept sorted, and a value is only inserted if it beats the largest selected
+   * one, so for k much smaller than count nearly every value costs a single comparison.
+   *
+   * @param outIndices Receives the indices, by ascending value; at least {@code k} long.
+   * @return The number of indices selected, at most {@code k}.
+   */
+  static int selectSmallest(float[] values, int count, int k, int[] outIndices) {
+    if (k <= 0) {
+      return 0;
+    }
+    int selected = 0;
+    float limit = Float.POSITIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      float value = values[i];
+      if (!(value < limit)) {
+        continue;
+      }
+      int slot = selected < k ? selected++ : k - 1;
+      while (slot > 0 && values[outIndices[slot - 1]] > value) {
+        outIndices[slot] = outIndices[slot - 1];
+        slot--;
+      }
+      outIndices[slot] = i;
+      if (selected == k) {
+        limit = values[outIndices[k - 1]];
+      }
+    }
+    return selected;
+  }
+}
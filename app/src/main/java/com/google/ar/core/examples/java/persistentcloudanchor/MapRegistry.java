@@ -0,0 +1,336 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.Anchor;
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the maps, one per building, that the user can move between in a session.
+ *
+ * <p>The POIs of a map are loaded when the user first enters its region, and its anchors are
+ * resolved while it is the current map. Every map accounts for the memory of its POIs and for the
+ * ARCore anchors it holds, resolved or still resolving. When the total exceeds the budget, the
+ * anchors of the least recently entered map are detached; if the POIs alone are over the memory
+ * budget, they are dropped as well. Re-entering a map loads and resolves whatever it lost.
+ *
+ * <p>Loading and resolving are left to the {@link Callbacks}. Not thread safe; all methods and
+ * callbacks run on the UI thread.
+ */
+class MapRegistry {
+
+  /** Carries out the loading and eviction decisions of the registry. */
+  interface Callbacks {
+
+    /** Starts loading the POIs of a map. Completion is reported to {@link #onPoisLoaded}. */
+    void loadPois(String mapId);
+
+    /**
+     * Starts resolving cloud anchors. Results are reported to {@link #onAnchorResolved}. Some of
+     * them may be deferred, and requested later through {@link #requestResolve}; they count as
+     * resolving meanwhile.
+     */
+    void resolveAnchors(String mapId, List<String> cloudAnchorIds);
+
+    /**
+     * Invoked when the anchors of a map are evicted, before {@code detachedAnchors} are detached;
+     * they must no longer be used once this returns. {@code cancelledIds} were still resolving;
+     * they are detached when their results come in.
+     */
+    void onAnchorsEvicted(String mapId, List<Anchor> detachedAnchors, List<String> cancelledIds);
+
+    /** Invoked after the POIs of a map were dropped. */
+    void onPoisEvicted(String mapId, List<String> cloudAnchorIds);
+  }
+
+  private static final double EARTH_RADIUS_METERS = 6_371_000.0;
+
+  private static final class MapState {
+    final String id;
+    // Region of the map; NaN if it has none and can only be entered explicitly.
+    double latitude = Double.NaN;
+    double longitude = Double.NaN;
+    double radiusMeters;
+
+    // Cloud anchor ids of the POIs, or null if not loaded.
+    List<String> poiIds;
+    long poiBytes;
+    boolean loading;
+    final Map<String, Anchor> anchors = new HashMap<>();
+    final Set<String> resolving = new HashSet<>();
+    long lastEntered;
+
+    MapState(String id) {
+      this.id = id;
+    }
+
+    int anchorCount() {
+      return anchors.size() + resolving.size();
+    }
+  }
+
+  private final int maxAnchors;
+  private final long maxPoiBytes;
+  private final Callbacks callbacks;
+  private final Map<String, MapState> maps = new HashMap<>();
+  private MapState current;
+  private long entryCount;
+
+  /**
+   * @param maxAnchors Number of ARCore anchors, resolved or resolving, kept across all maps.
+   * @param maxPoiBytes Estimated memory of the POIs kept across all maps.
+   */
+  MapRegistry(int maxAnchors, long maxPoiBytes, Callbacks callbacks) {
+    Preconditions.checkArgument(maxAnchors > 0 && maxPoiBytes > 0, "Budgets must be positive.");
+    this.maxAnchors = maxAnchors;
+    this.maxPoiBytes = maxPoiBytes;
+    this.callbacks = Preconditions.checkNotNull(callbacks);
+  }
+
+  /** Adds or updates the circular region of a map, so that it is entered by location. */
+  void setRegion(String mapId, double latitude, double longitude, double radiusMeters) {
+    MapState map = getOrCreate(mapId);
+    map.latitude = latitude;
+    map.longitude = longitude;
+    map.radiusMeters = radiusMeters;
+  }
+
+  /** Returns the id of the current map, or null if none was entered yet. */
+  String getCurrentMapId() {
+    return current == null ? null : current.id;
+  }
+
+  /**
+   * Enters the map whose region contains the location, the one with the closest center if regions
+   * overlap. Outside of every region, the current map is kept.
+   *
+   * @return true if the current map changed.
+   */
+  boolean onLocation(double latitude, double longitude) {
+    MapState closest = null;
+    double closestDistance = Double.MAX_VALUE;
+    for (MapState map : maps.values()) {
+      if (Double.isNaN(map.latitude)) {
+        continue;
+      }
+      double distance = distanceMeters(latitude, longitude, map.latitude, map.longitude);
+      if (distance <= map.radiusMeters && distance < closestDistance) {
+        closest = map;
+        closestDistance = distance;
+      }
+    }
+    if (closest == null || closest == current) {
+      return false;
+    }
+    enter(closest.id);
+    return true;
+  }
+
+  /** Makes {@code mapId} the current map, loading its POIs and resolving its anchors as needed. */
+  void enter(String mapId) {
+    MapState map = getOrCreate(mapId);
+    current = map;
+    map.lastEntered = ++entryCount;
+    if (map.poiIds == null) {
+      if (!map.loading) {
+        map.loading = true;
+        callbacks.loadPois(map.id);
+      }
+    } else {
+      resolveMissing(map);
+    }
+  }
+
+  /** Records the POIs of a map, after {@link Callbacks#loadPois}. */
+  void onPoisLoaded(String mapId, List<String> cloudAnchorIds, long estimatedBytes) {
+    MapState map = getOrCreate(mapId);
+    map.loading = false;
+    map.poiIds = new ArrayList<>(cloudAnchorIds);
+    map.poiBytes = estimatedBytes;
+    if (map == current) {
+      resolveMissing(map);
+    }
+    enforceBudget();
+  }
+
+  /** Allows a map whose POIs failed to load to be retried on the next entry. */
+  void onPoisFailed(String mapId) {
+    getOrCreate(mapId).loading = false;
+  }
+
+  /**
+   * Records a resolved anchor. An anchor whose map was evicted while it was resolving is detached.
+   *
+   * @return true if the anchor is kept and should be shown.
+   */
+  boolean onAnchorResolved(Anchor anchor) {
+    String cloudAnchorId = anchor.getCloudAnchorId();
+    MapState owner = null;
+    for (MapState map : maps.values()) {
+      if (map.resolving.remove(cloudAnchorId)) {
+        owner = map;
+        break;
+      }
+    }
+    if (owner == null) {
+      anchor.detach();
+      return false;
+    }
+    if (anchor.getCloudAnchorState().isError()) {
+      // Not retried until the map is entered again.
+      anchor.detach();
+      return false;
+    }
+    owner.anchors.put(cloudAnchorId, anchor);
+    enforceBudget();
+    return owner.anchors.containsKey(cloudAnchorId);
+  }
+
+  /** Forgets anchors that were detached elsewhere; they are resolved again on the next entry. */
+  void onAnchorsDetached(List<String> cloudAnchorIds) {
+    for (MapState map : maps.values()) {
+      map.anchors.keySet().removeAll(cloudAnchorIds);
+    }
+  }
+
+  /**
+   * Resolves anchors of loaded maps again, after they were detached elsewhere or their resolve was
+   * deferred by the callbacks. POIs without an anchor are requested even if they are counted as
+   * resolving, so the caller must not pass ids whose resolve is in flight.
+   *
+   * @return The ids that are not part of a loaded map and were not resolved.
+   */
+  List<String> requestResolve(List<String> cloudAnchorIds) {
+    List<String> unknown = new ArrayList<>(cloudAnchorIds);
+    for (MapState map : maps.values()) {
+      if (map.poiIds == null) {
+        continue;
+      }
+      List<String> ids = new ArrayList<>();
+      for (String id : cloudAnchorIds) {
+        if (map.poiIds.contains(id)) {
+          unknown.remove(id);
+          if (!map.anchors.containsKey(id)) {
+            map.resolving.add(id);
+            ids.add(id);
+          }
+        }
+      }
+      if (!ids.isEmpty()) {
+        callbacks.resolveAnchors(map.id, ids);
+      }
+    }
+    enforceBudget();
+    return unknown;
+  }
+
+  /** Returns the number of anchors held across all maps, resolved or resolving. */
+  int getAnchorCount() {
+    int count = 0;
+    for (MapState map : maps.values()) {
+      count += map.anchorCount();
+    }
+    return count;
+  }
+
+  /** Returns the estimated memory of the POIs loaded across all maps. */
+  long getPoiBytes() {
+    long bytes = 0;
+    for (MapState map : maps.values()) {
+      bytes += map.poiBytes;
+    }
+    return bytes;
+  }
+
+  private MapState getOrCreate(String mapId) {
+    MapState map = maps.get(mapId);
+    if (map == null) {
+      map = new MapState(mapId);
+      maps.put(mapId, map);
+    }
+    return map;
+  }
+
+  private void resolveMissing(MapState map) {
+    List<String> missing = new ArrayList<>();
+    for (String id : map.poiIds) {
+      if (!map.anchors.containsKey(id) && map.resolving.add(id)) {
+        missing.add(id);
+      }
+    }
+    if (!missing.isEmpty()) {
+      callbacks.resolveAnchors(map.id, missing);
+      enforceBudget();
+    }
+  }
+
+  /**
+   * Evicts the least recently entered maps until the budgets are met. The current map is never
+   * evicted, so it may exceed the budgets on its own.
+   */
+  private void enforceBudget() {
+    while (getAnchorCount() > maxAnchors) {
+      MapState victim = leastRecentlyEntered(/* withAnchors= */ true);
+      if (victim == null) {
+        break;
+      }
+      evictAnchors(victim);
+    }
+    while (getPoiBytes() > maxPoiBytes) {
+      MapState victim = leastRecentlyEntered(/* withAnchors= */ false);
+      if (victim == null) {
+        break;
+      }
+      evictAnchors(victim);
+      List<String> ids = victim.poiIds;
+      victim.poiIds = null;
+      victim.poiBytes = 0;
+      callbacks.onPoisEvicted(victim.id, ids);
+    }
+  }
+
+  private MapState leastRecentlyEntered(boolean withAnchors) {
+    MapState oldest = null;
+    for (MapState map : maps.values()) {
+      if (map == current || (withAnchors ? map.anchorCount() == 0 : map.poiIds == null)) {
+        continue;
+      }
+      if (oldest == null || map.lastEntered < oldest.lastEntered) {
+        oldest = map;
+      }
+    }
+    return oldest;
+  }
+
+  private void evictAnchors(MapState map) {
+    if (map.anchorCount() == 0) {
+      return;
+    }
+    List<Anchor> detached = new ArrayList<>(map.anchors.values());
+    List<String> cancelled = new ArrayList<>(map.resolving);
+    map.anchors.clear();
+    map.resolving.clear();
+    // Other threads may still read the anchors until the callbacks have dropped them.
+    callbacks.onAnchorsEvicted(map.id, detached, cancelled);
+    for (Anchor anchor : detached) {
+      anchor.detach();
+    }
+  }
+
+  /** Returns the great-circle distance between two locations, in meters. */
+  private static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a =
+        Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2)
+                * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+  }
+}
@@ -0,0 +1,162 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+
+/**
+ * Selects the POI the user is closest to, without flickering between POIs at similar distances.
+ *
+ * <p>The camera distance of every POI is low-pass filtered with a time constant, so that pose
+ * jitter does not reorder POIs. Another POI only becomes the current one once its filtered distance
+ * has stayed shorter than the current one's by the switch margin for the whole dwell time. The
+ * current POI is dropped when it has not been seen for the dwell time.
+ *
+ * <p>Feed one frame as {@link #beginFrame}, {@link #onDistance} for every visible POI, then {@link
+ * #endFrame}. POIs are identified by their {@link PoiStore} handles, so the work per POI and per
+ * frame is constant and only indexes arrays. Pure Java and not thread safe.
+ */
+class NearestPoiSelector {
+
+  private static final class Entry {
+    float filteredDistance;
+    long lastSeenNanos;
+  }
+
+  private final float timeConstantNanos;
+  private final float switchMargin;
+  private final long dwellNanos;
+
+  // By handle; null for POIs not seen yet.
+  private Entry[] entries = new Entry[16];
+  private long frameNanos;
+
+  // Stable result.
+  private int currentHandle = PoiStore.NO_HANDLE;
+  private Entry current;
+
+  // Closest POI of the frame other than the current one.
+  private int challengerHandle = PoiStore.NO_HANDLE;
+  private Entry challenger;
+
+  // Challenger that has been closer by the margin since pendingSinceNanos.
+  private int pendingHandle = PoiStore.NO_HANDLE;
+  private long pendingSinceNanos;
+
+  /**
+   * @param timeConstantNanos Time constant of the distance filter.
+   * @param switchMargin Distance, in meters, by which another POI has to be closer to be selected.
+   * @param dwellNanos Time another POI has to stay closer by the margin before it is selected.
+   */
+  NearestPoiSelector(long timeConstantNanos, float switchMargin, long dwellNanos) {
+    Preconditions.checkArgument(timeConstantNanos > 0, "The time constant must be positive.");
+    Preconditions.checkArgument(switchMargin >= 0 && dwellNanos >= 0, "Negative hysteresis.");
+    this.timeConstantNanos = timeConstantNanos;
+    this.switchMargin = switchMargin;
+    this.dwellNanos = dwellNanos;
+  }
+
+  /** Starts a frame. */
+  void beginFrame(long timestampNanos) {
+    frameNanos = timestampNanos;
+    challengerHandle = PoiStore.NO_HANDLE;
+    challenger = null;
+  }
+
+  /** Records the camera distance of a visible POI in the current frame. */
+  void onDistance(int handle, float distance) {
+    if (handle >= entries.length) {
+      entries = Arrays.copyOf(entries, Math.max(handle + 1, entries.length * 2));
+    }
+    Entry entry = entries[handle];
+    if (entry == null) {
+      entry = new Entry();
+      entries[handle] = entry;
+      entry.filteredDistance = distance;
+    } else {
+      long elapsedNanos = frameNanos - entry.lastSeenNanos;
+      if (elapsedNanos > dwellNanos + timeConstantNanos) {
+        // Out of sight for a while; the old value says nothing anymore.
+        entry.filteredDistance = distance;
+      } else if (elapsedNanos > 0) {
+        float alpha = 1.0f - (float) Math.exp(-elapsedNanos / timeConstantNanos);
+        entry.filteredDistance += (distance - entry.filteredDistance) * alpha;
+      }
+    }
+    entry.lastSeenNanos = frameNanos;
+
+    if (entry != current
+        && (challenger == null || entry.filteredDistance < challenger.filteredDistance)) {
+      challengerHandle = handle;
+      challenger = entry;
+    }
+  }
+
+  /**
+   * Ends the frame and updates the current POI.
+   *
+   * @return true if the current POI changed.
+   */
+  boolean endFrame() {
+    boolean changed = false;
+    boolean currentVisible = current != null && current.lastSeenNanos == frameNanos;
+    if (current != null && !currentVisible && frameNanos - current.lastSeenNanos >= dwellNanos) {
+      currentHandle = PoiStore.NO_HANDLE;
+      current = null;
+      changed = true;
+    }
+    if (challenger == null) {
+      pendingHandle = PoiStore.NO_HANDLE;
+      return changed;
+    }
+    if (current == null) {
+      select();
+      return true;
+    }
+    // A current POI out of sight is beaten by any challenger, still after the dwell time.
+    if (currentVisible
+        && challenger.filteredDistance + switchMargin >= current.filteredDistance) {
+      pendingHandle = PoiStore.NO_HANDLE;
+      return false;
+    }
+    if (challengerHandle != pendingHandle) {
+      pendingHandle = challengerHandle;
+      pendingSinceNanos = frameNanos;
+    }
+    if (frameNanos - pendingSinceNanos < dwellNanos) {
+      return false;
+    }
+    select();
+    return true;
+  }
+
+  /** Returns the handle of the current POI, or {@link PoiStore#NO_HANDLE} if there is none. */
+  int getCurrentHandle() {
+    return currentHandle;
+  }
+
+  /** Returns the filtered distance to the current POI, in meters. */
+  float getCurrentDistance() {
+    return current == null ? Float.NaN : current.filteredDistance;
+  }
+
+  /** Forgets a POI, e.g. because it was removed and its handle may be reused. */
+  void forget(int handle) {
+    if (handle < 0 || handle >= entries.length || entries[handle] == null) {
+      return;
+    }
+    if (entries[handle] == current) {
+      currentHandle = PoiStore.NO_HANDLE;
+      current = null;
+    }
+    if (handle == pendingHandle) {
+      pendingHandle = PoiStore.NO_HANDLE;
+    }
+    entries[handle] = null;
+  }
+
+  private void select() {
+    currentHandle = challengerHandle;
+    current = challenger;
+    pendingHandle = PoiStore.NO_HANDLE;
+  }
+}
@@ -0,0 +1,405 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Finds POIs by name, tolerating incomplete words and typos.
+ *
+ * <p>Names are split into lowercase alphanumeric terms. Every query term is matched against the
+ * terms of the index as an exact word, as a prefix through a sorted term dictionary, and, if it
+ * has no prefix matches, by the trigrams it shares with indexed terms. A POI scores the average of
+ * the best match of every query term, weighted down with its distance from a reference location,
+ * and the top k POIs are returned.
+ *
+ * <p>POIs are identified by their {@link PoiStore} handles, which also index the columns of the
+ * index. No string or location is kept per POI; ids, names and locations are read from the store.
+ * POIs can be added, moved, renamed and removed at any time; the index is updated in place. Not
+ * thread safe.
+ */
+final class PoiNameIndex {
+
+  /** A POI found by {@link #search}. */
+  static final class Match {
+    final int handle;
+    final float score;
+    // NaN without a reference location.
+    final double distanceMeters;
+
+    Match(int handle, float score, double distanceMeters) {
+      this.handle = handle;
+      this.score = score;
+      this.distanceMeters = distanceMeters;
+    }
+  }
+
+  private static final float EXACT_SCORE = 1.0f;
+  // Prefix matches score between these, higher for prefixes covering more of the term.
+  private static final float MIN_PREFIX_SCORE = 0.5f;
+  private static final float MAX_PREFIX_SCORE = 0.9f;
+  // Trigram matches score their Dice similarity times this, if the similarity reaches the minimum.
+  private static final float FUZZY_WEIGHT = 0.7f;
+  private static final float MIN_FUZZY_SIMILARITY = 0.4f;
+  private static final double METERS_PER_DEGREE = 6_371_000.0 * Math.PI / 180.0;
+
+  private static final class Term {
+    final String text;
+    final int[] trigrams;
+    int[] pois = new int[2];
+    int poiCount;
+    // Query scratch state.
+    int stamp;
+    int sharedTrigrams;
+
+    Term(String text) {
+      this.text = text;
+      this.trigrams = trigrams(text);
+    }
+
+    void add(int poi) {
+      if (poiCount == pois.length) {
+        pois = Arrays.copyOf(pois, poiCount * 2);
+      }
+      pois[poiCount++] = poi;
+    }
+
+    void remove(int poi) {
+      for (int i = 0; i < poiCount; i++) {
+        if (pois[i] == poi) {
+          pois[i] = pois[--poiCount];
+          return;
+        }
+      }
+    }
+  }
+
+  private final PoiStore pois;
+  private final NavigableMap<String, Term> terms = new TreeMap<>();
+  private final Map<Integer, List<Term>> termsByTrigram = new HashMap<>();
+
+  // POIs by handle; null terms for handles without a POI.
+  private Term[][] poiTerms = new Term[16][];
+  private int size;
+
+  // Query scratch state, by handle.
+  private float[] termScores = new float[16];
+  private float[] totalScores = new float[16];
+  private int[] scoreStamps = new int[16];
+  private int[] candidateStamps = new int[16];
+  private int[] candidates = new int[16];
+  private int candidateCount;
+  private int queryStamp;
+  private int stamp;
+
+  /** @param pois Store of the indexed POIs, from which their locations are read. */
+  PoiNameIndex(PoiStore pois) {
+    this.pois = Preconditions.checkNotNull(pois);
+  }
+
+  /** Adds the POI with {@code handle}, or updates its name. */
+  void put(int handle, String name) {
+    ensureCapacity(handle + 1);
+    if (poiTerms[handle] != null) {
+      unlinkTerms(handle);
+    } else {
+      size++;
+    }
+    String[] words = tokenize(name);
+    List<Term> linked = new ArrayList<>(words.length);
+    for (String word : words) {
+      Term term = terms.get(word);
+      if (term == null) {
+        term = new Term(word);
+        terms.put(word, term);
+        for (int trigram : term.trigrams) {
+          List<Term> list = termsByTrigram.get(trigram);
+          if (list == null) {
+            list = new ArrayList<>();
+            termsByTrigram.put(trigram, list);
+          }
+          list.add(term);
+        }
+      }
+      if (!linked.contains(term)) {
+        term.add(handle);
+        linked.add(term);
+      }
+    }
+    poiTerms[handle] = linked.toArray(new Term[0]);
+  }
+
+  /**
+   * Removes the POI with {@code handle}, if present. Must be called before the handle is reused by
+   * another POI.
+   */
+  void remove(int handle) {
+    if (handle < 0 || handle >= poiTerms.length || poiTerms[handle] == null) {
+      return;
+    }
+    unlinkTerms(handle);
+    size--;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns up to {@code k} POIs matching {@code query}, best first.
+   *
+   * @param latitude Reference latitude, or NaN to rank by text alone.
+   * @param longitude Reference longitude.
+   * @param distanceScaleMeters Distance at which the score of a POI is halved.
+   */
+  List<Match> search(
+      String query, int k, double latitude, double longitude, double distanceScaleMeters) {
+    String[] words = tokenize(query);
+    if (words.length == 0 || k <= 0) {
+      return Collections.emptyList();
+    }
+    queryStamp = nextStamp();
+    candidateCount = 0;
+    for (String word : words) {
+      int termStamp = nextStamp();
+      matchTerm(word, termStamp);
+      // Add the best score of this word to every POI it matched.
+      for (int i = 0; i < candidateCount; i++) {
+        int slot = candidates[i];
+        if (scoreStamps[slot] == termStamp) {
+          totalScores[slot] += termScores[slot];
+        }
+      }
+    }
+
+    // Keep the k best in a small min-heap by final score.
+    boolean ranked = !Double.isNaN(latitude);
+    double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    int[] heap = new int[Math.min(k, Math.max(1, candidateCount))];
+    float[] heapScores = new float[heap.length];
+    double[] heapDistances = new double[heap.length];
+    int heapSize = 0;
+    for (int i = 0; i < candidateCount; i++) {
+      int slot = candidates[i];
+      float score = totalScores[slot] / words.length;
+      if (score <= 0) {
+        continue;
+      }
+      double distance = Double.NaN;
+      if (ranked) {
+        double dx = (pois.getLongitude(slot) - longitude) * metersPerDegreeLongitude;
+        double dy = (pois.getLatitude(slot) - latitude) * METERS_PER_DEGREE;
+        distance = Math.sqrt(dx * dx + dy * dy);
+        score *= (float) (distanceScaleMeters / (distanceScaleMeters + distance));
+      }
+      if (heapSize < heap.length) {
+        heapSize++;
+        siftUp(heap, heapScores, heapDistances, heapSize - 1, slot, score, distance);
+      } else if (score > heapScores[0]) {
+        siftDown(heap, heapScores, heapDistances, heapSize, slot, score, distance);
+      }
+    }
+
+    Match[] matches = new Match[heapSize];
+    for (int i = heapSize - 1; i >= 0; i--) {
+      matches[i] = new Match(heap[0], heapScores[0], heapDistances[0]);
+      int lastSlot = heap[i];
+      float lastScore = heapScores[i];
+      double lastDistance = heapDistances[i];
+      siftDown(heap, heapScores, heapDistances, i, lastSlot, lastScore, lastDistance);
+    }
+    return Arrays.asList(matches);
+  }
+
+  /** Scores every POI with a term matching {@code word} into {@link #termScores}. */
+  private void matchTerm(String word, int termStamp) {
+    Term exact = terms.get(word);
+    if (exact != null) {
+      accumulate(exact, EXACT_SCORE, termStamp);
+    }
+    boolean anyPrefix = false;
+    for (Term term : terms.subMap(word, false, word + Character.MAX_VALUE, false).values()) {
+      float coverage = (float) word.length() / term.text.length();
+      accumulate(
+          term, MIN_PREFIX_SCORE + (MAX_PREFIX_SCORE - MIN_PREFIX_SCORE) * coverage, termStamp);
+      anyPrefix = true;
+    }
+    if (exact != null || anyPrefix) {
+      return;
+    }
+
+    // No term starts with the word; fall back to terms sharing trigrams with it.
+    int[] queryTrigrams = trigrams(word);
+    List<Term> touched = new ArrayList<>();
+    for (int trigram : queryTrigrams) {
+      List<Term> list = termsByTrigram.get(trigram);
+      if (list == null) {
+        continue;
+      }
+      for (Term term : list) {
+        if (term.stamp != termStamp) {
+          term.stamp = termStamp;
+          term.sharedTrigrams = 0;
+          touched.add(term);
+        }
+        term.sharedTrigrams++;
+      }
+    }
+    for (Term term : touched) {
+      float similarity =
+          2.0f * term.sharedTrigrams / (queryTrigrams.length + term.trigrams.length);
+      if (similarity >= MIN_FUZZY_SIMILARITY) {
+        accumulate(term, FUZZY_WEIGHT * similarity, termStamp);
+      }
+    }
+  }
+
+  private void accumulate(Term term, float score, int termStamp) {
+    for (int i = 0; i < term.poiCount; i++) {
+      int slot = term.pois[i];
+      if (candidateStamps[slot] != queryStamp) {
+        candidateStamps[slot] = queryStamp;
+        totalScores[slot] = 0;
+        candidates[candidateCount++] = slot;
+      }
+      if (scoreStamps[slot] != termStamp) {
+        scoreStamps[slot] = termStamp;
+        termScores[slot] = score;
+      } else if (score > termScores[slot]) {
+        termScores[slot] = score;
+      }
+    }
+  }
+
+  private int nextStamp() {
+    if (++stamp == 0) {
+      Arrays.fill(scoreStamps, 0);
+      Arrays.fill(candidateStamps, 0);
+      for (Term term : terms.values()) {
+        term.stamp = 0;
+      }
+      stamp = 1;
+    }
+    return stamp;
+  }
+
+  private void unlinkTerms(int slot) {
+    Term[] linked = poiTerms[slot];
+    if (linked == null) {
+      return;
+    }
+    for (Term term : linked) {
+      term.remove(slot);
+      if (term.poiCount == 0) {
+        terms.remove(term.text);
+        for (int trigram : term.trigrams) {
+          List<Term> list = termsByTrigram.get(trigram);
+          list.remove(term);
+          if (list.isEmpty()) {
+            termsByTrigram.remove(trigram);
+          }
+        }
+      }
+    }
+    poiTerms[slot] = null;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= poiTerms.length) {
+      return;
+    }
+    int newLength = Math.max(capacity, poiTerms.length * 2);
+    poiTerms = Arrays.copyOf(poiTerms, newLength);
+    termScores = Arrays.copyOf(termScores, newLength);
+    totalScores = Arrays.copyOf(totalScores, newLength);
+    scoreStamps = Arrays.copyOf(scoreStamps, newLength);
+    candidateStamps = Arrays.copyOf(candidateStamps, newLength);
+    candidates = Arrays.copyOf(candidates, newLength);
+  }
+
+  /** Splits text into lowercase runs of letters and digits. */
+  static String[] tokenize(String text) {
+    List<String> words = new ArrayList<>();
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? Character.toLowerCase(text.charAt(i)) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        word.append(c);
+      } else if (word.length() > 0) {
+        words.add(word.toString());
+        word.setLength(0);
+      }
+    }
+    return words.toArray(new String[0]);
+  }
+
+  /** Returns the distinct trigrams of a word padded with two leading and one trailing marker. */
+  private static int[] trigrams(String word) {
+    String padded = "\u0001\u0001" + word + "\u0001";
+    int[] result = new int[padded.length() - 2];
+    int count = 0;
+    for (int i = 0; i + 3 <= padded.length(); i++) {
+      // Characters are folded to 16 bits each into a 48-bit value, hashed down to an int.
+      long packed =
+          ((long) padded.charAt(i) << 32)
+              | ((long) padded.charAt(i + 1) << 16)
+              | padded.charAt(i + 2);
+      int trigram = Long.hashCode(packed * 0x9E3779B97F4A7C15L);
+      boolean duplicate = false;
+      for (int j = 0; j < count; j++) {
+        duplicate |= result[j] == trigram;
+      }
+      if (!duplicate) {
+        result[count++] = trigram;
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  private static void siftUp(
+      int[] heap, float[] scores, double[] distances, int i, int slot, float score, double d) {
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (scores[parent] <= score) {
+        break;
+      }
+      heap[i] = heap[parent];
+      scores[i] = scores[parent];
+      distances[i] = distances[parent];
+      i = parent;
+    }
+    heap[i] = slot;
+    scores[i] = score;
+    distances[i] = d;
+  }
+
+  /** Replaces the top of a heap of {@code size} entries and restores the heap order. */
+  private static void siftDown(
+      int[] heap, float[] scores, double[] distances, int size, int slot, float score, double d) {
+    int i = 0;
+    while (2 * i + 1 < size) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && scores[child + 1] < scores[child]) {
+        child++;
+      }
+      if (score <= scores[child]) {
+        break;
+      }
+      heap[i] = heap[child];
+      scores[i] = scores[child];
+      distances[i] = distances[child];
+      i = child;
+    }
+    if (size > 0) {
+      heap[i] = slot;
+      scores[i] = score;
+      distances[i] = d;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.Arrays;
+
+/**
+ * POIs stored column by column in primitive arrays, addressed by int handles.
+ *
+ * <p>Handles are dense: they lie in {@code [0, getHandleLimit())}, and the handle of a removed POI
+ * is reused by the next one added, so loops over all POIs scan a few flat arrays instead of
+ * following references to scattered objects. Ids and names are interned in a single {@link
+ * StringPool}, where a name is shared by all POIs with that name. A POI keeps the refs of both,
+ * and the pool entry of an id holds the handle of its POI. No object is kept per POI.
+ *
+ * <p>A handle is valid until its POI is removed. Not thread safe.
+ */
+final class PoiStore {
+  // The value of the pool entries of names.
+  static final int NO_HANDLE = StringPool.NO_VALUE;
+
+  // Column bytes, and pool entry and table bytes of the id and name, per POI.
+  private static final int BYTES_PER_POI = 8 + 8 + 4 + 4 + 4 + 2 * (5 * 4 + 2 * 4);
+
+  private final StringPool strings = new StringPool();
+
+  // Columns, by handle. Free handles have an id ref of NO_REF.
+  private double[] latitudes = new double[16];
+  private double[] longitudes = new double[16];
+  private float[] altitudes = new float[16];
+  private int[] idRefs = new int[16];
+  private int[] nameRefs = new int[16];
+  private int handleLimit;
+  private int size;
+  private int[] freeHandles = new int[16];
+  private int freeHandleCount;
+
+  /** Roughly estimates the heap used by a POI with a name not shared with other POIs. */
+  static long estimateBytes(String id, String name) {
+    return BYTES_PER_POI + StringPool.encodedLength(id) + StringPool.encodedLength(name);
+  }
+
+  /**
+   * Adds a POI, or updates the name and position of the POI with the same id.
+   *
+   * @return The handle of the POI.
+   */
+  int put(String id, String name, double latitude, double longitude, double altitude) {
+    int handle = find(id);
+    if (handle == NO_HANDLE) {
+      handle = allocateHandle();
+      int idRef = strings.acquire(id);
+      strings.setValue(idRef, handle);
+      idRefs[handle] = idRef;
+      size++;
+    } else {
+      strings.release(nameRefs[handle]);
+    }
+    nameRefs[handle] = strings.acquire(name);
+    latitudes[handle] = latitude;
+    longitudes[handle] = longitude;
+    altitudes[handle] = (float) altitude;
+    return handle;
+  }
+
+  /** Returns the handle of the POI with {@code id}, or {@link #NO_HANDLE}. */
+  int find(String id) {
+    int ref = strings.find(id);
+    // The ref may belong to a name only.
+    return ref == StringPool.NO_REF ? NO_HANDLE : strings.getValue(ref);
+  }
+
+  /** Removes the POI with {@code id}, returning false if there is none. */
+  boolean remove(String id) {
+    int handle = find(id);
+    if (handle == NO_HANDLE) {
+      return false;
+    }
+    int idRef = idRefs[handle];
+    // The string may live on as a name.
+    strings.setValue(idRef, NO_HANDLE);
+    strings.release(idRef);
+    strings.release(nameRefs[handle]);
+    idRefs[handle] = StringPool.NO_REF;
+    if (freeHandleCount == freeHandles.length) {
+      freeHandles = Arrays.copyOf(freeHandles, Math.max(16, freeHandleCount * 2));
+    }
+    freeHandles[freeHandleCount++] = handle;
+    size--;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Releases unused capacity, e.g. after the POIs of a map were added. */
+  void trimToSize() {
+    strings.trimToSize();
+    latitudes = Arrays.copyOf(latitudes, handleLimit);
+    longitudes = Arrays.copyOf(longitudes, handleLimit);
+    altitudes = Arrays.copyOf(altitudes, handleLimit);
+    idRefs = Arrays.copyOf(idRefs, handleLimit);
+    nameRefs = Arrays.copyOf(nameRefs, handleLimit);
+    freeHandles = Arrays.copyOf(freeHandles, freeHandleCount);
+  }
+
+  /** Returns an upper bound of all handles in use, for scans over the columns. */
+  int getHandleLimit() {
+    return handleLimit;
+  }
+
+  /** Returns true if {@code handle} belongs to a POI, false if it is free. */
+  boolean isLive(int handle) {
+    return handle >= 0 && handle < handleLimit && idRefs[handle] != StringPool.NO_REF;
+  }
+
+  /** Returns the id of a POI. Allocates; prefer handles on hot paths. */
+  String getId(int handle) {
+    return strings.get(idRefs[handle]);
+  }
+
+  /** Returns the name of a POI. Allocates; prefer handles on hot paths. */
+  String getName(int handle) {
+    return strings.get(nameRefs[handle]);
+  }
+
+  double getLatitude(int handle) {
+    return latitudes[handle];
+  }
+
+  double getLongitude(int handle) {
+    return longitudes[handle];
+  }
+
+  float getAltitude(int handle) {
+    return altitudes[handle];
+  }
+
+  private int allocateHandle() {
+    if (freeHandleCount > 0) {
+      return freeHandles[--freeHandleCount];
+    }
+    if (handleLimit == latitudes.length) {
+      int newLength = Math.max(16, handleLimit * 2);
+      latitudes = Arrays.copyOf(latitudes, newLength);
+      longitudes = Arrays.copyOf(longitudes, newLength);
+      altitudes = Arrays.copyOf(altitudes, newLength);
+      idRefs = Arrays.copyOf(idRefs, newLength);
+      nameRefs = Arrays.copyOf(nameRefs, newLength);
+    }
+    return handleLimit++;
+  }
+}
@@ -0,0 +1,104 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import android.util.Size;
+import com.google.ar.core.CameraConfig;
+import com.google.ar.core.CameraConfig.DepthSensorUsage;
+import com.google.ar.core.CameraConfig.TargetFps;
+import com.google.ar.core.CameraConfigFilter;
+import com.google.ar.core.Config;
+import com.google.ar.core.Config.LightEstimationMode;
+import com.google.ar.core.Session;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Trade-offs between tracking quality and power draw for an ARCore session.
+ *
+ * <p>A profile selects the camera configuration by target frame rate and CPU image resolution, and
+ * turns optional features such as depth and light estimation on or off. Camera configurations can
+ * only be changed while the session is paused.
+ */
+enum SessionProfile {
+  /** 60 fps where available, the largest CPU image, depth and light estimation. */
+  PERFORMANCE(
+      TargetFps.TARGET_FPS_60, ImageSize.LARGEST, true, LightEstimationMode.AMBIENT_INTENSITY),
+  /** 30 fps, a mid-sized CPU image, depth and light estimation. */
+  BALANCED(TargetFps.TARGET_FPS_30, ImageSize.MEDIAN, true, LightEstimationMode.AMBIENT_INTENSITY),
+  /** 30 fps, the smallest CPU image, no depth sensor, no depth and no light estimation. */
+  LOW_POWER(TargetFps.TARGET_FPS_30, ImageSize.SMALLEST, false, LightEstimationMode.DISABLED);
+
+  private enum ImageSize {
+    SMALLEST,
+    MEDIAN,
+    LARGEST
+  }
+
+  private final TargetFps targetFps;
+  private final ImageSize imageSize;
+  private final boolean useDepth;
+  private final LightEstimationMode lightEstimationMode;
+
+  SessionProfile(
+      TargetFps targetFps,
+      ImageSize imageSize,
+      boolean useDepth,
+      LightEstimationMode lightEstimationMode) {
+    this.targetFps = targetFps;
+    this.imageSize = imageSize;
+    this.useDepth = useDepth;
+    this.lightEstimationMode = lightEstimationMode;
+  }
+
+  /**
+   * Selects the camera configuration of this profile. The session must be paused.
+   *
+   * <p>Falls back to any frame rate if the device has no configuration at the target one.
+   */
+  void selectCameraConfig(Session session) {
+    CameraConfigFilter filter = new CameraConfigFilter(session).setTargetFps(EnumSet.of(targetFps));
+    if (!useDepth) {
+      filter.setDepthSensorUsage(EnumSet.of(DepthSensorUsage.DO_NOT_USE));
+    }
+    List<CameraConfig> configs = session.getSupportedCameraConfigs(filter);
+    if (configs.isEmpty()) {
+      filter.setTargetFps(EnumSet.allOf(TargetFps.class));
+      configs = session.getSupportedCameraConfigs(filter);
+    }
+    if (configs.isEmpty()) {
+      return;
+    }
+
+    // Order by CPU image resolution, which drives the cost of tracking.
+    CameraConfig[] sorted = configs.toArray(new CameraConfig[0]);
+    Arrays.sort(sorted, (a, b) -> Long.compare(pixelCount(a), pixelCount(b)));
+    switch (imageSize) {
+      case SMALLEST:
+        session.setCameraConfig(sorted[0]);
+        break;
+      case MEDIAN:
+        session.setCameraConfig(sorted[sorted.length / 2]);
+        break;
+      case LARGEST:
+        session.setCameraConfig(sorted[sorted.length - 1]);
+        break;
+    }
+  }
+
+  /**
+   * Applies the optional features of this profile to {@code config}.
+   *
+   * @return Whether depth is enabled, which also requires device support.
+   */
+  boolean applyFeatures(Session session, Config config) {
+    config.setLightEstimationMode(lightEstimationMode);
+    boolean depthEnabled = useDepth && session.isDepthModeSupported(Config.DepthMode.AUTOMATIC);
+    config.setDepthMode(depthEnabled ? Config.DepthMode.AUTOMATIC : Config.DepthMode.DISABLED);
+    return depthEnabled;
+  }
+
+  private static long pixelCount(CameraConfig config) {
+    Size size = config.getImageSize();
+    return (long) size.getWidth() * size.getHeight();
+  }
+}
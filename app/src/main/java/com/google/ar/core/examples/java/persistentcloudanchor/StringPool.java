@@ -0,0 +1,309 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.Arrays;
+
+/**
+ * Deduplicated strings packed into one byte array and addressed by dense int refs.
+ *
+ * <p>Each char takes one to three bytes as in modified UTF-8, so ASCII text such as cloud anchor
+ * ids takes one byte per char and no object per string. Strings are found by an open addressing
+ * table of refs and counted by use: {@link #acquire} of an equal string returns the same ref, and
+ * the ref is freed, and later reused, when every use is released. Lookups and comparisons do not
+ * allocate; {@link #get} does.
+ *
+ * <p>The hash, position, use count and an int value that the owner of the pool attaches to the
+ * string are adjacent in one array, so that a lookup touches the table, one entry and the bytes of
+ * the string, and reads the value without another miss. Strings that encode to as many bytes as
+ * they have chars, ASCII ones, are compared without decoding.
+ *
+ * <p>Not thread safe.
+ */
+final class StringPool {
+  static final int NO_REF = -1;
+
+  static final int NO_VALUE = -1;
+
+  // Entries, ENTRY_SIZE ints by ref. A free ref has a use count of 0.
+  private static final int ENTRY_SIZE = 5;
+  private static final int HASH = 0;
+  private static final int START = 1;
+  private static final int LENGTH = 2;
+  private static final int USE_COUNT = 3;
+  private static final int VALUE = 4;
+  private int[] entries = new int[16 * ENTRY_SIZE];
+  private int refLimit;
+  private int size;
+  private int[] freeRefs = new int[16];
+  private int freeRefCount;
+
+  // Encoded strings back to back; freed strings stay as garbage until compacted.
+  private byte[] bytes = new byte[256];
+  private int bytesUsed;
+  private int bytesGarbage;
+
+  // Linear probing table of ref + 1, 0 for empty slots, kept at most half full.
+  private int[] table = new int[32];
+  private char[] scratch = new char[64];
+
+  /** Returns the number of bytes a string takes in the pool, excluding per entry overhead. */
+  static int encodedLength(String s) {
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      length += encodedLength(s.charAt(i));
+    }
+    return length;
+  }
+
+  /** Returns the ref of a string equal to {@code s}, adding it if needed, and counts one use. */
+  int acquire(String s) {
+    int ref = find(s);
+    if (ref == NO_REF) {
+      ref = allocateRef();
+      append(ref, s);
+      entries[ref * ENTRY_SIZE + VALUE] = NO_VALUE;
+      insertIntoTable(ref);
+      size++;
+    }
+    entries[ref * ENTRY_SIZE + USE_COUNT]++;
+    return ref;
+  }
+
+  /** Releases one use of {@code ref}, freeing it after the last one. */
+  void release(int ref) {
+    if (--entries[ref * ENTRY_SIZE + USE_COUNT] > 0) {
+      return;
+    }
+    removeFromTable(ref);
+    bytesGarbage += entries[ref * ENTRY_SIZE + LENGTH];
+    if (freeRefCount == freeRefs.length) {
+      freeRefs = Arrays.copyOf(freeRefs, Math.max(16, freeRefCount * 2));
+    }
+    freeRefs[freeRefCount++] = ref;
+    size--;
+    if (bytesGarbage > 4096 && bytesGarbage > bytesUsed / 2) {
+      compact();
+    }
+  }
+
+  /** Returns the ref of a string equal to {@code s}, or {@link #NO_REF}. */
+  int find(String s) {
+    int hash = s.hashCode();
+    int mask = table.length - 1;
+    for (int slot = mix(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      int ref = table[slot] - 1;
+      if (entries[ref * ENTRY_SIZE + HASH] == hash && matches(ref, s)) {
+        return ref;
+      }
+    }
+    return NO_REF;
+  }
+
+  /** Returns the value attached to {@code ref}, {@link #NO_VALUE} until one is set. */
+  int getValue(int ref) {
+    return entries[ref * ENTRY_SIZE + VALUE];
+  }
+
+  /** Attaches a value to {@code ref}; it is dropped when the ref is freed. */
+  void setValue(int ref, int value) {
+    entries[ref * ENTRY_SIZE + VALUE] = value;
+  }
+
+  /** Decodes the string of {@code ref}. */
+  String get(int ref) {
+    int start = entries[ref * ENTRY_SIZE + START];
+    int length = entries[ref * ENTRY_SIZE + LENGTH];
+    char[] chars = new char[length];
+    int count = 0;
+    for (int i = start, end = start + length; i < end; ) {
+      int b = bytes[i++] & 0xFF;
+      if (b < 0x80) {
+        chars[count++] = (char) b;
+      } else if (b < 0xE0) {
+        chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[i++] & 0x3F));
+      } else {
+        chars[count++] =
+            (char) (((b & 0x0F) << 12) | ((bytes[i++] & 0x3F) << 6) | (bytes[i++] & 0x3F));
+      }
+    }
+    return new String(chars, 0, count);
+  }
+
+  /** Returns true if {@code ref} is in use. */
+  boolean isLive(int ref) {
+    return entries[ref * ENTRY_SIZE + USE_COUNT] > 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Returns an upper bound of all refs in use. */
+  int getRefLimit() {
+    return refLimit;
+  }
+
+  /**
+   * Releases unused capacity, e.g. after a batch of strings was added. Refs of freed strings stay
+   * reserved for reuse.
+   */
+  void trimToSize() {
+    if (bytesGarbage > 0) {
+      compact();
+    }
+    bytes = Arrays.copyOf(bytes, bytesUsed);
+    entries = Arrays.copyOf(entries, refLimit * ENTRY_SIZE);
+    freeRefs = Arrays.copyOf(freeRefs, freeRefCount);
+    rehash(tableLengthFor(refLimit));
+  }
+
+  private int allocateRef() {
+    if (freeRefCount > 0) {
+      return freeRefs[--freeRefCount];
+    }
+    if (refLimit * ENTRY_SIZE == entries.length) {
+      entries = Arrays.copyOf(entries, Math.max(16, refLimit * 2) * ENTRY_SIZE);
+    }
+    if (2 * (refLimit + 1) > table.length) {
+      rehash(table.length * 2);
+    }
+    return refLimit++;
+  }
+
+  /** Returns the table length that keeps {@code refCount} refs at most half full. */
+  private static int tableLengthFor(int refCount) {
+    return Math.max(32, Integer.highestOneBit(Math.max(1, 2 * refCount - 1)) << 1);
+  }
+
+  private void rehash(int length) {
+    table = new int[length];
+    for (int ref = 0; ref < refLimit; ref++) {
+      if (entries[ref * ENTRY_SIZE + USE_COUNT] > 0) {
+        insertIntoTable(ref);
+      }
+    }
+  }
+
+  private void append(int ref, String s) {
+    int length = encodedLength(s);
+    if (bytesUsed + length > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesUsed + length));
+    }
+    int i = bytesUsed;
+    for (int j = 0; j < s.length(); j++) {
+      char c = s.charAt(j);
+      if (c < 0x80) {
+        bytes[i++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[i++] = (byte) (0xC0 | (c >> 6));
+        bytes[i++] = (byte) (0x80 | (c & 0x3F));
+      } else {
+        bytes[i++] = (byte) (0xE0 | (c >> 12));
+        bytes[i++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[i++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    entries[ref * ENTRY_SIZE + HASH] = s.hashCode();
+    entries[ref * ENTRY_SIZE + START] = bytesUsed;
+    entries[ref * ENTRY_SIZE + LENGTH] = length;
+    bytesUsed += length;
+  }
+
+  /** Moves all strings in use to the start of the bytes, dropping freed ones. */
+  private void compact() {
+    byte[] compacted = new byte[Math.max(256, 2 * (bytesUsed - bytesGarbage))];
+    int used = 0;
+    for (int ref = 0; ref < refLimit; ref++) {
+      int entry = ref * ENTRY_SIZE;
+      if (entries[entry + USE_COUNT] == 0) {
+        continue;
+      }
+      System.arraycopy(bytes, entries[entry + START], compacted, used, entries[entry + LENGTH]);
+      entries[entry + START] = used;
+      used += entries[entry + LENGTH];
+    }
+    bytes = compacted;
+    bytesUsed = used;
+    bytesGarbage = 0;
+  }
+
+  /** Compares the string of {@code ref} with {@code s}, encoding {@code s} char by char. */
+  private boolean matches(int ref, String s) {
+    int i = entries[ref * ENTRY_SIZE + START];
+    int length = entries[ref * ENTRY_SIZE + LENGTH];
+    int end = i + length;
+    if (length == s.length()) {
+      // Equal only if both are ASCII, and a byte of a longer encoding never equals a char.
+      if (scratch.length < length) {
+        scratch = new char[Math.max(length, 2 * scratch.length)];
+      }
+      s.getChars(0, length, scratch, 0);
+      char[] chars = scratch;
+      byte[] b = bytes;
+      for (int j = 0; j < length; j++) {
+        if (b[i + j] != chars[j]) {
+          return false;
+        }
+      }
+      return true;
+    }
+    for (int j = 0; j < s.length(); j++) {
+      char c = s.charAt(j);
+      if (c < 0x80) {
+        if (i >= end || bytes[i++] != c) {
+          return false;
+        }
+      } else if (c < 0x800) {
+        if (i + 2 > end
+            || bytes[i++] != (byte) (0xC0 | (c >> 6))
+            || bytes[i++] != (byte) (0x80 | (c & 0x3F))) {
+          return false;
+        }
+      } else if (i + 3 > end
+          || bytes[i++] != (byte) (0xE0 | (c >> 12))
+          || bytes[i++] != (byte) (0x80 | ((c >> 6) & 0x3F))
+          || bytes[i++] != (byte) (0x80 | (c & 0x3F))) {
+        return false;
+      }
+    }
+    return i == end;
+  }
+
+  private void insertIntoTable(int ref) {
+    int mask = table.length - 1;
+    int slot = mix(entries[ref * ENTRY_SIZE + HASH]) & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = ref + 1;
+  }
+
+  /** Removes a ref from the table, shifting back later entries of its probe sequence. */
+  private void removeFromTable(int ref) {
+    int mask = table.length - 1;
+    int slot = mix(entries[ref * ENTRY_SIZE + HASH]) & mask;
+    while (table[slot] != ref + 1) {
+      slot = (slot + 1) & mask;
+    }
+    int hole = slot;
+    for (slot = (slot + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      int home = mix(entries[(table[slot] - 1) * ENTRY_SIZE + HASH]) & mask;
+      // Move the entry into the hole unless its home lies cyclically in (hole, slot].
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        table[hole] = table[slot];
+        table[slot] = 0;
+        hole = slot;
+      }
+    }
+    table[hole] = 0;
+  }
+
+  private static int encodedLength(char c) {
+    return c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+  }
+
+  /** Spreads the bits of a string hash, whose low bits alone cluster for similar strings. */
+  private static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
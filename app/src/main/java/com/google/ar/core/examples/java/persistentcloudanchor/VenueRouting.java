@@ -0,0 +1,76 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.examples.java.common.routing.Landmarks;
+import com.google.ar.core.examples.java.common.routing.RouteTracker;
+import com.google.ar.core.examples.java.common.routing.Router;
+import com.google.ar.core.examples.java.common.routing.RoutingGraph;
+import java.util.List;
+
+/**
+ * Builds the routing graph of a map from the geographic positions of its POIs and connector nodes.
+ *
+ * <p>Positions are projected to meters east, up and south of the first node, which is accurate
+ * enough within a building. Nodes that list the ids of the nodes they link to get exactly those
+ * edges; all other nodes are linked to their closest neighbors. Building a graph precomputes its
+ * landmarks, so it is done off the UI and GL threads.
+ */
+final class VenueRouting {
+  private static final double METERS_PER_DEGREE = 6_371_000.0 * Math.PI / 180.0;
+
+  // Without explicit links, nodes are linked to up to 4 others within 15 m.
+  private static final float NEARBY_DISTANCE_METERS = 15.0f;
+  private static final int NEARBY_NEIGHBORS = 4;
+  private static final int LANDMARK_COUNT = 8;
+
+  /** A POI or connector node as stored with the map. */
+  static final class Node {
+    final String id;
+    final double latitude;
+    final double longitude;
+    final double altitude;
+    // Ids of the linked nodes, or null to link to the closest nodes.
+    final List<String> links;
+
+    Node(String id, double latitude, double longitude, double altitude, List<String> links) {
+      this.id = id;
+      this.latitude = latitude;
+      this.longitude = longitude;
+      this.altitude = altitude;
+      this.links = links;
+    }
+  }
+
+  private VenueRouting() {}
+
+  /** Builds the graph of {@code nodes} and returns a tracker for routes on it. */
+  static RouteTracker build(List<Node> nodes) {
+    RoutingGraph.Builder builder = new RoutingGraph.Builder();
+    if (!nodes.isEmpty()) {
+      Node origin = nodes.get(0);
+      double metersPerDegreeLongitude =
+          METERS_PER_DEGREE * Math.cos(Math.toRadians(origin.latitude));
+      for (Node node : nodes) {
+        builder.addNode(
+            node.id,
+            (float) ((node.longitude - origin.longitude) * metersPerDegreeLongitude),
+            (float) (node.altitude - origin.altitude),
+            (float) ((origin.latitude - node.latitude) * METERS_PER_DEGREE));
+      }
+      for (Node node : nodes) {
+        if (node.links == null) {
+          continue;
+        }
+        int from = builder.indexOf(node.id);
+        for (String link : node.links) {
+          int to = builder.indexOf(link);
+          if (to >= 0) {
+            builder.addEdge(from, to);
+          }
+        }
+      }
+      builder.connectNearby(NEARBY_DISTANCE_METERS, NEARBY_NEIGHBORS);
+    }
+    RoutingGraph graph = builder.build();
+    return new RouteTracker(new Router(graph, Landmarks.compute(graph, LANDMARK_COUNT)));
+  }
+}
@@ -0,0 +1,188 @@
+package com.google.ar.core.examples.java.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.ar.core.examples.java.common.helpers.FrameScheduler.Mode;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Feeds {@link FrameScheduler} synthetic pose traces at 25 frames per second. */
+@RunWith(JUnit4.class)
+public final class FrameSchedulerTest {
+  private static final long FRAME_NANOS = 40_000_000L;
+  private static final long SETTLE_NANOS = 1_000_000_000L;
+  // Still frames after a moving one before the rate drops: the first still frame starts the settle
+  // time, and the rate drops once a later one is the whole settle time after it.
+  private static final int SETTLE_FRAMES = (int) (SETTLE_NANOS / FRAME_NANOS) + 1;
+  // 5 cm/s and about 6 degrees/s.
+  private static final float LINEAR_THRESHOLD = 0.05f;
+  private static final float ANGULAR_THRESHOLD = 0.1f;
+
+  private final FrameScheduler scheduler =
+      new FrameScheduler(LINEAR_THRESHOLD, ANGULAR_THRESHOLD, SETTLE_NANOS);
+
+  private long timestampNanos = 1_000_000_000L;
+  private float x;
+  private float yaw;
+
+  @Before
+  public void setUp() {
+    // The first pose has nothing to compare with, so it counts as motion.
+    assertEquals(Mode.CONTINUOUS, frame(true, 0, 0, 0));
+  }
+
+  @Test
+  public void stillWithVisibleAnchors_reducesRateAfterSettleTime() {
+    assertEquals(Mode.CONTINUOUS, still(SETTLE_FRAMES - 1, 1));
+    assertEquals(Mode.REDUCED, still(1, 1));
+  }
+
+  @Test
+  public void stillWithNothingVisible_rendersOnDemandAfterSettleTime() {
+    assertEquals(Mode.CONTINUOUS, still(SETTLE_FRAMES - 1, 0));
+    assertEquals(Mode.ON_DEMAND, still(1, 0));
+  }
+
+  @Test
+  public void stillThenAnchorAppears_switchesFromOnDemandToReduced() {
+    still(SETTLE_FRAMES, 0);
+    assertEquals(Mode.REDUCED, still(1, 1));
+  }
+
+  @Test
+  public void slowDrift_belowThresholds_countsAsStill() {
+    // Tracking noise: 1 cm/s and 0.03 rad/s.
+    for (int i = 0; i < SETTLE_FRAMES; i++) {
+      frame(true, 1, 0.01f * FRAME_NANOS * 1e-9f, 0.03f * FRAME_NANOS * 1e-9f);
+    }
+    assertEquals(Mode.REDUCED, scheduler.getMode());
+  }
+
+  @Test
+  public void translation_wakesOnNextFrame() {
+    still(SETTLE_FRAMES, 0);
+    assertEquals(Mode.ON_DEMAND, scheduler.getMode());
+    // 20 cm/s.
+    assertEquals(Mode.CONTINUOUS, frame(true, 0, 0.2f * FRAME_NANOS * 1e-9f, 0));
+  }
+
+  @Test
+  public void rotation_wakesOnNextFrame() {
+    still(SETTLE_FRAMES, 1);
+    assertEquals(Mode.REDUCED, scheduler.getMode());
+    // 0.5 rad/s.
+    assertEquals(Mode.CONTINUOUS, frame(true, 1, 0, 0.5f * FRAME_NANOS * 1e-9f));
+  }
+
+  @Test
+  public void motionAcrossReducedRateGap_wakes() {
+    still(SETTLE_FRAMES, 1);
+    // At the reduced rate frames are 100 ms apart; 1 cm in that time is 10 cm/s.
+    timestampNanos += 100_000_000L - FRAME_NANOS;
+    assertEquals(Mode.CONTINUOUS, frame(true, 1, 0.01f, 0));
+  }
+
+  @Test
+  public void briefPause_doesNotReduceRate() {
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Mode.CONTINUOUS, still(SETTLE_FRAMES / 2, 1));
+      assertEquals(Mode.CONTINUOUS, frame(true, 1, 0.02f, 0));
+    }
+  }
+
+  @Test
+  public void motionDuringSettle_restartsSettleTime() {
+    still(SETTLE_FRAMES - 2, 1);
+    frame(true, 1, 0.02f, 0);
+    assertEquals(Mode.CONTINUOUS, still(SETTLE_FRAMES - 1, 1));
+    assertEquals(Mode.REDUCED, still(1, 1));
+  }
+
+  @Test
+  public void trackingLost_reducesRateImmediately() {
+    frame(true, 1, 0.02f, 0);
+    assertEquals(Mode.REDUCED, frame(false, 1, 0, 0));
+  }
+
+  @Test
+  public void trackingLostWhileOnDemand_pollsAtReducedRate() {
+    still(SETTLE_FRAMES, 0);
+    assertEquals(Mode.ON_DEMAND, scheduler.getMode());
+    assertEquals(Mode.REDUCED, frame(false, 0, 0, 0));
+  }
+
+  @Test
+  public void trackingRecovered_rendersContinuouslyUntilSettled() {
+    frame(false, 0, 0, 0);
+    // The first tracked pose has nothing to compare with, so it counts as motion.
+    assertEquals(Mode.CONTINUOUS, frame(true, 0, 0.5f, 0));
+    assertEquals(Mode.CONTINUOUS, still(SETTLE_FRAMES - 1, 0));
+    assertEquals(Mode.ON_DEMAND, still(1, 0));
+  }
+
+  @Test
+  public void poseWhileNotTracking_isIgnored() {
+    still(SETTLE_FRAMES, 1);
+    // A jump reported while tracking is lost must not count once tracking is back either.
+    frame(false, 1, 5, 0);
+    assertEquals(Mode.CONTINUOUS, frame(true, 1, 0, 0));
+  }
+
+  @Test
+  public void repeatedCameraFrame_keepsMode() {
+    still(SETTLE_FRAMES, 1);
+    timestampNanos -= FRAME_NANOS;
+    assertEquals(Mode.REDUCED, frame(true, 1, 1, 0));
+  }
+
+  @Test
+  public void wake_forcesContinuousForNextFrame() {
+    still(SETTLE_FRAMES, 0);
+    scheduler.wake();
+    assertEquals(Mode.CONTINUOUS, still(1, 0));
+    // The pose is sampled afresh after a wake, and the rate drops again after a new settle time.
+    assertEquals(Mode.CONTINUOUS, still(1, 0));
+    assertEquals(Mode.CONTINUOUS, still(SETTLE_FRAMES - 1, 0));
+    assertEquals(Mode.ON_DEMAND, still(1, 0));
+  }
+
+  @Test
+  public void modeIntervals_slowDownWithMode() {
+    assertEquals(0, Mode.CONTINUOUS.getFrameIntervalMillis());
+    assertEquals(100, Mode.REDUCED.getFrameIntervalMillis());
+    assertEquals(500, Mode.ON_DEMAND.getFrameIntervalMillis());
+  }
+
+  /** Feeds {@code frames} frames without motion and returns the last mode. */
+  private Mode still(int frames, int visibleAnchors) {
+    Mode mode = scheduler.getMode();
+    for (int i = 0; i < frames; i++) {
+      mode = frame(true, visibleAnchors, 0, 0);
+    }
+    return mode;
+  }
+
+  /**
+   * Feeds the next frame, with the camera moved along x by {@code dx} meters and turned about y by
+   * {@code dyaw} radians since the previous frame.
+   */
+  private Mode frame(boolean tracking, int visibleAnchors, float dx, float dyaw) {
+    timestampNanos += FRAME_NANOS;
+    x += dx;
+    yaw += dyaw;
+    float halfYaw = yaw / 2;
+    return scheduler.onFrame(
+        timestampNanos,
+        tracking,
+        visibleAnchors,
+        x,
+        1.5f,
+        0,
+        0,
+        (float) Math.sin(halfYaw),
+        0,
+        (float) Math.cos(halfYaw));
+  }
+}
@@ -0,0 +1,111 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class DirtyRangeTrackerTest {
+  private final DirtyRangeTracker tracker = new DirtyRangeTracker(1000);
+
+  @Test
+  public void consume_nothingMarked_reportsNothing() {
+    assertEquals(ranges(), consume(1000));
+  }
+
+  @Test
+  public void mark_reportsWholeBlock() {
+    tracker.mark(70);
+    assertEquals(ranges(64, 64), consume(1000));
+  }
+
+  @Test
+  public void markRange_adjacentBlocks_mergeIntoOneRange() {
+    tracker.mark(10);
+    tracker.mark(100);
+    tracker.markRange(130, 10);
+    assertEquals(ranges(0, 192), consume(1000));
+  }
+
+  @Test
+  public void markRange_separateBlocks_reportedInOrder() {
+    tracker.mark(700);
+    tracker.mark(5);
+    tracker.markRange(300, 100);
+    assertEquals(ranges(0, 64, 256, 192, 640, 64), consume(1000));
+  }
+
+  @Test
+  public void markRange_emptyRange_marksNothing() {
+    tracker.markRange(100, 0);
+    assertEquals(ranges(), consume(1000));
+  }
+
+  @Test
+  public void consume_clipsToLimit() {
+    tracker.markRange(0, 200);
+    assertEquals(ranges(0, 150), consume(150));
+  }
+
+  @Test
+  public void consume_ignoresBlocksAtOrAboveLimit() {
+    tracker.mark(10);
+    tracker.mark(500);
+    assertEquals(ranges(0, 64), consume(128));
+  }
+
+  @Test
+  public void consume_clipsToCapacity() {
+    tracker.markAll();
+    assertEquals(ranges(0, 1000), consume(5000));
+  }
+
+  @Test
+  public void consume_forgetsChanges() {
+    tracker.mark(10);
+    consume(1000);
+    assertEquals(ranges(), consume(1000));
+  }
+
+  @Test
+  public void consume_zeroLimit_forgetsChanges() {
+    tracker.mark(10);
+    assertEquals(ranges(), consume(0));
+    assertEquals(ranges(), consume(1000));
+  }
+
+  @Test
+  public void clear_forgetsChanges() {
+    tracker.markAll();
+    tracker.clear();
+    assertEquals(ranges(), consume(1000));
+  }
+
+  @Test
+  public void mark_beyondFirstWordOfBlocks_isTracked() {
+    // 64 blocks of 64 elements fit in one long; this crosses into the second.
+    DirtyRangeTracker large = new DirtyRangeTracker(10000);
+    large.mark(4095);
+    large.mark(4096);
+    large.mark(9999);
+    List<Integer> ranges = new ArrayList<>();
+    large.consume(10000, (first, count) -> ranges.addAll(Arrays.asList(first, count)));
+    assertEquals(ranges(4032, 128, 9984, 16), ranges);
+  }
+
+  private List<Integer> consume(int limit) {
+    List<Integer> ranges = new ArrayList<>();
+    tracker.consume(limit, (first, count) -> ranges.addAll(Arrays.asList(first, count)));
+    return ranges;
+  }
+
+  /** Returns {@code firstAndCounts} as a list of alternating range starts and lengths. */
+  private static List<Integer> ranges(Integer... firstAndCounts) {
+    return Arrays.asList(firstAndCounts);
+  }
+}
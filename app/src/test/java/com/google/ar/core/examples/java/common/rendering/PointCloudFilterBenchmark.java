@@ -0,0 +1,76 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link PointCloudFilter} on synthetic ARCore-like point clouds, in points per
+ * microsecond.
+ *
+ * <p>Points lie on a few planes within 4 m of the origin, with confidences spread over [0, 1) like
+ * ARCore reports them. {@code cellSize} 0 only drops points below the confidence threshold; the
+ * other sizes also downsample. Run with {@code ./gradlew :app:jmh -Pjmh=PointCloudFilterBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(PointCloudFilterBenchmark.MAX_POINTS)
+public class PointCloudFilterBenchmark {
+  static final int MAX_POINTS = 10000;
+
+  @Param({"0", "0.02", "0.1"})
+  public float cellSize;
+
+  private FloatBuffer cloud;
+  private PointCloudFilter filter;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    cloud =
+        ByteBuffer.allocateDirect(MAX_POINTS * PointCloudFilter.FLOATS_PER_POINT * 4)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    for (int i = 0; i < MAX_POINTS; i++) {
+      float u = random.nextFloat() * 8 - 4;
+      float v = random.nextFloat() * 8 - 4;
+      switch (i % 3) {
+        case 0: // Floor.
+          cloud.put(u).put(-1.5f + 0.01f * (float) random.nextGaussian()).put(v);
+          break;
+        case 1: // Wall.
+          cloud.put(u).put(v * 0.3f).put(-3 + 0.01f * (float) random.nextGaussian());
+          break;
+        default: // Clutter.
+          cloud.put(u * 0.2f).put(v * 0.2f).put(u * 0.2f - 1);
+          break;
+      }
+      cloud.put(random.nextFloat());
+    }
+    cloud.flip();
+    filter = new PointCloudFilter(0.3f, cellSize);
+  }
+
+  @Benchmark
+  public int filter() {
+    return filter.filter(cloud);
+  }
+}
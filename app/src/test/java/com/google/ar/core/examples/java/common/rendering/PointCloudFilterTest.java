@@ -0,0 +1,65 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class PointCloudFilterTest {
+
+  @Test
+  public void filter_dropsPointsBelowConfidence() {
+    PointCloudFilter filter = new PointCloudFilter(0.5f, 0);
+    float[] data = {0, 0, 0, 0.9f, 1, 1, 1, 0.1f, 2, 2, 2, 0.5f};
+
+    assertEquals(2, filter.filter(data, 3));
+    assertPoints(filter, 0, 0, 0, 0.9f, 2, 2, 2, 0.5f);
+  }
+
+  @Test
+  public void filter_keepsMostConfidentPointPerCell() {
+    PointCloudFilter filter = new PointCloudFilter(0, 1.0f);
+    float[] data = {0.1f, 0.1f, 0.1f, 0.3f, 0.2f, 0.2f, 0.2f, 0.8f, 5, 5, 5, 0.4f};
+
+    assertEquals(2, filter.filter(data, 3));
+    assertPoints(filter, 0.2f, 0.2f, 0.2f, 0.8f, 5, 5, 5, 0.4f);
+  }
+
+  @Test
+  public void filter_array_leavesCallerArrayAlone() {
+    PointCloudFilter filter = new PointCloudFilter(0.5f, 0);
+    float[] data = {0, 0, 0, 0.1f, 1, 1, 1, 0.9f};
+    float[] copy = data.clone();
+
+    filter.filter(data, 2);
+
+    assertArrayEquals(copy, data, 0);
+    assertNotSame(data, filter.getPoints());
+  }
+
+  @Test
+  public void filter_bufferAfterArray_doesNotWriteToCallerArray() {
+    PointCloudFilter filter = new PointCloudFilter(0, 0);
+    float[] data = new float[64];
+    Arrays.fill(data, 1);
+    filter.filter(data, 2);
+
+    filter.filter(FloatBuffer.wrap(new float[] {7, 7, 7, 1}));
+
+    for (float value : data) {
+      assertEquals(1, value, 0);
+    }
+    assertPoints(filter, 7, 7, 7, 1);
+  }
+
+  private static void assertPoints(PointCloudFilter filter, float... expected) {
+    assertEquals(expected.length / PointCloudFilter.FLOATS_PER_POINT, filter.getPointCount());
+    assertArrayEquals(expected, Arrays.copyOf(filter.getPoints(), expected.length), 0);
+  }
+}
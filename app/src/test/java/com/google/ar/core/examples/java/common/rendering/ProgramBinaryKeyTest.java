@@ -0,0 +1,67 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ProgramBinaryKeyTest {
+  private static final String VERTEX = "attribute vec4 a_Position;\nvoid main() {}\n";
+  private static final String FRAGMENT = "precision mediump float;\nvoid main() {}\n";
+  private static final String VERSION = "OpenGL ES 3.2 V@415.0";
+  private static final String RENDERER = "Adreno (TM) 630";
+
+  private static final String KEY = ProgramBinaryKey.derive(VERTEX, FRAGMENT, VERSION, RENDERER);
+
+  @Test
+  public void derive_sameInputs_returnsSameKey() {
+    assertEquals(KEY, ProgramBinaryKey.derive(VERTEX, FRAGMENT, VERSION, RENDERER));
+  }
+
+  @Test
+  public void derive_returnsFileNameSafeKey() {
+    assertTrue(KEY, KEY.matches("[0-9a-f]{64}"));
+  }
+
+  @Test
+  public void derive_glVersionChanged_changesKey() {
+    assertNotEquals(
+        KEY, ProgramBinaryKey.derive(VERTEX, FRAGMENT, "OpenGL ES 3.2 V@490.0", RENDERER));
+  }
+
+  @Test
+  public void derive_glRendererChanged_changesKey() {
+    assertNotEquals(KEY, ProgramBinaryKey.derive(VERTEX, FRAGMENT, VERSION, "Adreno (TM) 640"));
+  }
+
+  @Test
+  public void derive_vertexSourceChanged_changesKey() {
+    assertNotEquals(
+        KEY, ProgramBinaryKey.derive(VERTEX + "// comment\n", FRAGMENT, VERSION, RENDERER));
+  }
+
+  @Test
+  public void derive_fragmentSourceChanged_changesKey() {
+    assertNotEquals(
+        KEY, ProgramBinaryKey.derive(VERTEX, "#define USE_DEPTH\n" + FRAGMENT, VERSION, RENDERER));
+  }
+
+  @Test
+  public void derive_textMovedBetweenFields_changesKey() {
+    assertNotEquals(
+        ProgramBinaryKey.derive("ab", "c", VERSION, RENDERER),
+        ProgramBinaryKey.derive("a", "bc", VERSION, RENDERER));
+    assertNotEquals(
+        ProgramBinaryKey.derive(VERTEX, FRAGMENT, "OpenGL ES 3.2", "x"),
+        ProgramBinaryKey.derive(VERTEX, FRAGMENT, "OpenGL ES 3.", "2x"));
+  }
+
+  @Test
+  public void derive_swappedSources_changesKey() {
+    assertNotEquals(KEY, ProgramBinaryKey.derive(FRAGMENT, VERTEX, VERSION, RENDERER));
+  }
+}
@@ -0,0 +1,104 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ResolutionScaleControllerTest {
+  private static final long TARGET = 20_000_000L;
+  private static final long SLOW = 30_000_000L;
+  private static final long FAST = 10_000_000L;
+  // Under the target, but not by enough to raise the scale.
+  private static final long NEAR = 18_000_000L;
+
+  private final ResolutionScaleController controller =
+      new ResolutionScaleController(TARGET, 0.5f, 1.0f, 0.25f);
+
+  @Test
+  public void slowFrames_downscaleOnFifteenth() {
+    assertEquals(14, framesUntilChange(SLOW, 100));
+    assertEquals(0.75f, controller.getScale(), 0);
+  }
+
+  @Test
+  public void fastFrames_upscaleOnNinetieth() {
+    framesUntilChange(SLOW, 100);
+    controller.resetMeasurements();
+
+    assertEquals(89, framesUntilChange(FAST, 200));
+    assertEquals(1.0f, controller.getScale(), 0);
+  }
+
+  @Test
+  public void fastFramesAfterSlow_waitForAverageToFall() {
+    framesUntilChange(SLOW, 100);
+
+    // The average falls from 30 ms under 15 ms in 14 frames, and only then do the 90 frames count.
+    assertEquals(13 + 89, framesUntilChange(FAST, 200));
+  }
+
+  @Test
+  public void framesNearTarget_keepScale() {
+    framesUntilChange(SLOW, 100);
+    controller.resetMeasurements();
+
+    assertEquals(-1, framesUntilChange(NEAR, 500));
+    assertEquals(0.75f, controller.getScale(), 0);
+  }
+
+  @Test
+  public void slowFrames_stopAtMinScale() {
+    for (int i = 0; i < 500; i++) {
+      controller.onFrameTime(SLOW);
+    }
+
+    assertEquals(0.5f, controller.getScale(), 0);
+  }
+
+  @Test
+  public void singleLongGap_withoutReset_forcesDownscale() {
+    controller.onFrameTime(FAST);
+    controller.onFrameTime(2_000_000_000L);
+
+    assertTrue(framesUntilChange(FAST, 30) >= 0);
+    assertEquals(0.75f, controller.getScale(), 0);
+  }
+
+  @Test
+  public void resetMeasurements_forgetsLongGap() {
+    controller.onFrameTime(FAST);
+    controller.onFrameTime(2_000_000_000L);
+
+    controller.resetMeasurements();
+
+    assertEquals(-1, framesUntilChange(FAST, 30));
+    assertEquals(1.0f, controller.getScale(), 0);
+  }
+
+  @Test
+  public void changeInOneDirection_restartsTheOtherCount() {
+    for (int i = 0; i < 14; i++) {
+      assertFalse(controller.onFrameTime(SLOW));
+    }
+    controller.resetMeasurements();
+
+    // The 14 slow frames no longer count towards a downscale.
+    assertFalse(controller.onFrameTime(SLOW));
+    assertEquals(1.0f, controller.getScale(), 0);
+  }
+
+  /** Feeds frames until the scale changes, returning the 0-based index of that frame, or -1. */
+  private int framesUntilChange(long frameNanos, int maxFrames) {
+    for (int i = 0; i < maxFrames; i++) {
+      if (controller.onFrameTime(frameNanos)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,136 @@
+package com.google.ar.core.examples.java.common.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class StreamingBufferRingTest {
+  private static final int MIN_CAPACITY = 1024;
+  private static final int SHRINK_AFTER_USES = 3;
+
+  private final StreamingBufferRing ring =
+      new StreamingBufferRing(3, MIN_CAPACITY, SHRINK_AFTER_USES);
+
+  @Test
+  public void nextSlot_rotatesThroughAllSlots() {
+    assertEquals(-1, ring.getCurrentSlot());
+    for (int frame = 0; frame < 7; frame++) {
+      int slot = ring.nextSlot();
+      assertEquals(frame % 3, slot);
+      assertEquals(slot, ring.getCurrentSlot());
+    }
+  }
+
+  @Test
+  public void nextSlot_neverReusesSlotOfPreviousFrames() {
+    int twoFramesAgo = ring.nextSlot();
+    int previous = ring.nextSlot();
+    for (int frame = 0; frame < 10; frame++) {
+      int slot = ring.nextSlot();
+      assertNotEquals(previous, slot);
+      assertNotEquals(twoFramesAgo, slot);
+      twoFramesAgo = previous;
+      previous = slot;
+    }
+  }
+
+  @Test
+  public void nextSlot_singleSlot_alwaysReturnsIt() {
+    StreamingBufferRing single = new StreamingBufferRing(1, MIN_CAPACITY, SHRINK_AFTER_USES);
+    assertEquals(0, single.nextSlot());
+    assertEquals(0, single.nextSlot());
+  }
+
+  @Test
+  public void reserve_firstWrite_allocatesAtLeastMinCapacity() {
+    assertEquals(0, ring.getCapacity(0));
+    assertEquals(MIN_CAPACITY, ring.reserve(0, 10));
+    assertEquals(MIN_CAPACITY, ring.getCapacity(0));
+  }
+
+  @Test
+  public void reserve_dataFits_keepsAllocation() {
+    ring.reserve(0, 1000);
+    assertEquals(0, ring.reserve(0, 1024));
+    assertEquals(0, ring.reserve(0, 600));
+  }
+
+  @Test
+  public void reserve_dataDoesNotFit_growsToPowerOfTwo() {
+    ring.reserve(0, 1000);
+    assertEquals(4096, ring.reserve(0, 3000));
+    assertEquals(4096, ring.getCapacity(0));
+    assertEquals(8192, ring.reserve(0, 4097));
+  }
+
+  @Test
+  public void reserve_slotsGrowIndependently() {
+    ring.reserve(0, 5000);
+    assertEquals(8192, ring.getCapacity(0));
+    assertEquals(0, ring.getCapacity(1));
+    assertEquals(MIN_CAPACITY, ring.reserve(1, 100));
+  }
+
+  @Test
+  public void reserve_underusedForShrinkAfterUses_shrinksWithHeadroom() {
+    ring.reserve(0, 16000);
+    assertEquals(16384, ring.getCapacity(0));
+    assertEquals(0, ring.reserve(0, 3000));
+    assertEquals(0, ring.reserve(0, 3000));
+    // Twice the data, rounded up.
+    assertEquals(8192, ring.reserve(0, 3000));
+    assertEquals(8192, ring.getCapacity(0));
+  }
+
+  @Test
+  public void reserve_useAboveQuarter_resetsUnderusedCount() {
+    ring.reserve(0, 16000);
+    ring.reserve(0, 3000);
+    ring.reserve(0, 3000);
+    // More than a quarter of the capacity breaks the streak.
+    assertEquals(0, ring.reserve(0, 5000));
+    assertEquals(0, ring.reserve(0, 3000));
+    assertEquals(0, ring.reserve(0, 3000));
+    assertEquals(8192, ring.reserve(0, 3000));
+  }
+
+  @Test
+  public void reserve_growth_resetsUnderusedCount() {
+    ring.reserve(0, 4096);
+    ring.reserve(0, 100);
+    ring.reserve(0, 100);
+    assertEquals(65536, ring.reserve(0, 40000));
+    assertEquals(0, ring.reserve(0, 100));
+    assertEquals(0, ring.reserve(0, 100));
+    assertEquals(MIN_CAPACITY, ring.reserve(0, 100));
+  }
+
+  @Test
+  public void reserve_atMinCapacity_neverShrinks() {
+    ring.reserve(0, 10);
+    for (int i = 0; i < 2 * SHRINK_AFTER_USES; i++) {
+      assertEquals(0, ring.reserve(0, 1));
+    }
+    assertEquals(MIN_CAPACITY, ring.getCapacity(0));
+  }
+
+  @Test
+  public void reset_forgetsAllocationsAndSlot() {
+    ring.nextSlot();
+    ring.reserve(0, 5000);
+    ring.reset();
+    assertEquals(-1, ring.getCurrentSlot());
+    assertEquals(0, ring.getCapacity(0));
+    assertEquals(0, ring.nextSlot());
+    assertEquals(MIN_CAPACITY, ring.reserve(0, 10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_noSlots_throws() {
+    new StreamingBufferRing(0, MIN_CAPACITY, SHRINK_AFTER_USES);
+  }
+}
@@ -0,0 +1,69 @@
+package com.google.ar.core.examples.java.common.routing;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per {@link Router} query between random junctions of a {@link SyntheticVenue}, in
+ * microseconds.
+ *
+ * <p>{@code landmarks} 0 gives a zero bound, so the search is plain Dijkstra with an early exit;
+ * the other counts are ALT. Run with {@code ./gradlew :app:jmh -Pjmh=RouterBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+  private static final int QUERIES = 1024;
+
+  // 1 floor of 30 x 30 junctions, or 5 floors of 40 x 40.
+  @Param({"1", "5"})
+  public int floors;
+
+  @Param({"0", "8"})
+  public int landmarks;
+
+  private Router router;
+  private final int[] sources = new int[QUERIES];
+  private final int[] targets = new int[QUERIES];
+  private int query;
+
+  @Setup
+  public void setUp() {
+    int side = floors == 1 ? 30 : 40;
+    RoutingGraph graph = SyntheticVenue.generate(floors, side, side, 0.1f, 4, 42);
+    router = new Router(graph, Landmarks.compute(graph, landmarks));
+    // Only reachable pairs, so that every query finds a route.
+    float[] distances = new float[graph.getNodeCount()];
+    NodeHeap heap = new NodeHeap();
+    Random random = new Random(7);
+    for (int i = 0; i < QUERIES; ) {
+      sources[i] = random.nextInt(graph.getNodeCount());
+      targets[i] = random.nextInt(graph.getNodeCount());
+      Landmarks.shortestDistances(graph, sources[i], distances, 0, heap);
+      if (distances[targets[i]] != Float.POSITIVE_INFINITY) {
+        i++;
+      }
+    }
+  }
+
+  @Benchmark
+  public int[] route() {
+    query = (query + 1) & (QUERIES - 1);
+    return router.route(sources[query], targets[query]);
+  }
+}
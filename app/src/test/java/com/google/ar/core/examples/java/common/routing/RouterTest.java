@@ -0,0 +1,129 @@
+package com.google.ar.core.examples.java.common.routing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Checks ALT routes on {@link SyntheticVenue}s against plain Dijkstra distances. */
+@RunWith(JUnit4.class)
+public final class RouterTest {
+  private static final int QUERIES = 500;
+
+  @Test
+  public void route_matchesDijkstraDistances() {
+    // 3 floors of 20 x 20 junctions, with some cut off by walls.
+    RoutingGraph graph = SyntheticVenue.generate(3, 20, 20, 0.3f, 4, 42);
+    Router router = new Router(graph, Landmarks.compute(graph, 8));
+    float[] distances = new float[graph.getNodeCount()];
+    NodeHeap heap = new NodeHeap();
+    Random random = new Random(7);
+
+    int unreachable = 0;
+    for (int i = 0; i < QUERIES; i++) {
+      int source = random.nextInt(graph.getNodeCount());
+      int target = random.nextInt(graph.getNodeCount());
+      Landmarks.shortestDistances(graph, source, distances, 0, heap);
+      int[] path = router.route(source, target);
+      if (distances[target] == Float.POSITIVE_INFINITY) {
+        assertNull(path);
+        unreachable++;
+        continue;
+      }
+      assertNotNull(path);
+      assertEquals(source, path[0]);
+      assertEquals(target, path[path.length - 1]);
+      assertEquals(distances[target], router.getCostTo(target), 1e-3f);
+      assertEquals(distances[target], pathCost(graph, path), 1e-3f);
+    }
+    // The walls leave both kinds of queries.
+    assertTrue(unreachable > 0 && unreachable < QUERIES / 2);
+  }
+
+  @Test
+  public void route_settlesFewerNodesThanDijkstra() {
+    RoutingGraph graph = SyntheticVenue.generate(3, 20, 20, 0.1f, 4, 42);
+    // Without landmarks the bound is 0, so the search is plain Dijkstra.
+    Router dijkstra = new Router(graph, Landmarks.compute(graph, 0));
+    Router alt = new Router(graph, Landmarks.compute(graph, 8));
+    Random random = new Random(7);
+
+    long dijkstraSettled = 0;
+    long altSettled = 0;
+    for (int i = 0; i < QUERIES; i++) {
+      int source = random.nextInt(graph.getNodeCount());
+      int target = random.nextInt(graph.getNodeCount());
+      int[] expected = dijkstra.route(source, target);
+      int[] actual = alt.route(source, target);
+      if (expected == null) {
+        assertNull(actual);
+        continue;
+      }
+      assertEquals(dijkstra.getCostTo(target), alt.getCostTo(target), 1e-3f);
+      dijkstraSettled += dijkstra.getSettledCount();
+      altSettled += alt.getSettledCount();
+    }
+    assertTrue(altSettled * 2 < dijkstraSettled);
+  }
+
+  @Test
+  public void route_sourceIsTarget_returnsSingleNode() {
+    RoutingGraph graph = SyntheticVenue.generate(1, 4, 4, 0, 0, 42);
+    Router router = new Router(graph, Landmarks.compute(graph, 2));
+
+    assertArrayEquals(new int[] {5}, router.route(5, 5));
+    assertEquals(0, router.getCostTo(5), 0);
+  }
+
+  @Test
+  public void route_separateComponents_returnsNull() {
+    RoutingGraph.Builder builder = new RoutingGraph.Builder();
+    int a = builder.addNode("a", 0, 0, 0);
+    int b = builder.addNode("b", 1, 0, 0);
+    int c = builder.addNode("c", 2, 0, 0);
+    int d = builder.addNode("d", 3, 0, 0);
+    RoutingGraph graph = builder.addEdge(a, b).addEdge(c, d).build();
+    Router router = new Router(graph, Landmarks.compute(graph, 2));
+
+    assertNull(router.route(a, d));
+    assertArrayEquals(new int[] {d, c}, router.route(d, c));
+  }
+
+  @Test
+  public void route_prefersLongerFlatWalkOverCostlyStairs() {
+    RoutingGraph.Builder builder = new RoutingGraph.Builder();
+    int start = builder.addNode("start", 0, 0, 0);
+    int landing = builder.addNode("landing", 0, 4, 0);
+    int ramp = builder.addNode("ramp", 5, 2, 0);
+    RoutingGraph graph =
+        builder.addEdge(start, landing, 20).addEdge(start, ramp).addEdge(ramp, landing).build();
+    Router router = new Router(graph, Landmarks.compute(graph, 1));
+
+    assertArrayEquals(new int[] {start, ramp, landing}, router.route(start, landing));
+  }
+
+  private static float pathCost(RoutingGraph graph, int[] path) {
+    float cost = 0;
+    for (int i = 1; i < path.length; i++) {
+      cost += edgeCost(graph, path[i - 1], path[i]);
+    }
+    return cost;
+  }
+
+  private static float edgeCost(RoutingGraph graph, int from, int to) {
+    for (int e = graph.getEdgeStart(from), end = graph.getEdgeStart(from + 1); e < end; e++) {
+      if (graph.getEdgeTarget(e) == to) {
+        return graph.getEdgeCost(e);
+      }
+    }
+    fail("No edge from " + graph.getId(from) + " to " + graph.getId(to));
+    return Float.NaN;
+  }
+}
@@ -0,0 +1,66 @@
+package com.google.ar.core.examples.java.common.routing;
+
+import java.util.Random;
+
+/**
+ * Generates venues shaped like office floors for routing tests and benchmarks.
+ *
+ * <p>Every floor is a grid of corridor junctions 5 m apart, 4 m above the floor below. A fraction
+ * of the corridors is walled off, so routes detour and some junctions may be cut off. Stairs link a
+ * few junctions to the same spot on the next floor, at three times their height, as stairs are
+ * slower to walk.
+ */
+final class SyntheticVenue {
+  static final float SPACING = 5.0f;
+  static final float FLOOR_HEIGHT = 4.0f;
+  private static final float STAIR_COST = 3 * FLOOR_HEIGHT;
+
+  private SyntheticVenue() {}
+
+  /**
+   * Generates a venue of {@code floors * width * depth} junctions.
+   *
+   * @param wallProbability Probability that a corridor is walled off.
+   * @param stairsPerFloor Number of stairs from each floor to the next.
+   */
+  static RoutingGraph generate(
+      int floors, int width, int depth, float wallProbability, int stairsPerFloor, long seed) {
+    Random random = new Random(seed);
+    RoutingGraph.Builder builder = new RoutingGraph.Builder();
+    for (int floor = 0; floor < floors; floor++) {
+      for (int row = 0; row < depth; row++) {
+        for (int column = 0; column < width; column++) {
+          builder.addNode(
+              floor + "/" + row + "/" + column,
+              column * SPACING,
+              floor * FLOOR_HEIGHT,
+              row * SPACING);
+        }
+      }
+    }
+    for (int floor = 0; floor < floors; floor++) {
+      for (int row = 0; row < depth; row++) {
+        for (int column = 0; column < width; column++) {
+          int node = index(floor, row, column, width, depth);
+          if (column + 1 < width && random.nextFloat() >= wallProbability) {
+            builder.addEdge(node, node + 1);
+          }
+          if (row + 1 < depth && random.nextFloat() >= wallProbability) {
+            builder.addEdge(node, node + width);
+          }
+        }
+      }
+      if (floor + 1 < floors) {
+        for (int i = 0; i < stairsPerFloor; i++) {
+          int node = index(floor, random.nextInt(depth), random.nextInt(width), width, depth);
+          builder.addEdge(node, node + width * depth, STAIR_COST);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  private static int index(int floor, int row, int column, int width, int depth) {
+    return (floor * depth + row) * width + column;
+  }
+}
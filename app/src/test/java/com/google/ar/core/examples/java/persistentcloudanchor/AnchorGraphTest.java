@@ -0,0 +1,195 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class AnchorGraphTest {
+  private static final float TOLERANCE = 1e-4f;
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void composeOfRelative_returnsOriginalPose() {
+    float[] relative = new float[AnchorGraph.POSE_SIZE];
+    float[] composed = new float[AnchorGraph.POSE_SIZE];
+    for (int i = 0; i < 1000; i++) {
+      float[] a = randomPose();
+      float[] b = randomPose();
+
+      AnchorGraph.relative(a, b, relative);
+      AnchorGraph.compose(a, relative, composed);
+
+      assertPoseEquals(b, composed);
+    }
+  }
+
+  @Test
+  public void relative_ofItself_isIdentity() {
+    float[] a = randomPose();
+    float[] relative = new float[AnchorGraph.POSE_SIZE];
+
+    AnchorGraph.relative(a, a, relative);
+
+    assertPoseEquals(new float[] {0, 0, 0, 0, 0, 0, 1}, relative);
+  }
+
+  @Test
+  public void place_afterObservations_placesNeighbor() {
+    AnchorGraph graph = new AnchorGraph(4);
+    float[] a = randomPose();
+    float[] b = randomPose();
+    graph.observe("a", a, "b", b);
+
+    // Both anchors moved together, e.g. in a later session.
+    float[] shift = randomPose();
+    float[] movedA = new float[AnchorGraph.POSE_SIZE];
+    float[] movedB = new float[AnchorGraph.POSE_SIZE];
+    AnchorGraph.compose(shift, a, movedA);
+    AnchorGraph.compose(shift, b, movedB);
+    float[] placed = new float[AnchorGraph.POSE_SIZE];
+
+    assertTrue(graph.place("a", movedA, "b", placed));
+    assertPoseEquals(movedB, placed);
+    assertFalse(graph.place("a", movedA, "c", placed));
+  }
+
+  @Test
+  public void observe_sameRotationAsNegatedQuaternion_keepsRotation() {
+    AnchorGraph graph = new AnchorGraph(4);
+    float[] a = {0, 0, 0, 0, 0, 0, 1};
+    float[] b = randomPose();
+    float[] negatedB = b.clone();
+    for (int i = 3; i < AnchorGraph.POSE_SIZE; i++) {
+      negatedB[i] = -b[i];
+    }
+
+    // Averaged without regard to the sign, these two would cancel out.
+    graph.observe("a", a, "b", b);
+    graph.observe("a", a, "b", negatedB);
+    float[] placed = new float[AnchorGraph.POSE_SIZE];
+    graph.place("a", a, "b", placed);
+
+    assertPoseEquals(b, placed);
+  }
+
+  @Test
+  public void observe_atMaxNeighbors_replacesFarthest() {
+    AnchorGraph graph = new AnchorGraph(2);
+    float[] origin = {0, 0, 0, 0, 0, 0, 1};
+
+    graph.observe("a", origin, "near", at(1));
+    graph.observe("a", origin, "far", at(3));
+    graph.observe("a", origin, "middle", at(2));
+    assertEquals(new HashSet<>(Arrays.asList("near", "middle")), graph.getNeighbors("a"));
+
+    graph.observe("a", origin, "farthest", at(5));
+    assertEquals(new HashSet<>(Arrays.asList("near", "middle")), graph.getNeighbors("a"));
+  }
+
+  @Test
+  public void serializeSaveLoad_roundTrips() throws IOException {
+    AnchorGraph graph = new AnchorGraph(4);
+    float[] a = randomPose();
+    float[] b = randomPose();
+    float[] c = randomPose();
+    graph.observe("a", a, "b", b);
+    graph.observe("b", b, "c", c);
+    File file = new File(folder.getRoot(), "graph");
+
+    AnchorGraph.save(graph.serialize(), file);
+    AnchorGraph loaded = AnchorGraph.load(file, 4);
+
+    assertFalse(graph.isDirty());
+    assertFalse(loaded.isDirty());
+    assertEquals(graph.getNeighbors("b"), loaded.getNeighbors("b"));
+    float[] placed = new float[AnchorGraph.POSE_SIZE];
+    assertTrue(loaded.place("b", b, "c", placed));
+    assertPoseEquals(c, placed);
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+  }
+
+  @Test
+  public void load_missingFile_returnsEmptyGraph() {
+    AnchorGraph loaded = AnchorGraph.load(new File(folder.getRoot(), "missing"), 4);
+
+    assertTrue(loaded.getNeighbors("a").isEmpty());
+  }
+
+  @Test
+  public void load_truncatedFile_returnsEmptyGraph() throws IOException {
+    AnchorGraph graph = new AnchorGraph(4);
+    graph.observe("a", randomPose(), "b", randomPose());
+    byte[] data = graph.serialize();
+    File file = new File(folder.getRoot(), "graph");
+    write(file, Arrays.copyOf(data, data.length - 3));
+
+    AnchorGraph loaded = AnchorGraph.load(file, 4);
+
+    // The edge read before the end of the file is dropped too.
+    assertTrue(loaded.getNeighbors("a").isEmpty());
+    assertTrue(loaded.getNeighbors("b").isEmpty());
+  }
+
+  @Test
+  public void load_badMagic_returnsEmptyGraph() throws IOException {
+    File file = new File(folder.getRoot(), "graph");
+    write(file, new byte[] {1, 2, 3, 4, 0, 0, 0, 0});
+
+    assertTrue(AnchorGraph.load(file, 4).getNeighbors("a").isEmpty());
+  }
+
+  private float[] randomPose() {
+    float[] pose = new float[AnchorGraph.POSE_SIZE];
+    for (int i = 0; i < 3; i++) {
+      pose[i] = (random.nextFloat() - 0.5f) * 20;
+    }
+    float length = 0;
+    for (int i = 3; i < AnchorGraph.POSE_SIZE; i++) {
+      pose[i] = (float) random.nextGaussian();
+      length += pose[i] * pose[i];
+    }
+    length = (float) Math.sqrt(length);
+    for (int i = 3; i < AnchorGraph.POSE_SIZE; i++) {
+      pose[i] /= length;
+    }
+    return pose;
+  }
+
+  private static float[] at(float x) {
+    return new float[] {x, 0, 0, 0, 0, 0, 1};
+  }
+
+  private static void write(File file, byte[] data) throws IOException {
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(data);
+    }
+  }
+
+  /** Compares translations, and rotations up to the sign of the quaternion. */
+  private static void assertPoseEquals(float[] expected, float[] actual) {
+    for (int i = 0; i < 3; i++) {
+      assertEquals(expected[i], actual[i], TOLERANCE * 20);
+    }
+    float dot = 0;
+    for (int i = 3; i < AnchorGraph.POSE_SIZE; i++) {
+      dot += expected[i] * actual[i];
+    }
+    assertEquals(1, Math.abs(dot), TOLERANCE);
+  }
+}
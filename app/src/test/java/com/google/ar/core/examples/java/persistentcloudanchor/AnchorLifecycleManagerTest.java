@@ -0,0 +1,332 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class AnchorLifecycleManagerTest {
+  private static final float DETACH_DISTANCE = 30;
+  private static final float RESOLVE_DISTANCE = 20;
+  private static final long SECOND = 1_000_000_000L;
+  private static final long STALE_AFTER = 30 * SECOND;
+  private static final long MIN_STATE = 5 * SECOND;
+  private static final int MAX_LIVE = 3;
+
+  // POI handles.
+  private static final int A = 0;
+  private static final int B = 1;
+  private static final int C = 2;
+  private static final int D = 3;
+  private static final int E = 4;
+  private static final int NEAR = 5;
+  private static final int MID = 6;
+  private static final int FAR = 7;
+  private static final int FARTHER = 8;
+  private static final int UNKNOWN = 9;
+  private static final int LIVE = 10;
+
+  private final AnchorLifecycleManager manager =
+      new AnchorLifecycleManager(
+          DETACH_DISTANCE, RESOLVE_DISTANCE, STALE_AFTER, MIN_STATE, MAX_LIVE);
+
+  private final List<Integer> toDetach = new ArrayList<>();
+  private final List<Integer> toResolve = new ArrayList<>();
+  private long now = SECOND;
+
+  @Test
+  public void nearAndTracked_staysAttached() {
+    attachAt(A, 0);
+    for (int i = 0; i < 60; i++) {
+      advance(SECOND);
+      manager.onAnchorTracked(A, 0, 0, 0, now);
+      update(0);
+      assertTrue(toDetach.isEmpty());
+    }
+  }
+
+  @Test
+  public void far_detachedOnlyAfterMinStateTime() {
+    attachAt(A, 0);
+    update(DETACH_DISTANCE + 1);
+    assertTrue(toDetach.isEmpty());
+    advance(MIN_STATE - 1);
+    update(DETACH_DISTANCE + 1);
+    assertTrue(toDetach.isEmpty());
+    advance(1);
+    update(DETACH_DISTANCE + 1);
+    assertEquals(handles(A), toDetach);
+    assertEquals(0, manager.getActiveCount());
+  }
+
+  @Test
+  public void betweenResolveAndDetachDistance_keepsState() {
+    attachAt(A, 0);
+    advance(MIN_STATE);
+    update(25);
+    assertTrue(toDetach.isEmpty());
+
+    update(DETACH_DISTANCE + 1);
+    assertEquals(handles(A), toDetach);
+    // Coming back to between the two distances does not resolve it again.
+    advance(MIN_STATE);
+    update(25);
+    assertTrue(toResolve.isEmpty());
+  }
+
+  @Test
+  public void farThenBackWithinResolveDistance_resolvesAgain() {
+    attachAt(A, 0);
+    advance(MIN_STATE);
+    update(DETACH_DISTANCE + 1);
+    assertEquals(handles(A), toDetach);
+
+    update(RESOLVE_DISTANCE - 1);
+    // Too soon after the detach.
+    assertTrue(toResolve.isEmpty());
+    advance(MIN_STATE);
+    update(RESOLVE_DISTANCE - 1);
+    assertEquals(handles(A), toResolve);
+    assertEquals(1, manager.getActiveCount());
+  }
+
+  @Test
+  public void notTrackedForStalePeriod_detachedAsStale() {
+    attachAt(A, 0);
+    advance(STALE_AFTER);
+    update(0);
+    assertTrue(toDetach.isEmpty());
+    advance(1);
+    update(0);
+    assertEquals(handles(A), toDetach);
+  }
+
+  @Test
+  public void stale_resolvedAgainOnlyAfterCameraLeftAndReturned() {
+    attachAt(A, 0);
+    advance(STALE_AFTER + 1);
+    update(0);
+    assertEquals(handles(A), toDetach);
+
+    // Staying close does not resolve it again.
+    advance(MIN_STATE);
+    update(0);
+    assertTrue(toResolve.isEmpty());
+
+    update(DETACH_DISTANCE + 1);
+    assertTrue(toResolve.isEmpty());
+    update(RESOLVE_DISTANCE - 1);
+    assertEquals(handles(A), toResolve);
+  }
+
+  @Test
+  public void trackingResetsStaleness() {
+    attachAt(A, 0);
+    advance(STALE_AFTER - SECOND);
+    manager.onAnchorTracked(A, 0, 0, 0, now);
+    advance(STALE_AFTER - SECOND);
+    update(0);
+    assertTrue(toDetach.isEmpty());
+  }
+
+  @Test
+  public void overCap_detachesFarthestFirst() {
+    attachAt(NEAR, 1);
+    attachAt(MID, 5);
+    attachAt(FAR, 10);
+    assertTrue(toDetach.isEmpty());
+    attachAt(FARTHER, 15);
+    assertEquals(handles(FARTHER), toDetach);
+    assertEquals(MAX_LIVE, manager.getActiveCount());
+  }
+
+  @Test
+  public void overCap_neverTrackedAnchorsDetachedFirst() {
+    attachAt(A, 1);
+    attachAt(B, 20);
+    attachAt(C, 25);
+    manager.onAnchorAttached(UNKNOWN);
+    update(0);
+    assertEquals(handles(UNKNOWN), toDetach);
+  }
+
+  @Test
+  public void resolveFailed_afterBeingTracked_waitsForReturn() {
+    attachAt(A, 0);
+    advance(MIN_STATE);
+    update(DETACH_DISTANCE + 1);
+    advance(MIN_STATE);
+    update(0);
+    assertEquals(handles(A), toResolve);
+
+    manager.onResolveFailed(A);
+    advance(MIN_STATE);
+    update(0);
+    assertTrue(toResolve.isEmpty());
+    update(DETACH_DISTANCE + 1);
+    advance(MIN_STATE);
+    update(0);
+    assertEquals(handles(A), toResolve);
+  }
+
+  @Test
+  public void admitResolves_withinCap_admitsAll() {
+    List<Integer> admitted = new ArrayList<>();
+    List<Integer> deferred = new ArrayList<>();
+    manager.admitResolves(handles(A, B), admitted, deferred);
+    assertEquals(handles(A, B), admitted);
+    assertTrue(deferred.isEmpty());
+    assertEquals(2, manager.getActiveCount());
+  }
+
+  @Test
+  public void admitResolves_overCap_defersRest() {
+    attachAt(LIVE, 0);
+    List<Integer> admitted = new ArrayList<>();
+    List<Integer> deferred = new ArrayList<>();
+    manager.admitResolves(handles(A, B, C, D), admitted, deferred);
+    assertEquals(handles(A, B), admitted);
+    assertEquals(handles(C, D), deferred);
+    assertEquals(MAX_LIVE, manager.getActiveCount());
+    assertEquals(2, manager.getDeferredCount());
+
+    // Nothing frees up, so nothing is handed out.
+    update(0);
+    assertTrue(toResolve.isEmpty());
+  }
+
+  @Test
+  public void admitResolves_deferredHandedOutInOrderAsRoomFrees() {
+    List<Integer> admitted = new ArrayList<>();
+    manager.admitResolves(handles(A, B, C, D, E), admitted, new ArrayList<>());
+    assertEquals(handles(A, B, C), admitted);
+
+    manager.onResolveFailed(A);
+    update(0);
+    assertEquals(handles(D), toResolve);
+    assertEquals(MAX_LIVE, manager.getActiveCount());
+
+    manager.onAnchorAttached(B);
+    manager.onResolveFailed(C);
+    update(0);
+    assertEquals(handles(E), toResolve);
+    assertEquals(0, manager.getDeferredCount());
+  }
+
+  @Test
+  public void admitResolves_neverExceedsCapAcrossRequests() {
+    List<Integer> admitted = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      manager.admitResolves(handles(100 + i), admitted, new ArrayList<>());
+      assertTrue(manager.getActiveCount() <= MAX_LIVE);
+    }
+    assertEquals(MAX_LIVE, admitted.size());
+  }
+
+  @Test
+  public void admitResolves_queuedByUpdate_admittedWithoutCountingAgain() {
+    attachAt(A, 0);
+    advance(MIN_STATE);
+    update(DETACH_DISTANCE + 1);
+    advance(MIN_STATE);
+    update(0);
+    assertEquals(handles(A), toResolve);
+
+    List<Integer> admitted = new ArrayList<>();
+    manager.admitResolves(handles(A), admitted, new ArrayList<>());
+    assertEquals(handles(A), admitted);
+    assertEquals(1, manager.getActiveCount());
+  }
+
+  @Test
+  public void admitResolves_skipsLiveAnchors() {
+    attachAt(A, 0);
+    List<Integer> admitted = new ArrayList<>();
+    List<Integer> deferred = new ArrayList<>();
+    manager.admitResolves(handles(A), admitted, deferred);
+    assertTrue(admitted.isEmpty());
+    assertTrue(deferred.isEmpty());
+  }
+
+  @Test
+  public void resolveFailed_neverTracked_isForgotten() {
+    manager.admitResolves(handles(A), new ArrayList<>(), new ArrayList<>());
+    manager.onResolveFailed(A);
+    assertEquals(0, manager.getActiveCount());
+    // Requested again, e.g. on the next map entry.
+    List<Integer> admitted = new ArrayList<>();
+    manager.admitResolves(handles(A), admitted, new ArrayList<>());
+    assertEquals(handles(A), admitted);
+  }
+
+  @Test
+  public void forget_dropsDeferredResolves() {
+    manager.admitResolves(handles(A, B, C, D), new ArrayList<>(), new ArrayList<>());
+    manager.forget(handles(D));
+    assertEquals(0, manager.getDeferredCount());
+    manager.onResolveFailed(A);
+    update(0);
+    assertTrue(toResolve.isEmpty());
+  }
+
+  @Test
+  public void forget_middleEntry_keepsOthersAndStartsReusedHandleFresh() {
+    attachAt(A, 0);
+    attachAt(B, 1);
+    attachAt(C, 2);
+    manager.forget(handles(A));
+    assertEquals(2, manager.getActiveCount());
+
+    // The handle of the forgotten anchor is reused for another POI that is not attached yet.
+    manager.onAnchorTracked(A, 0, 0, 0, now);
+    advance(STALE_AFTER - SECOND);
+    manager.onAnchorTracked(B, 1, 0, 0, now);
+    manager.onAnchorTracked(C, 2, 0, 0, now);
+    advance(2 * SECOND);
+    update(0);
+    assertTrue(toDetach.isEmpty());
+    assertEquals(2, manager.getActiveCount());
+  }
+
+  @Test
+  public void handlesBeyondInitialCapacity_areKept() {
+    manager.admitResolves(handles(1000, 2000), new ArrayList<>(), new ArrayList<>());
+    manager.onAnchorAttached(2000);
+    manager.onResolveFailed(1000);
+    assertEquals(1, manager.getActiveCount());
+    manager.forget(handles(2000));
+    assertEquals(0, manager.getActiveCount());
+  }
+
+  /**
+   * Attaches an anchor, tracks it at {@code x} meters from the origin and runs the update of that
+   * frame, with the camera at the origin.
+   */
+  private void attachAt(int handle, float x) {
+    manager.onAnchorAttached(handle);
+    manager.onAnchorTracked(handle, x, 0, 0, now);
+    update(0);
+  }
+
+  private void advance(long nanos) {
+    now += nanos;
+  }
+
+  /** Runs an update with the camera {@code cameraX} meters from the origin. */
+  private void update(float cameraX) {
+    toDetach.clear();
+    toResolve.clear();
+    manager.update(now, cameraX, 0, 0, toDetach, toResolve);
+  }
+
+  private static List<Integer> handles(Integer... handles) {
+    return handles.length == 1 ? Collections.singletonList(handles[0]) : Arrays.asList(handles);
+  }
+}
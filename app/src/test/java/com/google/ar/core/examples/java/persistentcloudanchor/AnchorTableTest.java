@@ -0,0 +1,181 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Pose;
+import com.google.ar.core.TrackingState;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class AnchorTableTest {
+  private final AnchorTable table = new AnchorTable();
+
+  @Test
+  public void put_newHandles_addRows() {
+    Anchor a = anchor(TrackingState.TRACKING, 1);
+    Anchor b = anchor(TrackingState.TRACKING, 2);
+
+    assertNull(table.put(3, a, "ua-3"));
+    assertNull(table.put(40, b, "ua-40"));
+
+    assertEquals(2, table.size());
+    assertSame(a, table.getAnchor(table.rowOf(3)));
+    assertSame(b, table.getAnchor(table.rowOf(40)));
+    assertEquals("ua-40", table.getCloudAnchorId(table.rowOf(40)));
+  }
+
+  @Test
+  public void put_existingHandle_replacesAnchorInPlace() {
+    Anchor old = anchor(TrackingState.TRACKING, 1);
+    Anchor replacement = anchor(TrackingState.TRACKING, 5);
+    table.put(0, anchor(TrackingState.TRACKING, 0), "ua-0");
+    table.put(1, old, "ua-1");
+    table.refreshPoses(Collections.emptyList());
+
+    assertSame(old, table.put(1, replacement, "ua-1"));
+
+    assertEquals(2, table.size());
+    int row = table.rowOf(1);
+    assertEquals(1, row);
+    assertSame(replacement, table.getAnchor(row));
+    // The replacement is not tracking until the next refresh reads it.
+    assertFalse(table.isTracking(row));
+    table.refreshPoses(Collections.emptyList());
+    assertEquals(5, table.getX(row), 0);
+  }
+
+  @Test
+  public void removeRow_middle_movesLastRowAndItsHandle() {
+    table.put(7, anchor(TrackingState.TRACKING, 7), "ua-7");
+    table.put(8, anchor(TrackingState.TRACKING, 8), "ua-8");
+    Anchor last = anchor(TrackingState.TRACKING, 9);
+    table.put(9, last, "ua-9");
+    table.refreshPoses(Collections.emptyList());
+
+    table.removeRow(0);
+
+    assertEquals(2, table.size());
+    assertEquals(-1, table.rowOf(7));
+    assertEquals(0, table.rowOf(9));
+    assertEquals(9, table.getHandle(0));
+    assertSame(last, table.getAnchor(0));
+    assertEquals("ua-9", table.getCloudAnchorId(0));
+    assertEquals(9, table.getX(0), 0);
+    assertEquals(1, table.rowOf(8));
+  }
+
+  @Test
+  public void removeRow_movedAnchor_isStillRefreshed() {
+    table.put(0, anchor(TrackingState.TRACKING, 0), "ua-0");
+    Anchor moved = anchor(TrackingState.TRACKING, 1);
+    table.put(1, moved, "ua-1");
+    table.refreshPoses(Collections.emptyList());
+    table.removeRow(0);
+
+    when(moved.getTrackingState()).thenReturn(TrackingState.PAUSED);
+    table.refreshPoses(Collections.singletonList(moved));
+
+    assertFalse(table.isTracking(table.rowOf(1)));
+  }
+
+  @Test
+  public void refreshPoses_updateNotPassed_keepsOldState() {
+    Anchor anchor = anchor(TrackingState.TRACKING, 1);
+    table.put(0, anchor, "ua-0");
+    table.refreshPoses(Collections.emptyList());
+
+    // The frame that reported the change was dropped, as while camera tracking was paused.
+    when(anchor.getTrackingState()).thenReturn(TrackingState.PAUSED);
+    table.refreshPoses(Collections.emptyList());
+
+    assertTrue(table.isTracking(0));
+  }
+
+  @Test
+  public void markAllStale_refreshReadsAnchorsWithDroppedUpdates() {
+    Anchor paused = anchor(TrackingState.TRACKING, 1);
+    Anchor moved = anchor(TrackingState.TRACKING, 2);
+    table.put(0, paused, "ua-0");
+    table.put(1, moved, "ua-1");
+    table.refreshPoses(Collections.emptyList());
+    when(paused.getTrackingState()).thenReturn(TrackingState.PAUSED);
+    Pose pose = mock(Pose.class);
+    when(pose.tx()).thenReturn(3f);
+    when(moved.getPose()).thenReturn(pose);
+
+    table.markAllStale();
+    table.refreshPoses(Collections.emptyList());
+
+    assertFalse(table.isTracking(0));
+    assertEquals(TrackingState.PAUSED, table.getTrackingState(0));
+    assertTrue(table.isTracking(1));
+    assertEquals(3, table.getX(1), 0);
+  }
+
+  @Test
+  public void noHandle_hasNoRow() {
+    table.put(0, anchor(TrackingState.TRACKING, 0), "ua-0");
+
+    assertEquals(-1, table.rowOf(PoiStore.NO_HANDLE));
+    assertNull(table.remove(PoiStore.NO_HANDLE));
+    assertEquals(-1, table.rowOf(1_000));
+    assertNull(table.remove(1_000));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  public void randomOperations_matchReferenceMap() {
+    Random random = new Random(42);
+    Map<Integer, Anchor> reference = new HashMap<>();
+    for (int i = 0; i < 20_000; i++) {
+      int handle = random.nextInt(100);
+      int operation = random.nextInt(10);
+      if (operation < 5) {
+        Anchor anchor = mock(Anchor.class);
+        assertSame(reference.put(handle, anchor), table.put(handle, anchor, "ua-" + handle));
+      } else if (operation < 8) {
+        assertSame(reference.remove(handle), table.remove(handle));
+      } else if (table.size() > 0) {
+        int row = random.nextInt(table.size());
+        Anchor removed = reference.remove(table.getHandle(row));
+        assertSame(removed, table.removeRow(row));
+      }
+      assertEquals(reference.size(), table.size());
+    }
+
+    for (int handle = 0; handle < 100; handle++) {
+      int row = table.rowOf(handle);
+      if (reference.containsKey(handle)) {
+        assertTrue(row >= 0 && row < table.size());
+        assertEquals(handle, table.getHandle(row));
+        assertSame(reference.get(handle), table.getAnchor(row));
+        assertEquals("ua-" + handle, table.getCloudAnchorId(row));
+      } else {
+        assertEquals(-1, row);
+      }
+    }
+  }
+
+  /** Returns an anchor in {@code state}, at {@code x} meters from the origin. */
+  private static Anchor anchor(TrackingState state, float x) {
+    Pose pose = mock(Pose.class);
+    when(pose.tx()).thenReturn(x);
+    Anchor anchor = mock(Anchor.class);
+    when(anchor.getTrackingState()).thenReturn(state);
+    when(anchor.getPose()).thenReturn(pose);
+    return anchor;
+  }
+}
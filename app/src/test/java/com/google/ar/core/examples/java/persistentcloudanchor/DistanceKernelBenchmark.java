@@ -0,0 +1,125 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import com.google.ar.core.TrackingState;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One frame of offering anchor distances to the {@link NearestPoiSelector}, as the render loop
+ * does, over anchors spread across 50 m of which one in ten is not tracking.
+ *
+ * <p>{@code perAnchor} is the loop the kernel replaced, which takes a square root and calls the
+ * selector for every tracking anchor. {@code maskPass} runs the distance loop and then masks the
+ * rows that are not tracking in a second, branching loop; {@code maskOffsets} adds the mask in the
+ * distance loop, as {@link AnchorTable#squaredDistances} does. Both then select the 8 nearest and
+ * only offer those.
+ *
+ * <p>Run with {@code ./gradlew :app:jmh -Pjmh=DistanceKernelBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceKernelBenchmark {
+  private static final int CANDIDATES = 8;
+  private static final long FRAME_NANOS = 33_000_000L;
+
+  @Param({"100", "1000", "10000"})
+  public int anchors;
+
+  private float[] xs;
+  private float[] ys;
+  private float[] zs;
+  private TrackingState[] trackingStates;
+  private float[] distanceOffsets;
+  private float[] squaredDistances;
+  private final int[] nearestRows = new int[CANDIDATES];
+  private final NearestPoiSelector selector =
+      new NearestPoiSelector(300_000_000L, 0.5f, 1_000_000_000L);
+  private long timestampNanos;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    xs = new float[anchors];
+    ys = new float[anchors];
+    zs = new float[anchors];
+    trackingStates = new TrackingState[anchors];
+    distanceOffsets = new float[anchors];
+    squaredDistances = new float[anchors];
+    for (int i = 0; i < anchors; i++) {
+      xs[i] = (random.nextFloat() - 0.5f) * 50;
+      ys[i] = (random.nextFloat() - 0.5f) * 4;
+      zs[i] = (random.nextFloat() - 0.5f) * 50;
+      boolean tracking = random.nextInt(10) != 0;
+      trackingStates[i] = tracking ? TrackingState.TRACKING : TrackingState.PAUSED;
+      distanceOffsets[i] = tracking ? 0 : Float.POSITIVE_INFINITY;
+    }
+  }
+
+  @Benchmark
+  public int perAnchor() {
+    selector.beginFrame(timestampNanos += FRAME_NANOS);
+    for (int row = 0; row < anchors; row++) {
+      if (trackingStates[row] != TrackingState.TRACKING) {
+        continue;
+      }
+      float dx = xs[row] - 1;
+      float dy = ys[row] - 1;
+      float dz = zs[row] - 1;
+      selector.onDistance(row, (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+    }
+    selector.endFrame();
+    return selector.getCurrentHandle();
+  }
+
+  @Benchmark
+  public int maskPass() {
+    selector.beginFrame(timestampNanos += FRAME_NANOS);
+    for (int i = 0; i < anchors; i++) {
+      float dx = xs[i] - 1;
+      float dy = ys[i] - 1;
+      float dz = zs[i] - 1;
+      squaredDistances[i] = dx * dx + dy * dy + dz * dz;
+    }
+    for (int row = 0; row < anchors; row++) {
+      if (trackingStates[row] != TrackingState.TRACKING) {
+        squaredDistances[row] = Float.POSITIVE_INFINITY;
+      }
+    }
+    offerNearest();
+    selector.endFrame();
+    return selector.getCurrentHandle();
+  }
+
+  @Benchmark
+  public int maskOffsets() {
+    selector.beginFrame(timestampNanos += FRAME_NANOS);
+    DistanceKernel.squaredDistances(
+        xs, ys, zs, distanceOffsets, anchors, 1, 1, 1, squaredDistances);
+    offerNearest();
+    selector.endFrame();
+    return selector.getCurrentHandle();
+  }
+
+  private void offerNearest() {
+    int found = DistanceKernel.selectSmallest(squaredDistances, anchors, CANDIDATES, nearestRows);
+    for (int i = 0; i < found; i++) {
+      int row = nearestRows[i];
+      selector.onDistance(row, (float) Math.sqrt(squaredDistances[row]));
+    }
+  }
+}
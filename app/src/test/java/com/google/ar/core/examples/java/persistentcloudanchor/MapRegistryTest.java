@@ -0,0 +1,323 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Anchor.CloudAnchorState;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InOrder;
+
+@RunWith(JUnit4.class)
+public final class MapRegistryTest {
+  private static final int MAX_ANCHORS = 4;
+  private static final long MAX_POI_BYTES = 1000;
+
+  private final RecordingCallbacks callbacks = new RecordingCallbacks();
+  private final MapRegistry registry = new MapRegistry(MAX_ANCHORS, MAX_POI_BYTES, callbacks);
+
+  @Test
+  public void enter_loadsPoisOnce() {
+    registry.enter("a");
+    registry.enter("a");
+    assertEquals(Collections.singletonList("a"), callbacks.loaded);
+    assertEquals("a", registry.getCurrentMapId());
+  }
+
+  @Test
+  public void onPoisLoaded_currentMap_resolvesAllAnchors() {
+    registry.enter("a");
+    registry.onPoisLoaded("a", ids("a1", "a2"), 100);
+    assertEquals(Collections.singletonList("a:[a1, a2]"), callbacks.resolved);
+    assertEquals(2, registry.getAnchorCount());
+    assertEquals(100, registry.getPoiBytes());
+  }
+
+  @Test
+  public void onPoisLoaded_otherMap_doesNotResolve() {
+    registry.enter("a");
+    registry.enter("b");
+    registry.onPoisLoaded("a", ids("a1"), 100);
+    assertTrue(callbacks.resolved.isEmpty());
+  }
+
+  @Test
+  public void onPoisFailed_retriesOnNextEntry() {
+    registry.enter("a");
+    registry.onPoisFailed("a");
+    registry.enter("a");
+    assertEquals(Arrays.asList("a", "a"), callbacks.loaded);
+  }
+
+  @Test
+  public void onLocation_entersClosestContainingRegion() {
+    registry.setRegion("a", 10.0, 76.0, 500);
+    registry.setRegion("b", 10.003, 76.0, 500);
+    // About 110 m from a and 220 m from b.
+    assertTrue(registry.onLocation(10.001, 76.0));
+    assertEquals("a", registry.getCurrentMapId());
+    assertFalse(registry.onLocation(10.001, 76.0));
+    assertTrue(registry.onLocation(10.0025, 76.0));
+    assertEquals("b", registry.getCurrentMapId());
+  }
+
+  @Test
+  public void onLocation_outsideEveryRegion_keepsCurrentMap() {
+    registry.setRegion("a", 10.0, 76.0, 500);
+    registry.onLocation(10.0, 76.0);
+    assertFalse(registry.onLocation(11.0, 76.0));
+    assertEquals("a", registry.getCurrentMapId());
+  }
+
+  @Test
+  public void onAnchorResolved_keepsAnchorOfResolvingMap() {
+    loadAndEnter("a", "a1");
+    assertTrue(registry.onAnchorResolved(anchor("a1")));
+    assertEquals(1, registry.getAnchorCount());
+  }
+
+  @Test
+  public void onAnchorResolved_error_detachesAnchorAndForgetsIt() {
+    loadAndEnter("a", "a1");
+    Anchor failed = anchor("a1", CloudAnchorState.ERROR_INTERNAL);
+    assertFalse(registry.onAnchorResolved(failed));
+    verify(failed).detach();
+    assertEquals(0, registry.getAnchorCount());
+  }
+
+  @Test
+  public void onAnchorResolved_unknownAnchor_detachesIt() {
+    Anchor unknown = anchor("x");
+    assertFalse(registry.onAnchorResolved(unknown));
+    verify(unknown).detach();
+  }
+
+  @Test
+  public void anchorBudget_evictsLeastRecentlyEnteredMap() {
+    loadAndEnter("a", "a1", "a2");
+    Anchor a1 = resolve("a1");
+    Anchor a2 = resolve("a2");
+    loadAndEnter("b", "b1");
+    resolve("b1");
+    loadAndEnter("c", "c1");
+    Anchor c1 = resolve("c1");
+    assertTrue(callbacks.evicted.isEmpty());
+
+    // Entering d pushes the count to 5: a, the least recently entered, goes first.
+    loadAndEnter("d", "d1");
+    assertEquals(Collections.singletonList("a:[a1, a2]/[]"), callbacks.evicted);
+    verify(a1).detach();
+    verify(a2).detach();
+    verify(c1, never()).detach();
+    assertEquals(3, registry.getAnchorCount());
+
+    // Over the budget again: b is now the oldest.
+    loadAndEnter("e", "e1", "e2");
+    assertEquals(Arrays.asList("a:[a1, a2]/[]", "b:[b1]/[]"), callbacks.evicted);
+    assertEquals(4, registry.getAnchorCount());
+  }
+
+  @Test
+  public void anchorBudget_reEnteredMapIsEvictedLast() {
+    loadAndEnter("a", "a1");
+    loadAndEnter("b", "b1");
+    loadAndEnter("c", "c1");
+    registry.enter("a");
+    loadAndEnter("d", "d1", "d2");
+    assertEquals(Collections.singletonList("b:[]/[b1]"), callbacks.evicted);
+  }
+
+  @Test
+  public void anchorBudget_cancelsResolvingAnchorsOfEvictedMap() {
+    loadAndEnter("a", "a1", "a2");
+    resolve("a1");
+    loadAndEnter("b", "b1", "b2", "b3");
+    assertEquals(Collections.singletonList("a:[a1]/[a2]"), callbacks.evicted);
+    // The cancelled resolve completes later and is dropped.
+    Anchor late = anchor("a2");
+    assertFalse(registry.onAnchorResolved(late));
+    verify(late).detach();
+  }
+
+  @Test
+  public void anchorBudget_neverEvictsCurrentMap() {
+    loadAndEnter("a", "a1", "a2", "a3", "a4", "a5", "a6");
+    for (String id : ids("a1", "a2", "a3", "a4", "a5", "a6")) {
+      assertTrue(registry.onAnchorResolved(anchor(id)));
+    }
+    assertTrue(callbacks.evicted.isEmpty());
+    assertEquals(6, registry.getAnchorCount());
+  }
+
+  @Test
+  public void anchorBudget_evictsOthersBeforeOverBudgetCurrentMap() {
+    loadAndEnter("a", "a1");
+    resolve("a1");
+    loadAndEnter("b", "b1", "b2", "b3", "b4", "b5");
+    assertEquals(Collections.singletonList("a:[a1]/[]"), callbacks.evicted);
+    assertEquals(5, registry.getAnchorCount());
+  }
+
+  @Test
+  public void evictAnchors_callsBackBeforeDetaching() {
+    loadAndEnter("a", "a1");
+    Anchor a1 = resolve("a1");
+    loadAndEnter("b", "b1", "b2", "b3", "b4");
+    InOrder order = inOrder(callbacks.mock, a1);
+    order.verify(callbacks.mock).onAnchorsEvicted("a", ids(a1), ids());
+    order.verify(a1).detach();
+  }
+
+  @Test
+  public void reEntry_resolvesEvictedAnchorsAgain() {
+    loadAndEnter("a", "a1", "a2");
+    resolve("a1");
+    resolve("a2");
+    loadAndEnter("b", "b1", "b2", "b3");
+    callbacks.resolved.clear();
+
+    registry.enter("a");
+    // The POIs are still loaded, so only the anchors are resolved; b makes room for them.
+    assertEquals(Arrays.asList("a", "b"), callbacks.loaded);
+    assertEquals(Collections.singletonList("a:[a1, a2]"), callbacks.resolved);
+    assertEquals(2, callbacks.evicted.size());
+    assertTrue(callbacks.evicted.get(1), callbacks.evicted.get(1).startsWith("b:[]/"));
+    assertEquals(2, registry.getAnchorCount());
+  }
+
+  @Test
+  public void reEntry_resolvesOnlyMissingAnchors() {
+    loadAndEnter("a", "a1", "a2");
+    resolve("a1");
+    registry.onAnchorsDetached(ids("a1"));
+    callbacks.resolved.clear();
+    registry.enter("b");
+    registry.enter("a");
+    // a2 is still resolving; a1 was detached elsewhere and is resolved again.
+    assertEquals(Collections.singletonList("a:[a1]"), callbacks.resolved);
+  }
+
+  @Test
+  public void poiBudget_dropsPoisOfLeastRecentlyEnteredMap() {
+    loadAndEnter("a", 600, "a1");
+    Anchor a1 = resolve("a1");
+    loadAndEnter("b", 600, "b1");
+    assertEquals(Collections.singletonList("a:[a1]"), callbacks.poisEvicted);
+    verify(a1).detach();
+    assertEquals(600, registry.getPoiBytes());
+
+    // Re-entering reloads the POIs.
+    registry.enter("a");
+    assertEquals(Arrays.asList("a", "b", "a"), callbacks.loaded);
+  }
+
+  @Test
+  public void poiBudget_neverDropsCurrentMap() {
+    loadAndEnter("a", 5000, "a1");
+    assertTrue(callbacks.poisEvicted.isEmpty());
+    assertEquals(5000, registry.getPoiBytes());
+  }
+
+  @Test
+  public void requestResolve_resolvesKnownIdsAndReturnsUnknown() {
+    loadAndEnter("a", "a1", "a2");
+    resolve("a1");
+    resolve("a2");
+    registry.onAnchorsDetached(ids("a2"));
+    callbacks.resolved.clear();
+    List<String> unknown = registry.requestResolve(ids("a1", "a2", "z9"));
+    assertEquals(Collections.singletonList("a:[a2]"), callbacks.resolved);
+    assertEquals(ids("z9"), unknown);
+  }
+
+  @Test
+  public void requestResolve_deferredAnchor_requestedAgain() {
+    loadAndEnter("a", "a1", "a2");
+    callbacks.resolved.clear();
+    // The callbacks deferred a2; it still counts as resolving and is requested once room frees.
+    registry.requestResolve(ids("a2"));
+    assertEquals(Collections.singletonList("a:[a2]"), callbacks.resolved);
+    assertEquals(2, registry.getAnchorCount());
+  }
+
+  @Test
+  public void getCurrentMapId_beforeEntering_isNull() {
+    assertNull(registry.getCurrentMapId());
+  }
+
+  private void loadAndEnter(String mapId, String... poiIds) {
+    loadAndEnter(mapId, 10, poiIds);
+  }
+
+  private void loadAndEnter(String mapId, long bytes, String... poiIds) {
+    registry.enter(mapId);
+    registry.onPoisLoaded(mapId, ids(poiIds), bytes);
+  }
+
+  private Anchor resolve(String cloudAnchorId) {
+    Anchor anchor = anchor(cloudAnchorId);
+    assertTrue(registry.onAnchorResolved(anchor));
+    return anchor;
+  }
+
+  private static Anchor anchor(String cloudAnchorId) {
+    return anchor(cloudAnchorId, CloudAnchorState.SUCCESS);
+  }
+
+  private static Anchor anchor(String cloudAnchorId, CloudAnchorState state) {
+    Anchor anchor = mock(Anchor.class);
+    when(anchor.getCloudAnchorId()).thenReturn(cloudAnchorId);
+    when(anchor.getCloudAnchorState()).thenReturn(state);
+    when(anchor.toString()).thenReturn(cloudAnchorId);
+    return anchor;
+  }
+
+  @SafeVarargs
+  private static <T> List<T> ids(T... ids) {
+    return Arrays.asList(ids);
+  }
+
+  /** Records the callbacks as strings, and forwards them to a mock for ordering checks. */
+  private static final class RecordingCallbacks implements MapRegistry.Callbacks {
+    final MapRegistry.Callbacks mock = mock(MapRegistry.Callbacks.class);
+    final List<String> loaded = new ArrayList<>();
+    final List<String> resolved = new ArrayList<>();
+    final List<String> evicted = new ArrayList<>();
+    final List<String> poisEvicted = new ArrayList<>();
+
+    @Override
+    public void loadPois(String mapId) {
+      loaded.add(mapId);
+    }
+
+    @Override
+    public void resolveAnchors(String mapId, List<String> cloudAnchorIds) {
+      resolved.add(mapId + ":" + cloudAnchorIds);
+    }
+
+    @Override
+    public void onAnchorsEvicted(
+        String mapId, List<Anchor> detachedAnchors, List<String> cancelledIds) {
+      mock.onAnchorsEvicted(mapId, detachedAnchors, cancelledIds);
+      evicted.add(mapId + ":" + detachedAnchors + "/" + cancelledIds);
+    }
+
+    @Override
+    public void onPoisEvicted(String mapId, List<String> cloudAnchorIds) {
+      poisEvicted.add(mapId + ":" + cloudAnchorIds);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Feeds {@link NearestPoiSelector} distance traces of two POIs with uniform jitter, at 25 frames
+ * per second and with the settings of the activity.
+ */
+@RunWith(JUnit4.class)
+public final class NearestPoiSelectorTest {
+  private static final long FRAME_NANOS = 40_000_000L;
+  private static final long TIME_CONSTANT_NANOS = 300_000_000L;
+  private static final float MARGIN = 0.5f;
+  private static final long DWELL_NANOS = 1_000_000_000L;
+  // Tracking noise on every distance sample, in meters.
+  private static final float JITTER = 0.15f;
+
+  private static final int A = 0;
+  private static final int B = 1;
+
+  private final NearestPoiSelector selector =
+      new NearestPoiSelector(TIME_CONSTANT_NANOS, MARGIN, DWELL_NANOS);
+  private final Random random = new Random(42);
+  private long timestampNanos = 1_000_000_000L;
+  private int switches;
+
+  @Before
+  public void setUp() {
+    // A is seen first, so it is selected regardless of B.
+    selector.beginFrame(timestampNanos);
+    selector.onDistance(A, 2.0f);
+    assertTrue(selector.endFrame());
+    assertEquals(A, selector.getCurrentHandle());
+  }
+
+  @Test
+  public void otherPoiCloserWithinMargin_neverSwitches() {
+    // B is 0.3 m closer; with jitter it is sometimes closer by more than the margin in one sample.
+    run(30_000_000_000L, 2.0f, 1.7f);
+    assertEquals(0, switches);
+    assertEquals(A, selector.getCurrentHandle());
+  }
+
+  @Test
+  public void otherPoiCloserByMarginForLessThanDwell_neverSwitches() {
+    for (int i = 0; i < 10; i++) {
+      run(1_400_000_000L, 2.0f, 2.2f);
+      run(600_000_000L, 2.0f, 1.0f);
+    }
+    assertEquals(0, switches);
+    assertEquals(A, selector.getCurrentHandle());
+  }
+
+  @Test
+  public void otherPoiCloserByMargin_switchesOnceAfterDwell() {
+    run(2_000_000_000L, 2.0f, 2.2f);
+    long closerSinceNanos = timestampNanos;
+
+    run(DWELL_NANOS, 2.0f, 1.0f);
+    assertEquals(0, switches);
+    assertEquals(A, selector.getCurrentHandle());
+
+    // The filter lags by a few time constants before B is closer by the margin.
+    run(4 * TIME_CONSTANT_NANOS, 2.0f, 1.0f);
+    assertEquals(1, switches);
+    assertEquals(B, selector.getCurrentHandle());
+    assertTrue(timestampNanos - closerSinceNanos > DWELL_NANOS);
+
+    run(30_000_000_000L, 2.0f, 1.0f);
+    assertEquals(1, switches);
+    assertEquals(1.0f, selector.getCurrentDistance(), JITTER);
+  }
+
+  @Test
+  public void currentPoiOutOfSight_keptForDwellThenReplaced() {
+    run(2_000_000_000L, 2.0f, 2.2f);
+
+    // Only B is seen from now on, even though it is farther.
+    long lostSinceNanos = timestampNanos;
+    while (timestampNanos + FRAME_NANOS - lostSinceNanos < DWELL_NANOS) {
+      assertFalse(frameWithB(2.2f));
+      assertEquals(A, selector.getCurrentHandle());
+    }
+    assertTrue(frameWithB(2.2f));
+    assertEquals(B, selector.getCurrentHandle());
+  }
+
+  @Test
+  public void forget_dropsCurrentPoi() {
+    selector.forget(A);
+
+    assertEquals(PoiStore.NO_HANDLE, selector.getCurrentHandle());
+    assertTrue(Float.isNaN(selector.getCurrentDistance()));
+    assertTrue(frameWithB(2.2f));
+    assertEquals(B, selector.getCurrentHandle());
+  }
+
+  /** Feeds frames with both POIs around the given distances for {@code durationNanos}. */
+  private void run(long durationNanos, float distanceA, float distanceB) {
+    for (long end = timestampNanos + durationNanos; timestampNanos < end; ) {
+      timestampNanos += FRAME_NANOS;
+      selector.beginFrame(timestampNanos);
+      selector.onDistance(A, jitter(distanceA));
+      selector.onDistance(B, jitter(distanceB));
+      if (selector.endFrame()) {
+        switches++;
+      }
+    }
+  }
+
+  private boolean frameWithB(float distanceB) {
+    timestampNanos += FRAME_NANOS;
+    selector.beginFrame(timestampNanos);
+    selector.onDistance(B, jitter(distanceB));
+    return selector.endFrame();
+  }
+
+  private float jitter(float distance) {
+    return distance + (random.nextFloat() * 2.0f - 1.0f) * JITTER;
+  }
+}
@@ -0,0 +1,136 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Build time and query latency of {@link PoiNameIndex} over 50,000 {@link SyntheticPois}, and its
+ * retained heap without the {@link PoiStore} it reads locations from, which is printed at the end
+ * of each {@code build} trial.
+ *
+ * <p>{@code exact} queries name a wing, kind and number; {@code prefix} queries the first letters
+ * of a kind, which match one POI in 16; {@code fuzzy} queries misspell a kind, so that no prefix
+ * matches and trigrams are used. Run with {@code ./gradlew :app:jmh -Pjmh=PoiNameIndexBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoiNameIndexBenchmark {
+  static final int POI_COUNT = 50_000;
+  private static final int QUERIES = 256;
+  private static final int K = 5;
+
+  @State(Scope.Benchmark)
+  public static class Pois {
+    final SyntheticPois pois = new SyntheticPois(POI_COUNT, 42);
+    final PoiStore store = new PoiStore();
+    final int[] handles = new int[POI_COUNT];
+
+    @Setup
+    public void setUp() {
+      for (int i = 0; i < POI_COUNT; i++) {
+        handles[i] =
+            store.put(
+                pois.ids[i],
+                pois.names[i],
+                pois.latitudes[i],
+                pois.longitudes[i],
+                pois.altitudes[i]);
+      }
+      store.trimToSize();
+    }
+
+    PoiNameIndex build() {
+      PoiNameIndex index = new PoiNameIndex(store);
+      for (int i = 0; i < POI_COUNT; i++) {
+        index.put(handles[i], pois.names[i]);
+      }
+      return index;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Built {
+    PoiNameIndex index;
+
+    @TearDown(Level.Trial)
+    public void printFootprint(Pois pois) {
+      if (index != null) {
+        long bytes =
+            GraphLayout.parseInstance(index)
+                .subtract(GraphLayout.parseInstance(pois.store))
+                .totalSize();
+        System.out.printf("%nPoiNameIndex of %d POIs retains %d bytes%n", index.size(), bytes);
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Queries {
+    @Param({"exact", "prefix", "fuzzy"})
+    public String kind;
+
+    PoiNameIndex index;
+    final String[] queries = new String[QUERIES];
+    int next;
+
+    @Setup
+    public void setUp(Pois pois) {
+      index = pois.build();
+      Random random = new Random(7);
+      for (int i = 0; i < QUERIES; i++) {
+        String kindName = SyntheticPois.KINDS[random.nextInt(SyntheticPois.KINDS.length)];
+        switch (kind) {
+          case "exact":
+            queries[i] = pois.pois.names[random.nextInt(POI_COUNT)];
+            break;
+          case "prefix":
+            queries[i] = kindName.substring(0, 4);
+            break;
+          default:
+            // Drops a letter past the fourth, so that no indexed term has the result as prefix.
+            int drop = 4 + random.nextInt(kindName.length() - 4);
+            queries[i] = kindName.substring(0, drop) + kindName.substring(drop + 1) + "x";
+            break;
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 5)
+  @Measurement(iterations = 10)
+  public PoiNameIndex build(Pois pois, Built built) {
+    return built.index = pois.build();
+  }
+
+  @Benchmark
+  public List<PoiNameIndex.Match> search(Queries queries) {
+    queries.next = (queries.next + 1) & (QUERIES - 1);
+    return queries.index.search(
+        queries.queries[queries.next],
+        K,
+        SyntheticPois.LATITUDE,
+        SyntheticPois.LONGITUDE,
+        200.0);
+  }
+}
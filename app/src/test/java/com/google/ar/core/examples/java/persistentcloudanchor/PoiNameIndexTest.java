@@ -0,0 +1,201 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Matching, ranking and updates of {@link PoiNameIndex} on a handful of POIs. */
+@RunWith(JUnit4.class)
+public final class PoiNameIndexTest {
+  private static final double LATITUDE = 47.3769;
+  private static final double LONGITUDE = 8.5417;
+  // About 111 m of latitude.
+  private static final double DEGREES_PER_111_METERS = 0.001;
+
+  private final PoiStore pois = new PoiStore();
+  private final PoiNameIndex index = new PoiNameIndex(pois);
+
+  @Test
+  public void tokenize_splitsOnNonAlphanumericsAndLowercases() {
+    assertArrayEquals(
+        new String[] {"caf\u00e9", "b2", "north"}, PoiNameIndex.tokenize(" Caf\u00e9-B2 (North)"));
+  }
+
+  @Test
+  public void search_exactWord_scoresOne() {
+    put(0, "Main Library");
+    put(1, "Librarian Office");
+
+    List<PoiNameIndex.Match> matches = search("library", 5);
+
+    assertHandles(matches, 0);
+    assertEquals(1.0f, matches.get(0).score, 1e-6f);
+    assertTrue(Double.isNaN(matches.get(0).distanceMeters));
+  }
+
+  @Test
+  public void search_prefix_ranksByCoverage() {
+    put(0, "Libs");
+    put(1, "Libraries");
+    put(2, "Lobby");
+
+    List<PoiNameIndex.Match> matches = search("lib", 5);
+
+    assertHandles(matches, 0, 1);
+    assertTrue(matches.get(0).score < 1.0f);
+    assertTrue(matches.get(1).score >= 0.5f);
+  }
+
+  @Test
+  public void search_typoWithoutPrefixMatch_fallsBackToTrigrams() {
+    put(0, "Pharmacy");
+    put(1, "Bakery");
+
+    List<PoiNameIndex.Match> matches = search("pharmcy", 5);
+
+    assertHandles(matches, 0);
+    assertTrue(matches.get(0).score < 0.7f);
+  }
+
+  @Test
+  public void search_exactOrPrefixMatch_skipsTrigrams() {
+    put(0, "Gallery");
+    put(1, "Galleria");
+
+    // "galler" is a prefix of both; trigrams would also match "gallery" exactly.
+    assertHandles(search("galler", 5), 0, 1);
+    assertHandles(search("gallery", 5), 0);
+  }
+
+  @Test
+  public void search_severalWords_averagesBestMatchPerWord() {
+    put(0, "Coffee Shop");
+    put(1, "Coffee Bar");
+    put(2, "Shop");
+
+    List<PoiNameIndex.Match> matches = search("coffee shop", 5);
+
+    // 1 and 2 tie, in either order.
+    assertEquals(3, matches.size());
+    assertEquals(0, matches.get(0).handle);
+    assertEquals(1.0f, matches.get(0).score, 1e-6f);
+    assertEquals(0.5f, matches.get(1).score, 1e-6f);
+    assertEquals(0.5f, matches.get(2).score, 1e-6f);
+  }
+
+  @Test
+  public void search_topK_returnsBestInDescendingOrder() {
+    // Prefix scores fall with the length of the name.
+    String name = "L";
+    for (int i = 0; i < 20; i++) {
+      name += "i";
+      put(i, name);
+    }
+
+    List<PoiNameIndex.Match> matches = search("li", 5);
+
+    assertHandles(matches, 0, 1, 2, 3, 4);
+    for (int i = 1; i < matches.size(); i++) {
+      assertTrue(matches.get(i - 1).score >= matches.get(i).score);
+    }
+  }
+
+  @Test
+  public void search_withLocation_ranksCloserFirst() {
+    put(0, "Restroom", LATITUDE + 10 * DEGREES_PER_111_METERS, LONGITUDE);
+    put(1, "Restroom", LATITUDE + DEGREES_PER_111_METERS, LONGITUDE);
+
+    List<PoiNameIndex.Match> matches = index.search("restroom", 5, LATITUDE, LONGITUDE, 200.0);
+
+    assertHandles(matches, 1, 0);
+    assertEquals(111.0, matches.get(0).distanceMeters, 1.0);
+    // The score is halved at the distance scale.
+    assertEquals(200.0 / (200.0 + 111.2), matches.get(0).score, 0.01);
+  }
+
+  @Test
+  public void put_existingHandle_replacesName() {
+    put(0, "Old Name");
+    put(0, "New Name");
+
+    assertEquals(1, index.size());
+    assertEquals(1, pois.size());
+    assertHandles(search("old", 5));
+    assertHandles(search("new", 5), 0);
+  }
+
+  @Test
+  public void removeThenPut_reusedHandleHasNoStaleTerms() {
+    for (int i = 0; i < 8; i++) {
+      put(i, "Room " + i);
+    }
+    remove(3);
+    remove(5);
+    assertEquals(6, index.size());
+    assertHandles(search("5", 5));
+
+    // The store hands the freed handles to new POIs; none of the old terms may point at them.
+    put(8, "Elevator");
+    put(9, "Stairs");
+
+    assertEquals(8, index.size());
+    assertHandles(search("3", 5));
+    assertHandles(search("elevator", 5), 5);
+    assertHandles(search("stairs", 5), 3);
+    assertEquals(6, search("room", 10).size());
+  }
+
+  @Test
+  public void remove_unknownHandle_isIgnored() {
+    put(0, "Kiosk");
+
+    index.remove(PoiStore.NO_HANDLE);
+    index.remove(1);
+    index.remove(1000);
+
+    assertEquals(1, index.size());
+    assertHandles(search("kiosk", 5), 0);
+  }
+
+  @Test
+  public void remove_lastPoiOfTerm_dropsTermFromPrefixAndTrigramLookups() {
+    put(0, "Bookshop");
+    remove(0);
+    put(1, "Bakery");
+
+    assertHandles(search("book", 5));
+    assertHandles(search("boookshop", 5));
+  }
+
+  /** Adds a POI with the id "poi" + {@code number} to the store and the index. */
+  private void put(int number, String name) {
+    put(number, name, LATITUDE, LONGITUDE);
+  }
+
+  private void put(int number, String name, double latitude, double longitude) {
+    index.put(pois.put("poi" + number, name, latitude, longitude, 0), name);
+  }
+
+  private void remove(int number) {
+    // As in the activity, the index forgets the handle before the store frees it.
+    index.remove(pois.find("poi" + number));
+    pois.remove("poi" + number);
+  }
+
+  private List<PoiNameIndex.Match> search(String query, int k) {
+    return index.search(query, k, Double.NaN, Double.NaN, 200.0);
+  }
+
+  private static void assertHandles(List<PoiNameIndex.Match> matches, int... handles) {
+    int[] actual = new int[matches.size()];
+    for (int i = 0; i < actual.length; i++) {
+      actual[i] = matches.get(i).handle;
+    }
+    assertArrayEquals(handles, actual);
+  }
+}
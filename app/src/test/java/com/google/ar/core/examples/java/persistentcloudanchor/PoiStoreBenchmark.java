@@ -0,0 +1,127 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Heap footprint, lookup by id and coordinate scans of {@link PoiStore} against the {@code
+ * HashMap<String, CloudAnchor>} it replaced, over 50,000 {@link SyntheticPois}.
+ *
+ * <p>The retained heap of both, measured with JOL, is printed once per fork. Lookups use copies of
+ * the ids, as ids coming back from ARCore or Firestore are not the instances stored. {@code find}
+ * runs independent lookups back to back, which the CPU overlaps; {@code findChained} reads the
+ * latitude of the POI found and makes the next lookup depend on it, which measures the latency of
+ * a single lookup as made from a callback.
+ *
+ * <p>Run with {@code ./gradlew :app:jmh -Pjmh=PoiStoreBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoiStoreBenchmark {
+  static final int POI_COUNT = 50_000;
+  private static final int LOOKUPS = 1 << 14;
+
+  private static boolean footprintPrinted;
+
+  private final Map<String, CloudAnchor> map = new HashMap<>();
+  private final PoiStore store = new PoiStore();
+  private final String[] lookups = new String[LOOKUPS];
+  private int next;
+
+  @Setup
+  public void setUp() {
+    SyntheticPois pois = new SyntheticPois(POI_COUNT, 42);
+    for (int i = 0; i < POI_COUNT; i++) {
+      map.put(
+          pois.ids[i],
+          new CloudAnchor(
+              pois.ids[i],
+              pois.names[i],
+              pois.latitudes[i],
+              pois.longitudes[i],
+              pois.altitudes[i]));
+      store.put(
+          pois.ids[i], pois.names[i], pois.latitudes[i], pois.longitudes[i], pois.altitudes[i]);
+    }
+    store.trimToSize();
+    Random random = new Random(7);
+    for (int i = 0; i < LOOKUPS; i++) {
+      lookups[i] = new String(pois.ids[random.nextInt(POI_COUNT)].toCharArray());
+      lookups[i].hashCode();
+    }
+    if (!footprintPrinted) {
+      footprintPrinted = true;
+      long mapBytes = GraphLayout.parseInstance(map).totalSize();
+      long storeBytes = GraphLayout.parseInstance(store).totalSize();
+      System.out.printf(
+          "%nHashMap<String, CloudAnchor>: %d bytes, PoiStore: %d bytes, %.2fx smaller%n",
+          mapBytes, storeBytes, (double) mapBytes / storeBytes);
+    }
+  }
+
+  @Benchmark
+  public CloudAnchor findInMap() {
+    next = (next + 1) & (LOOKUPS - 1);
+    return map.get(lookups[next]);
+  }
+
+  @Benchmark
+  public int findInStore() {
+    next = (next + 1) & (LOOKUPS - 1);
+    return store.find(lookups[next]);
+  }
+
+  @Benchmark
+  public int findChainedInMap() {
+    double latitude = map.get(lookups[next]).getLatitude();
+    // Latitudes are positive, so this adds 0, but only once the lookup is done.
+    next = (next + 1 + ((int) latitude >>> 31)) & (LOOKUPS - 1);
+    return next;
+  }
+
+  @Benchmark
+  public int findChainedInStore() {
+    double latitude = store.getLatitude(store.find(lookups[next]));
+    next = (next + 1 + ((int) latitude >>> 31)) & (LOOKUPS - 1);
+    return next;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double scanMap() {
+    double sum = 0;
+    for (CloudAnchor poi : map.values()) {
+      sum += poi.getLatitude() + poi.getLongitude();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double scanStore() {
+    double sum = 0;
+    for (int handle = 0, limit = store.getHandleLimit(); handle < limit; handle++) {
+      if (store.isLive(handle)) {
+        sum += store.getLatitude(handle) + store.getLongitude(handle);
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,110 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class PoiStoreTest {
+  private final PoiStore store = new PoiStore();
+
+  @Test
+  public void put_thenRead_returnsColumns() {
+    int handle = store.put("ua-1", "Main Library", 47.5, 8.5, 410.25);
+
+    assertEquals(handle, store.find("ua-1"));
+    assertEquals("ua-1", store.getId(handle));
+    assertEquals("Main Library", store.getName(handle));
+    assertEquals(47.5, store.getLatitude(handle), 0);
+    assertEquals(8.5, store.getLongitude(handle), 0);
+    assertEquals(410.25f, store.getAltitude(handle), 0);
+  }
+
+  @Test
+  public void put_existingId_updatesInPlace() {
+    int handle = store.put("ua-1", "Old", 1, 2, 3);
+
+    assertEquals(handle, store.put("ua-1", "New", 4, 5, 6));
+    assertEquals(1, store.size());
+    assertEquals("New", store.getName(handle));
+    assertEquals(4, store.getLatitude(handle), 0);
+  }
+
+  @Test
+  public void remove_freesHandleForNextPoi() {
+    store.put("ua-1", "A", 0, 0, 0);
+    int handle = store.put("ua-2", "B", 0, 0, 0);
+
+    assertTrue(store.remove("ua-2"));
+    assertFalse(store.remove("ua-2"));
+    assertFalse(store.isLive(handle));
+    assertEquals(PoiStore.NO_HANDLE, store.find("ua-2"));
+    assertEquals(handle, store.put("ua-3", "C", 0, 0, 0));
+    assertEquals(2, store.getHandleLimit());
+  }
+
+  @Test
+  public void find_nameOfAnotherPoi_isNotAnId() {
+    store.put("ua-1", "Kiosk", 0, 0, 0);
+
+    assertEquals(PoiStore.NO_HANDLE, store.find("Kiosk"));
+    assertFalse(store.remove("Kiosk"));
+  }
+
+  @Test
+  public void idEqualToName_sharesStringButNotHandle() {
+    int named = store.put("ua-1", "ua-2", 0, 0, 0);
+    int handle = store.put("ua-2", "Kiosk", 0, 0, 0);
+
+    assertEquals(handle, store.find("ua-2"));
+    store.remove("ua-2");
+    // The string stays pooled as the name of the first POI, but no longer as an id.
+    assertEquals("ua-2", store.getName(named));
+    assertEquals(PoiStore.NO_HANDLE, store.find("ua-2"));
+    store.remove("ua-1");
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  public void randomOperations_matchReferenceMap() {
+    Random random = new Random(42);
+    Map<String, String> reference = new HashMap<>();
+    for (int i = 0; i < 20_000; i++) {
+      String id = "ua-" + random.nextInt(500);
+      // Few names, so that they are shared and sometimes equal to ids.
+      String name =
+          random.nextInt(10) == 0 ? "ua-" + random.nextInt(500) : "N" + random.nextInt(50);
+      int operation = random.nextInt(10);
+      if (operation < 5) {
+        store.put(id, name, i, -i, 0);
+        reference.put(id, name);
+      } else if (operation < 9) {
+        assertEquals(reference.remove(id) != null, store.remove(id));
+      } else {
+        store.trimToSize();
+      }
+    }
+
+    assertEquals(reference.size(), store.size());
+    int live = 0;
+    for (int handle = 0; handle < store.getHandleLimit(); handle++) {
+      if (store.isLive(handle)) {
+        live++;
+        assertEquals(handle, store.find(store.getId(handle)));
+      }
+    }
+    assertEquals(reference.size(), live);
+    for (Map.Entry<String, String> entry : reference.entrySet()) {
+      int handle = store.find(entry.getKey());
+      assertEquals(entry.getKey(), store.getId(handle));
+      assertEquals(entry.getValue(), store.getName(handle));
+    }
+  }
+}
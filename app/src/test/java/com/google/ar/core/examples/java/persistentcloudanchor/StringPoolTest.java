@@ -0,0 +1,118 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class StringPoolTest {
+  private final StringPool pool = new StringPool();
+
+  @Test
+  public void acquire_equalStrings_shareRef() {
+    int ref = pool.acquire("Restroom");
+
+    assertEquals(ref, pool.acquire(new String("Restroom".toCharArray())));
+    assertEquals(1, pool.size());
+    assertEquals("Restroom", pool.get(ref));
+  }
+
+  @Test
+  public void release_lastUse_freesRefForReuse() {
+    int ref = pool.acquire("Kiosk");
+    pool.acquire("Kiosk");
+
+    pool.release(ref);
+    assertTrue(pool.isLive(ref));
+    pool.release(ref);
+
+    assertFalse(pool.isLive(ref));
+    assertEquals(StringPool.NO_REF, pool.find("Kiosk"));
+    assertEquals(ref, pool.acquire("Bakery"));
+  }
+
+  @Test
+  public void setValue_isKeptUntilRefIsFreed() {
+    int ref = pool.acquire("Kiosk");
+    assertEquals(StringPool.NO_VALUE, pool.getValue(ref));
+
+    pool.setValue(ref, 7);
+    pool.acquire("Kiosk");
+    assertEquals(7, pool.getValue(ref));
+
+    pool.release(ref);
+    pool.release(ref);
+    assertEquals(ref, pool.acquire("Bakery"));
+    assertEquals(StringPool.NO_VALUE, pool.getValue(ref));
+  }
+
+  @Test
+  public void find_nonAsciiStrings_roundTrip() {
+    // One, two and three byte encodings, and a NUL.
+    String[] strings = {"Caf\u00e9", "\u0141\u00f3d\u017a", "\u6771\u4eac", "a\u0000b", ""};
+    int[] refs = new int[strings.length];
+    for (int i = 0; i < strings.length; i++) {
+      refs[i] = pool.acquire(strings[i]);
+    }
+    for (int i = 0; i < strings.length; i++) {
+      assertEquals(refs[i], pool.find(new String(strings[i].toCharArray())));
+      assertEquals(strings[i], pool.get(refs[i]));
+    }
+  }
+
+  @Test
+  public void find_sameEncodedLengthAsChars_comparesAsAscii() {
+    // "\u00e9" encodes to two bytes, as many as "ab" has chars.
+    int ref = pool.acquire("\u00e9");
+
+    assertEquals(StringPool.NO_REF, pool.find("ab"));
+    assertEquals(StringPool.NO_REF, pool.find("\u00c3\u00a9"));
+    assertEquals(ref, pool.find("\u00e9"));
+    assertNotEquals(ref, pool.acquire("ab"));
+  }
+
+  @Test
+  public void trimToSize_keepsStringsAndAcceptsMore() {
+    for (int i = 0; i < 1000; i++) {
+      pool.acquire("poi" + i);
+    }
+    for (int i = 0; i < 1000; i += 2) {
+      pool.release(pool.find("poi" + i));
+    }
+
+    pool.trimToSize();
+
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 2 == 1, pool.find("poi" + i) != StringPool.NO_REF);
+    }
+    for (int i = 1000; i < 3000; i++) {
+      pool.acquire("poi" + i);
+    }
+    assertEquals(2500, pool.size());
+    for (int i = 1; i < 3000; i += 2) {
+      assertEquals("poi" + i, pool.get(pool.find("poi" + i)));
+    }
+  }
+
+  @Test
+  public void release_manyStrings_compactsAndKeepsTheRest() {
+    String padding = new String(new char[100]).replace('\0', 'x');
+    for (int i = 0; i < 200; i++) {
+      pool.acquire(i + padding);
+    }
+    // Frees well over half of the bytes, which compacts them.
+    for (int i = 0; i < 150; i++) {
+      pool.release(pool.find(i + padding));
+    }
+
+    assertEquals(50, pool.size());
+    for (int i = 150; i < 200; i++) {
+      assertEquals(i + padding, pool.get(pool.find(i + padding)));
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.google.ar.core.examples.java.persistentcloudanchor;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates POIs like those of a large venue for benchmarks.
+ *
+ * <p>Names combine a wing, a kind of place and a room number, such as "North Pharmacy 1204", so
+ * that kinds and wings are shared by many POIs and numbers by few. Ids look like cloud anchor ids,
+ * and locations are spread over about 1 km around a fixed point and over 10 floors.
+ */
+final class SyntheticPois {
+  static final double LATITUDE = 47.3769;
+  static final double LONGITUDE = 8.5417;
+
+  static final String[] WINGS = {
+    "North", "South", "East", "West", "Central", "Upper", "Lower", "Outer",
+  };
+  static final String[] KINDS = {
+    "Pharmacy", "Library", "Bakery", "Restroom", "Elevator", "Bookshop", "Gallery", "Clinic",
+    "Cafeteria", "Office", "Laboratory", "Auditorium", "Reception", "Stairs", "Parking", "Kiosk",
+  };
+
+  final String[] ids;
+  final String[] names;
+  final double[] latitudes;
+  final double[] longitudes;
+  final double[] altitudes;
+
+  SyntheticPois(int count, long seed) {
+    Random random = new Random(seed);
+    ids = new String[count];
+    names = new String[count];
+    latitudes = new double[count];
+    longitudes = new double[count];
+    altitudes = new double[count];
+    for (int i = 0; i < count; i++) {
+      ids[i] = String.format(Locale.US, "ua-%016x%016x", random.nextLong(), random.nextLong());
+      names[i] =
+          WINGS[random.nextInt(WINGS.length)]
+              + " "
+              + KINDS[random.nextInt(KINDS.length)]
+              + " "
+              + (100 + random.nextInt(9900));
+      latitudes[i] = LATITUDE + (random.nextDouble() - 0.5) * 0.01;
+      longitudes[i] = LONGITUDE + (random.nextDouble() - 0.5) * 0.01;
+      altitudes[i] = 400 + 4 * random.nextInt(10) + random.nextDouble();
+    }
+  }
+
+  int size() {
+    return ids.length;
+  }
+}